@@ -2,14 +2,11 @@ package com.lotaris.junitee.dependency;
 
 import com.lotaris.junitee.utils.InflectorHelper;
 import com.lotaris.junitee.utils.NoValidClassException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.Set;
-import javax.annotation.PostConstruct;
-import javax.ejb.Local;
-import javax.ejb.Remote;
 
 /**
  * Dependency injector helper offers method to facilitate the injections
@@ -69,27 +66,30 @@ public class DependencyInjectorHelper {
 		}		
 	}
 	
+	/**
+	 * Find the empty constructor of the implementation class from a class that is provided
+	 * 
+	 * @param cl The class to get the real implementation constructor
+	 * @return The empty constructor of the real implementation class
+	 * @throws DependencyInjectionException Unable to find a valid class that can be instantiated
+	 */
+	static Constructor findImplementationConstructor(Class cl) throws DependencyInjectionException {
+		try {
+			return InflectorHelper.retrieveInstantiableConstructor(cl);
+		}
+		catch (NoValidClassException ex) {
+			throw new  DependencyInjectionException("Unable to instantiate a new object from type [" + cl.getCanonicalName() + "]. Maybe there is no empty constructor.", ex);
+		}		
+	}
+	
 	/**
 	 * Get the interface for which the mock should be used
 	 * 
 	 * @param mockClass The mock class for which the investigation must be done
-	 * @return The interface which is annotated with @Local or @Remote
+	 * @return The interface which is annotated with @Local or @Remote, null if there is none
 	 */
-	@SuppressWarnings("unchecked")
 	static Class getMockInterface(Class mockClass) {
-		Class current = mockClass;
-		
-		do {
-			// Check each interface to see if there is an interface which elegible to be mocked
-			for (Class interfaceClass : current.getInterfaces()) {
-				if (interfaceClass.getAnnotation(Local.class) != null || interfaceClass.getAnnotation(Remote.class) != null) {
-					return interfaceClass;
-				}
-			}
-			current = current.getSuperclass();
-		} while (current != Object.class);
-		
-		return null;
+		return LifecycleMetadata.of(mockClass).getMockInterface();
 	}
 	
 	/**
@@ -131,7 +131,8 @@ public class DependencyInjectorHelper {
 	 * @throws DependencyInjectionException Error during the instantiation of the new EJB
 	 */
 	static Object instantiateEjb(Field ejbField, Map<String, Object> mockRegistry, Map<String, Object> ejbRegistry) throws DependencyInjectionException {
-		Class implementationClass = findImplementationClass(ejbField.getType());
+		Constructor implementationConstructor = findImplementationConstructor(ejbField.getType());
+		Class implementationClass = implementationConstructor.getDeclaringClass();
 		
 		if (ejbRegistry.containsKey(implementationClass.getCanonicalName())) {
 			return ejbRegistry.get(implementationClass.getCanonicalName());
@@ -147,7 +148,7 @@ public class DependencyInjectorHelper {
 					instanceOfImplementationClass = mockRegistry.get(mockInterfaceClass.getCanonicalName());
 				}
 				else {
-					instanceOfImplementationClass = implementationClass.newInstance();
+					instanceOfImplementationClass = implementationConstructor.newInstance();
 				}
 				
 				// Invoke the @PostConstruct methods
@@ -158,48 +159,21 @@ public class DependencyInjectorHelper {
 				
 				return instanceOfImplementationClass;
 			}
-			catch (IllegalAccessException | InstantiationException e) {
+			catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
 				throw new DependencyInjectionException("Unable to instantiate the EJB.", e);
 			}
 		}
 	}
 	
 	/**
-	 * Invoke the methods which are annotated with @PostConstruct
+	 * Invoke the methods which are annotated with @PostConstruct. The methods are
+	 * invoked from the top of the class hierarchy to the class of the object.
 	 * 
 	 * @param obj The object to investigate
 	 * @throws DependencyInjectionException Any error due to the invocation of the post construct methods
 	 */
 	static void invokePostConstruct(Object obj) throws DependencyInjectionException {
-		Class cl = obj.getClass();
-		
-		// Check across the class hierarchy
-		do {
-			// Retrieve the methods
-			for (Method m : cl.getDeclaredMethods()) {
-				// Check if @PostConstruct is present
-				if (m.getAnnotation(PostConstruct.class) != null) {
-					try {
-						boolean isAccessible = m.isAccessible();
-						if (!isAccessible) {
-							m.setAccessible(true);
-						}
-						
-						m.invoke(obj);
-						
-						if (!isAccessible) {
-							m.setAccessible(false);
-						}
-					}
-					catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-						throw new DependencyInjectionException("Unable to call the method " + m.getName() + " on object of class " + 
-							cl.getCanonicalName() + ". @PostConstruct methods must be empty args methods.");
-					}
-				}
-			}
-
-			cl = cl.getSuperclass();
-		} while (cl != Object.class);
+		LifecycleMetadata.of(obj.getClass()).invokePostConstruct(obj);
 	}
 	
 	/**
@@ -213,7 +187,8 @@ public class DependencyInjectorHelper {
 	 */
 	static Object instantiateDataGenerator(Field generatorField, String path, Set<String> generatorRegistry) throws DependencyInjectionException {
 		String currentPath = path + "." + generatorField.getName();
-		Class implementationClass = findImplementationClass(generatorField.getType());
+		Constructor implementationConstructor = findImplementationConstructor(generatorField.getType());
+		Class implementationClass = implementationConstructor.getDeclaringClass();
 
 		// Check if the path has already been reached
 		if (generatorRegistry.contains(currentPath)) {
@@ -224,11 +199,11 @@ public class DependencyInjectorHelper {
 		// Create new instance of the data generator
 		else {
 			try {
-				Object instanceOfImplementationClass = implementationClass.newInstance();
+				Object instanceOfImplementationClass = implementationConstructor.newInstance();
 				generatorRegistry.add(currentPath);
 				return instanceOfImplementationClass;
 			}
-			catch (IllegalAccessException | InstantiationException e) {
+			catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
 				throw new DependencyInjectionException("Unable to instantiate the data generator.", e);
 			}
 		}
@@ -0,0 +1,52 @@
+package com.lotaris.junitee.dependency;
+
+/**
+ * Contract of the injectors generated at compile time by the {@code InjectorProcessor}. A
+ * generated injector gives direct access to the annotated fields and to the @PostConstruct
+ * methods declared by one class (not by its super classes).
+ *
+ * Only the fields and methods that are not private can be accessed by a generated injector.
+ * The other ones are still managed through reflection by the {@link DependencyInjector}.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public interface GeneratedInjector {
+	/**
+	 * Suffix added to the binary name of a class to get the name of its generated injector
+	 */
+	String SUFFIX = "_JuniteeInjector";
+
+	/**
+	 * @return The names of the fields accessible through the injector. The position
+	 * of a name is the index to use to get or set the field.
+	 */
+	String[] getFieldNames();
+
+	/**
+	 * Retrieve the value of a field
+	 *
+	 * @param index The index of the field
+	 * @param holder The object where the field is
+	 * @return The value of the field
+	 */
+	Object getField(int index, Object holder);
+
+	/**
+	 * Set the value of a field
+	 *
+	 * @param index The index of the field
+	 * @param holder The object where the field is
+	 * @param value The value to set
+	 */
+	void setField(int index, Object holder, Object value);
+
+	/**
+	 * Invoke the @PostConstruct methods declared by the class
+	 *
+	 * @param holder The object on which the methods must be invoked
+	 * @return True if the methods were invoked, false if they are not accessible by the
+	 * generated injector and must be invoked through reflection
+	 * @throws Exception Any error thrown by the @PostConstruct methods
+	 */
+	boolean invokePostConstruct(Object holder) throws Exception;
+}
@@ -0,0 +1,64 @@
+package com.lotaris.junitee.dependency;
+
+/**
+ * Lookup of the injectors generated at compile time. The lookup is done once
+ * per class and the result (including the absence of generated injector) is
+ * cached.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+final class GeneratedInjectors {
+	/**
+	 * Marker for the classes without generated injector
+	 */
+	private static final Object NONE = new Object();
+
+	/**
+	 * Cache of the generated injectors by class
+	 */
+	private static final ClassValue<Object> INJECTORS = new ClassValue<Object>() {
+		@Override
+		protected Object computeValue(Class<?> type) {
+			GeneratedInjector injector = load(type);
+			return injector != null ? injector : NONE;
+		}
+	};
+
+	private GeneratedInjectors() {}
+
+	/**
+	 * Find the generated injector of a class
+	 *
+	 * @param cl The class
+	 * @return The generated injector, null if there is none
+	 */
+	static GeneratedInjector find(Class<?> cl) {
+		Object injector = INJECTORS.get(cl);
+		return injector != NONE ? (GeneratedInjector) injector : null;
+	}
+
+	/**
+	 * Load and instantiate the generated injector of a class
+	 *
+	 * @param cl The class
+	 * @return The generated injector, null if there is none
+	 */
+	private static GeneratedInjector load(Class<?> cl) {
+		if (cl.getClassLoader() == null) {
+			return null;
+		}
+
+		try {
+			Class<?> injectorClass = Class.forName(cl.getName() + GeneratedInjector.SUFFIX, true, cl.getClassLoader());
+
+			if (GeneratedInjector.class.isAssignableFrom(injectorClass)) {
+				return (GeneratedInjector) injectorClass.getDeclaredConstructor().newInstance();
+			}
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			// No usable generated injector, the reflection is used
+		}
+
+		return null;
+	}
+}
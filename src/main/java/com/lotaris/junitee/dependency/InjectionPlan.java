@@ -0,0 +1,270 @@
+package com.lotaris.junitee.dependency;
+
+import com.lotaris.junitee.generator.InjectAllocator;
+import com.lotaris.junitee.generator.InjectDataGenerator;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.ejb.EJB;
+import javax.persistence.PersistenceContext;
+
+/**
+ * An injection plan is the precomputed list of injection steps for a class. The
+ * plan is built once per class by scanning the class hierarchy and then reused
+ * for every object of that class to inject.
+ *
+ * The steps are ordered from the top of the class hierarchy to the class itself
+ * and in the declaration order of the fields to keep the same order of injection
+ * than a scan of the class hierarchy.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+final class InjectionPlan {
+	/**
+	 * Cache of the injection plans by class
+	 */
+	private static final ClassValue<InjectionPlan> PLANS = new ClassValue<InjectionPlan>() {
+		@Override
+		protected InjectionPlan computeValue(Class<?> type) {
+			return new InjectionPlan(type);
+		}
+	};
+
+	/**
+	 * The ordered steps to apply on an object
+	 */
+	private final List<Step> steps;
+
+	/**
+	 * Constructor
+	 *
+	 * @param cl The class to build the plan for
+	 */
+	private InjectionPlan(Class<?> cl) {
+		List<Step> planSteps = new ArrayList<>();
+		collectSteps(cl, planSteps);
+		steps = Collections.unmodifiableList(planSteps);
+	}
+
+	/**
+	 * Retrieve the injection plan of a class. The plan is built on the first call
+	 * and cached for the next ones.
+	 *
+	 * @param cl The class for which the plan is required
+	 * @return The injection plan
+	 */
+	static InjectionPlan of(Class<?> cl) {
+		return PLANS.get(cl);
+	}
+
+	/**
+	 * @return The ordered injection steps
+	 */
+	List<Step> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Collect the steps of a class and its super classes (super classes first)
+	 *
+	 * @param cl The class to analyze
+	 * @param planSteps The steps collected so far
+	 */
+	private static void collectSteps(Class<?> cl, List<Step> planSteps) {
+		if (cl.getSuperclass() != null && cl.getSuperclass() != Object.class) {
+			collectSteps(cl.getSuperclass(), planSteps);
+		}
+		
+		// Use the generated injector of the class for the fields it can access
+		GeneratedInjector injector = GeneratedInjectors.find(cl);
+		List<String> generatedFieldNames = injector != null ? Arrays.asList(injector.getFieldNames()) : Collections.<String>emptyList();
+
+		for (Field declaredField : cl.getDeclaredFields()) {
+			StepType type;
+
+			if (declaredField.isAnnotationPresent(EJB.class)) {
+				type = StepType.EJB;
+			}
+			else if (declaredField.isAnnotationPresent(InjectDataGenerator.class)) {
+				type = StepType.DATA_GENERATOR;
+			}
+			else if (declaredField.isAnnotationPresent(PersistenceContext.class)) {
+				type = StepType.PERSISTENCE_CONTEXT;
+			}
+			else if (declaredField.isAnnotationPresent(InjectAllocator.class)) {
+				type = StepType.ALLOCATOR;
+			}
+			else {
+				type = StepType.NONE;
+			}
+
+			UseMock useMock = declaredField.getAnnotation(UseMock.class);
+			Class<?>[] mockClasses = useMock != null ? useMock.value() : new Class<?>[0];
+
+			// Nothing to do on fields that are not concerned by the injection
+			if (type != StepType.NONE || mockClasses.length > 0) {
+				int generatedIndex = generatedFieldNames.indexOf(declaredField.getName());
+				
+				if (generatedIndex < 0) {
+					declaredField.setAccessible(true);
+					planSteps.add(new Step(declaredField, type, mockClasses, null, -1));
+				}
+				else {
+					planSteps.add(new Step(declaredField, type, mockClasses, injector, generatedIndex));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The different kind of injections
+	 */
+	enum StepType {
+		/**
+		 * Field annotated with @EJB
+		 */
+		EJB,
+
+		/**
+		 * Field annotated with @InjectDataGenerator
+		 */
+		DATA_GENERATOR,
+
+		/**
+		 * Field annotated with @PersistenceContext
+		 */
+		PERSISTENCE_CONTEXT,
+
+		/**
+		 * Field annotated with @InjectAllocator
+		 */
+		ALLOCATOR,
+
+		/**
+		 * Field only annotated with @UseMock
+		 */
+		NONE
+	}
+
+	/**
+	 * An injection step is a field to inject with its resolved metadata. The field is
+	 * accessed through the generated injector of its class when there is one, through
+	 * reflection otherwise.
+	 */
+	static final class Step {
+		/**
+		 * The field to inject, made accessible when there is no generated injector
+		 */
+		private final Field field;
+
+		/**
+		 * The kind of injection to do
+		 */
+		private final StepType type;
+
+		/**
+		 * The mock classes to register before the injection
+		 */
+		private final Class<?>[] mockClasses;
+
+		/**
+		 * The generated injector to access the field, null to use the reflection
+		 */
+		private final GeneratedInjector injector;
+
+		/**
+		 * The index of the field in the generated injector
+		 */
+		private final int injectorIndex;
+
+		/**
+		 * Constructor
+		 *
+		 * @param field The field to inject
+		 * @param type The kind of injection
+		 * @param mockClasses The mock classes to register
+		 * @param injector The generated injector, null to use the reflection
+		 * @param injectorIndex The index of the field in the generated injector
+		 */
+		private Step(Field field, StepType type, Class<?>[] mockClasses, GeneratedInjector injector, int injectorIndex) {
+			this.field = field;
+			this.type = type;
+			this.mockClasses = mockClasses;
+			this.injector = injector;
+			this.injectorIndex = injectorIndex;
+		}
+
+		/**
+		 * @return True if the field is accessed through a generated injector
+		 */
+		boolean isGenerated() {
+			return injector != null;
+		}
+
+		/**
+		 * @return The field to inject
+		 */
+		Field getField() {
+			return field;
+		}
+
+		/**
+		 * @return The kind of injection
+		 */
+		StepType getType() {
+			return type;
+		}
+
+		/**
+		 * @return The mock classes to register
+		 */
+		Class<?>[] getMockClasses() {
+			return mockClasses;
+		}
+
+		/**
+		 * Check if the field is null on the holder
+		 *
+		 * @param holder The object where the field is
+		 * @return True if the field has no value
+		 * @throws DependencyInjectionException When it is not possible to get the value of the field
+		 */
+		boolean isNull(Object holder) throws DependencyInjectionException {
+			try {
+				if (injector != null) {
+					return injector.getField(injectorIndex, holder) == null;
+				}
+				
+				return field.get(holder) == null;
+			}
+			catch (IllegalAccessException | IllegalArgumentException | ClassCastException e) {
+				throw new DependencyInjectionException(
+					"Unable to get the value on field [" + field.getName() + "] of the object [" + holder.getClass().getSimpleName() + "].", e);
+			}
+		}
+
+		/**
+		 * Set the value of the field on the holder
+		 *
+		 * @param holder The object where the field is
+		 * @param value The value to set
+		 * @throws DependencyInjectionException When it is not possible to set the value of the field
+		 */
+		void inject(Object holder, Object value) throws DependencyInjectionException {
+			try {
+				if (injector != null) {
+					injector.setField(injectorIndex, holder, value);
+				}
+				else {
+					field.set(holder, value);
+				}
+			}
+			catch (IllegalAccessException | IllegalArgumentException | ClassCastException e) {
+				throw new DependencyInjectionException("Unable to set the value [" + value + "] on field ["
+					+ field.getName() + "] of the object [" + holder.getClass().getSimpleName() + "].", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.lotaris.junitee.dependency;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.ejb.Local;
+import javax.ejb.Remote;
+
+/**
+ * Lifecycle metadata of a class resolved once and cached: the @PostConstruct methods
+ * to invoke and the interface that can be mocked.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+final class LifecycleMetadata {
+	/**
+	 * Cache of the metadata by class
+	 */
+	private static final ClassValue<LifecycleMetadata> METADATA = new ClassValue<LifecycleMetadata>() {
+		@Override
+		protected LifecycleMetadata computeValue(Class<?> type) {
+			return new LifecycleMetadata(type);
+		}
+	};
+
+	/**
+	 * The interface annotated with @Local or @Remote, null if there is none
+	 */
+	private final Class mockInterface;
+
+	/**
+	 * The @PostConstruct invocations in the order of the class hierarchy (super class first)
+	 */
+	private final List<PostConstructInvoker> postConstructInvokers;
+
+	/**
+	 * Constructor
+	 *
+	 * @param cl The class to resolve the metadata
+	 */
+	private LifecycleMetadata(Class<?> cl) {
+		mockInterface = resolveMockInterface(cl);
+
+		List<PostConstructInvoker> invokers = new ArrayList<>();
+		collectPostConstructInvokers(cl, invokers);
+		postConstructInvokers = Collections.unmodifiableList(invokers);
+	}
+
+	/**
+	 * Retrieve the metadata of a class. The metadata are resolved on the first call
+	 * and cached for the next ones.
+	 *
+	 * @param cl The class
+	 * @return The metadata
+	 */
+	static LifecycleMetadata of(Class<?> cl) {
+		return METADATA.get(cl);
+	}
+
+	/**
+	 * @return The interface annotated with @Local or @Remote, null if there is none
+	 */
+	Class getMockInterface() {
+		return mockInterface;
+	}
+
+	/**
+	 * Invoke the @PostConstruct methods on an object of the class
+	 *
+	 * @param obj The object
+	 * @throws DependencyInjectionException Any error due to the invocation of the post construct methods
+	 */
+	void invokePostConstruct(Object obj) throws DependencyInjectionException {
+		for (PostConstructInvoker invoker : postConstructInvokers) {
+			invoker.invoke(obj);
+		}
+	}
+
+	/**
+	 * Resolve the first interface annotated with @Local or @Remote across the class hierarchy
+	 *
+	 * @param cl The class
+	 * @return The interface found, null if there is none
+	 */
+	private static Class resolveMockInterface(Class<?> cl) {
+		for (Class<?> current = cl; current != null && current != Object.class; current = current.getSuperclass()) {
+			// Check each interface to see if there is an interface which elegible to be mocked
+			for (Class<?> interfaceClass : current.getInterfaces()) {
+				if (interfaceClass.getAnnotation(Local.class) != null || interfaceClass.getAnnotation(Remote.class) != null) {
+					return interfaceClass;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Collect the @PostConstruct invocations of a class and its super classes (super classes first)
+	 *
+	 * @param cl The class
+	 * @param invokers The invocations collected so far
+	 */
+	private static void collectPostConstructInvokers(Class<?> cl, List<PostConstructInvoker> invokers) {
+		if (cl == null || cl == Object.class) {
+			return;
+		}
+
+		collectPostConstructInvokers(cl.getSuperclass(), invokers);
+
+		// Use the generated injector of the class when there is one
+		GeneratedInjector injector = GeneratedInjectors.find(cl);
+		if (injector != null) {
+			invokers.add(new GeneratedPostConstructInvoker(cl, injector));
+		}
+		else {
+			for (Method m : cl.getDeclaredMethods()) {
+				if (m.getAnnotation(PostConstruct.class) != null) {
+					m.setAccessible(true);
+					invokers.add(new ReflectivePostConstructInvoker(cl, m));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invocation of the @PostConstruct methods of one class
+	 */
+	private interface PostConstructInvoker {
+		/**
+		 * @param obj The object on which the method must be invoked
+		 * @throws DependencyInjectionException Any error during the invocation
+		 */
+		void invoke(Object obj) throws DependencyInjectionException;
+	}
+
+	/**
+	 * Invocation of a @PostConstruct method through reflection
+	 */
+	private static class ReflectivePostConstructInvoker implements PostConstructInvoker {
+		private final Class<?> cl;
+		private final Method method;
+
+		public ReflectivePostConstructInvoker(Class<?> cl, Method method) {
+			this.cl = cl;
+			this.method = method;
+		}
+
+		@Override
+		public void invoke(Object obj) throws DependencyInjectionException {
+			try {
+				method.invoke(obj);
+			}
+			catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+				throw new DependencyInjectionException("Unable to call the method " + method.getName() + " on object of class " +
+					cl.getCanonicalName() + ". @PostConstruct methods must be empty args methods.");
+			}
+		}
+	}
+
+	/**
+	 * Invocation of the @PostConstruct methods through a generated injector. When the generated
+	 * injector cannot access the methods, they are invoked through reflection.
+	 */
+	private static class GeneratedPostConstructInvoker implements PostConstructInvoker {
+		private final Class<?> cl;
+		private final GeneratedInjector injector;
+		private final List<PostConstructInvoker> fallbackInvokers = new ArrayList<>();
+
+		public GeneratedPostConstructInvoker(Class<?> cl, GeneratedInjector injector) {
+			this.cl = cl;
+			this.injector = injector;
+
+			for (Method m : cl.getDeclaredMethods()) {
+				if (m.getAnnotation(PostConstruct.class) != null) {
+					m.setAccessible(true);
+					fallbackInvokers.add(new ReflectivePostConstructInvoker(cl, m));
+				}
+			}
+		}
+
+		@Override
+		public void invoke(Object obj) throws DependencyInjectionException {
+			try {
+				if (injector.invokePostConstruct(obj)) {
+					return;
+				}
+			}
+			catch (Exception e) {
+				throw new DependencyInjectionException("Unable to call the @PostConstruct methods on object of class " + cl.getCanonicalName() + ".", e);
+			}
+
+			for (PostConstructInvoker invoker : fallbackInvokers) {
+				invoker.invoke(obj);
+			}
+		}
+	}
+}
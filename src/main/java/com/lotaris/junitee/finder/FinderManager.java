@@ -2,12 +2,12 @@ package com.lotaris.junitee.finder;
 
 import com.lotaris.junitee.generator.*;
 import com.lotaris.junitee.dependency.DependencyInjector;
+import com.lotaris.junitee.utils.ProxyFactoryCache;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
 import org.junit.rules.TestRule;
@@ -27,6 +27,11 @@ import org.slf4j.LoggerFactory;
 public class FinderManager implements TestRule {
 	private static final Logger LOG = LoggerFactory.getLogger(DataGeneratorManager.class);
 	
+	/**
+	 * Proxy factories shared by all the managers to generate the proxy classes only once
+	 */
+	private static final ProxyFactoryCache PROXIES = new ProxyFactoryCache(IFinder.class);
+	
 	/**
 	 * Entity manager factory to create new entity managers
 	 */
@@ -103,7 +108,7 @@ public class FinderManager implements TestRule {
 			// Check if the data generator is already instantiated.
 			if (!finders.containsKey(finderClass)) {
 				// Instantiate a new data generator, inject the DAO and keep track of it.
-				finders.put(finderClass, (IFinder) Enhancer.create(finderClass, new Class[] {IFinder.class}, new FinderCallback(entityManager)));
+				finders.put(finderClass, (IFinder) PROXIES.newInstance(finderClass, new FinderCallback(entityManager)));
 			}
 			else {
 				LOG.error("The finder [" + finderClass.getCanonicalName() + "] is already instantiated. One instance of each finder is allowed.");
@@ -0,0 +1,38 @@
+package com.lotaris.junitee.fixture;
+
+import java.sql.Types;
+
+/**
+ * Types of the columns of the columnar fixture files with their SQL type and
+ * the number of bytes of a value (0 for variable length values).
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public enum ColumnType {
+	LONG(Types.BIGINT, 8),
+	INTEGER(Types.INTEGER, 4),
+	DOUBLE(Types.DOUBLE, 8),
+	STRING(Types.VARCHAR, 0);
+
+	private final int sqlType;
+	private final int width;
+
+	private ColumnType(int sqlType, int width) {
+		this.sqlType = sqlType;
+		this.width = width;
+	}
+
+	/**
+	 * @return The SQL type as defined in java.sql.Types
+	 */
+	public int getSqlType() {
+		return sqlType;
+	}
+
+	/**
+	 * @return The number of bytes of a value, 0 for variable length values
+	 */
+	int getWidth() {
+		return width;
+	}
+}
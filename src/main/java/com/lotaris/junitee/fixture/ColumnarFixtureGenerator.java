@@ -0,0 +1,164 @@
+package com.lotaris.junitee.fixture;
+
+import com.lotaris.junitee.generator.DataGeneratorException;
+import com.lotaris.junitee.generator.IDataGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Data generator that inserts the rows of a columnar fixture file through JDBC batches.
+ * The file is mapped in memory block by block and the values are bound directly to the
+ * parameters of the insert statement, one batch by block. The cleanup deletes the rows 
+ * by the ranges of keys of the blocks without reading the values.
+ *
+ * The ranges of keys of the file must be dedicated to the fixture as all the rows with
+ * a key in the ranges are deleted. The connection is retrieved from the entity manager
+ * in the transaction of the data generator manager.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public abstract class ColumnarFixtureGenerator implements IDataGenerator {
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * @return The columnar fixture file to insert
+	 */
+	protected abstract File getFile();
+
+	@Override
+	public void generate() {
+		try {
+			insert(entityManager.unwrap(Connection.class));
+		}
+		catch (FixtureException fe) {
+			throw new RuntimeException(new DataGeneratorException("Unable to insert the columnar fixture " + getFile(), fe));
+		}
+	}
+
+	@Override
+	public void cleanup() {
+		try {
+			delete(entityManager.unwrap(Connection.class));
+		}
+		catch (FixtureException fe) {
+			throw new RuntimeException(new DataGeneratorException("Unable to delete the columnar fixture " + getFile(), fe));
+		}
+	}
+
+	/**
+	 * Insert the rows of the file
+	 *
+	 * @param connection The connection to the database
+	 * @return The number of rows inserted
+	 * @throws FixtureException Any error during the reading of the file or the insertion
+	 */
+	public long insert(Connection connection) throws FixtureException {
+		try (ColumnarFixtureReader reader = new ColumnarFixtureReader(getFile())) {
+			String[] columns = reader.getColumns();
+			ColumnType[] types = reader.getTypes();
+
+			StringBuilder names = new StringBuilder();
+			StringBuilder parameters = new StringBuilder();
+			for (String column : columns) {
+				names.append(names.length() > 0 ? ", " : "").append(column);
+				parameters.append(parameters.length() > 0 ? ", ?" : "?");
+			}
+
+			long count = 0;
+			try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + reader.getTable() + " (" + names + ") VALUES (" + parameters + ")")) {
+				while (reader.nextBlock(true)) {
+					for (int r = 0; r < reader.getRows(); r++) {
+						for (int c = 0; c < columns.length; c++) {
+							if (reader.isNull(c, r)) {
+								statement.setNull(c + 1, types[c].getSqlType());
+								continue;
+							}
+
+							switch (types[c]) {
+								case LONG: statement.setLong(c + 1, reader.getLong(c, r)); break;
+								case INTEGER: statement.setInt(c + 1, reader.getInt(c, r)); break;
+								case DOUBLE: statement.setDouble(c + 1, reader.getDouble(c, r)); break;
+								case STRING: statement.setString(c + 1, reader.getString(c, r)); break;
+							}
+						}
+						statement.addBatch();
+					}
+
+					statement.executeBatch();
+					count += reader.getRows();
+				}
+			}
+
+			return count;
+		}
+		catch (IOException | SQLException e) {
+			throw new FixtureException("Unable to insert the columnar fixture " + getFile(), e);
+		}
+	}
+
+	/**
+	 * Delete the rows of the file by the ranges of keys of its blocks
+	 *
+	 * @param connection The connection to the database
+	 * @throws FixtureException Any error during the reading of the file or the deletion
+	 */
+	public void delete(Connection connection) throws FixtureException {
+		try (ColumnarFixtureReader reader = new ColumnarFixtureReader(getFile())) {
+			List<long[]> ranges = new ArrayList<>();
+			while (reader.nextBlock(false)) {
+				ranges.add(new long[] { reader.getMinKey(), reader.getMaxKey() });
+			}
+
+			String sql = "DELETE FROM " + reader.getTable() + " WHERE " + reader.getColumns()[reader.getKeyColumn()] + " BETWEEN ? AND ?";
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				for (long[] range : mergeRanges(ranges)) {
+					statement.setLong(1, range[0]);
+					statement.setLong(2, range[1]);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+		}
+		catch (IOException | SQLException e) {
+			throw new FixtureException("Unable to delete the columnar fixture " + getFile(), e);
+		}
+	}
+
+	/**
+	 * Merge the ranges that overlap or follow each other
+	 *
+	 * @param ranges The ranges
+	 * @return The merged ranges
+	 */
+	static List<long[]> mergeRanges(List<long[]> ranges) {
+		Collections.sort(ranges, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] left, long[] right) {
+				return Long.compare(left[0], right[0]);
+			}
+		});
+
+		List<long[]> merged = new ArrayList<>();
+		for (long[] range : ranges) {
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+
+			if (last != null && (range[0] <= last[1] || range[0] - 1 == last[1])) {
+				last[1] = Math.max(last[1], range[1]);
+			}
+			else {
+				merged.add(new long[] { range[0], range[1] });
+			}
+		}
+		return merged;
+	}
+}
@@ -0,0 +1,203 @@
+package com.lotaris.junitee.fixture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of the columnar fixture files written by the columnar fixture writer. The blocks
+ * are mapped in memory one after another and their values are read directly from the
+ * mapped memory.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+final class ColumnarFixtureReader implements AutoCloseable {
+	/**
+	 * Number of bytes of the header of a block
+	 */
+	private static final int BLOCK_HEADER = 4 + 8 + 8 + 8;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+
+	private final String table;
+	private final String[] columns;
+	private final ColumnType[] types;
+	private final int keyColumn;
+
+	/**
+	 * Position of the next block in the file
+	 */
+	private long position;
+
+	/**
+	 * State of the current block
+	 */
+	private int rows;
+	private long minKey;
+	private long maxKey;
+	private MappedByteBuffer data;
+	private final int[] nullOffsets;
+	private final int[] dataOffsets;
+
+	/**
+	 * Buffer to decode the strings
+	 */
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Constructor
+	 *
+	 * @param path The file to read
+	 * @throws IOException Any error during the reading of the header or an invalid file
+	 */
+	ColumnarFixtureReader(File path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		channel = file.getChannel();
+		size = channel.size();
+
+		try {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+
+			if (header.getInt() != ColumnarFixtureWriter.MAGIC || header.getInt() != ColumnarFixtureWriter.VERSION) {
+				throw new IOException("The file " + path + " is not a columnar fixture file of version " + ColumnarFixtureWriter.VERSION + ".");
+			}
+
+			table = readName(header);
+			columns = new String[header.getInt()];
+			types = new ColumnType[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = readName(header);
+				types[i] = ColumnType.values()[header.get()];
+			}
+			keyColumn = header.getInt();
+			position = header.position();
+		}
+		catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+
+		nullOffsets = new int[columns.length];
+		dataOffsets = new int[columns.length];
+	}
+
+	String getTable() {
+		return table;
+	}
+
+	String[] getColumns() {
+		return columns;
+	}
+
+	ColumnType[] getTypes() {
+		return types;
+	}
+
+	int getKeyColumn() {
+		return keyColumn;
+	}
+
+	/**
+	 * Move to the next block
+	 *
+	 * @param mapData True to map the data of the block, false to read only its header
+	 * @return True if there is a block, false at the end of the file
+	 * @throws IOException Any error during the reading
+	 */
+	boolean nextBlock(boolean mapData) throws IOException {
+		if (position >= size) {
+			return false;
+		}
+
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, position, BLOCK_HEADER);
+		rows = header.getInt();
+		long length = header.getLong();
+		minKey = header.getLong();
+		maxKey = header.getLong();
+
+		if (mapData) {
+			data = channel.map(FileChannel.MapMode.READ_ONLY, position + BLOCK_HEADER, length);
+
+			int offset = 0;
+			for (int c = 0; c < columns.length; c++) {
+				nullOffsets[c] = offset;
+				offset += (rows + 7) / 8;
+				dataOffsets[c] = offset;
+
+				if (types[c] == ColumnType.STRING) {
+					offset += 4 * rows + 4 + data.getInt(offset + 4 * rows);
+				}
+				else {
+					offset += types[c].getWidth() * rows;
+				}
+			}
+		}
+		else {
+			data = null;
+		}
+
+		position += BLOCK_HEADER + length;
+		return true;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	long getMinKey() {
+		return minKey;
+	}
+
+	long getMaxKey() {
+		return maxKey;
+	}
+
+	boolean isNull(int column, int row) {
+		return (data.get(nullOffsets[column] + row / 8) & (1 << (row % 8))) != 0;
+	}
+
+	long getLong(int column, int row) {
+		return data.getLong(dataOffsets[column] + 8 * row);
+	}
+
+	int getInt(int column, int row) {
+		return data.getInt(dataOffsets[column] + 4 * row);
+	}
+
+	double getDouble(int column, int row) {
+		return data.getDouble(dataOffsets[column] + 8 * row);
+	}
+
+	String getString(int column, int row) {
+		int start = data.getInt(dataOffsets[column] + 4 * row);
+		int length = data.getInt(dataOffsets[column] + 4 * row + 4) - start;
+		int bytes = dataOffsets[column] + 4 * (rows + 1) + start;
+
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			scratch[i] = data.get(bytes + i);
+		}
+
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		data = null;
+		file.close();
+	}
+
+	private static String readName(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
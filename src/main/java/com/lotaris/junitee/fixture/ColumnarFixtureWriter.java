@@ -0,0 +1,243 @@
+package com.lotaris.junitee.fixture;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writer of the columnar fixture files read by the columnar fixture generators. The rows
+ * of one table are written by blocks. In a block, the values of each column are stored
+ * contiguously after a bitmap of the null values. Each block keeps the range of the values
+ * of the key column to delete the rows of the block without reading them.
+ *
+ * The file starts with the header:
+ * <pre>
+ * int magic, int version, table name, int column count, (column name, byte type) by column, int key column
+ * </pre>
+ * followed by the blocks:
+ * <pre>
+ * int row count, long byte length of the data, long min key, long max key, data of the columns
+ * </pre>
+ * The names are written as a short length followed by the UTF-8 bytes. The strings of a
+ * column are written as the offsets (row count + 1 ints) followed by the UTF-8 bytes.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ColumnarFixtureWriter implements AutoCloseable {
+	static final int MAGIC = 0x4A454346;
+	static final int VERSION = 1;
+
+	/**
+	 * Default number of rows by block
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	private final DataOutputStream out;
+	private final String[] columns;
+	private final ColumnType[] types;
+	private final int keyColumn;
+	private final int blockSize;
+
+	/**
+	 * The rows of the current block
+	 */
+	private final List<Object[]> block;
+
+	/**
+	 * Constructor
+	 *
+	 * @param file The file to write
+	 * @param table The name of the table
+	 * @param columns The name of the columns
+	 * @param types The types of the columns
+	 * @param keyColumn The name of the key column used to delete the rows, it must be a LONG column
+	 * @param blockSize The number of rows by block
+	 * @throws IOException Any error during the writing of the header
+	 */
+	public ColumnarFixtureWriter(File file, String table, String[] columns, ColumnType[] types, String keyColumn, int blockSize) throws IOException {
+		if (columns.length != types.length) {
+			throw new IllegalArgumentException("There must be one type for each column.");
+		}
+
+		this.columns = columns.clone();
+		this.types = types.clone();
+		this.keyColumn = indexOf(this.columns, keyColumn);
+		this.blockSize = blockSize;
+		this.block = new ArrayList<>(blockSize);
+
+		if (this.keyColumn < 0 || this.types[this.keyColumn] != ColumnType.LONG) {
+			throw new IllegalArgumentException("The key column " + keyColumn + " must be a LONG column of the table.");
+		}
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeName(table);
+		out.writeInt(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			writeName(columns[i]);
+			out.writeByte(types[i].ordinal());
+		}
+		out.writeInt(this.keyColumn);
+	}
+
+	/**
+	 * Constructor with the default block size
+	 *
+	 * @param file The file to write
+	 * @param table The name of the table
+	 * @param columns The name of the columns
+	 * @param types The types of the columns
+	 * @param keyColumn The name of the key column used to delete the rows, it must be a LONG column
+	 * @throws IOException Any error during the writing of the header
+	 */
+	public ColumnarFixtureWriter(File file, String table, String[] columns, ColumnType[] types, String keyColumn) throws IOException {
+		this(file, table, columns, types, keyColumn, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Add a row
+	 *
+	 * @param values The values of the row, one by column
+	 * @return This
+	 * @throws IOException Any error during the writing of a full block
+	 */
+	public ColumnarFixtureWriter addRow(Object... values) throws IOException {
+		if (values.length != columns.length) {
+			throw new IllegalArgumentException("There must be one value for each column.");
+		}
+		if (values[keyColumn] == null) {
+			throw new IllegalArgumentException("The key column cannot be null.");
+		}
+
+		block.add(values.clone());
+		if (block.size() == blockSize) {
+			writeBlock();
+		}
+		return this;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!block.isEmpty()) {
+				writeBlock();
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the rows of the current block
+	 *
+	 * @throws IOException Any error during the writing
+	 */
+	private void writeBlock() throws IOException {
+		int rows = block.size();
+		long minKey = Long.MAX_VALUE;
+		long maxKey = Long.MIN_VALUE;
+		for (Object[] row : block) {
+			long key = ((Number) row[keyColumn]).longValue();
+			minKey = Math.min(minKey, key);
+			maxKey = Math.max(maxKey, key);
+		}
+
+		// Encode the strings first to know the length of the block
+		byte[][][] strings = new byte[columns.length][][];
+		long length = 0;
+		for (int c = 0; c < columns.length; c++) {
+			length += (rows + 7) / 8;
+
+			if (types[c] == ColumnType.STRING) {
+				strings[c] = new byte[rows][];
+				length += 4L * (rows + 1);
+				for (int r = 0; r < rows; r++) {
+					Object value = block.get(r)[c];
+					strings[c][r] = value == null ? new byte[0] : value.toString().getBytes(StandardCharsets.UTF_8);
+					length += strings[c][r].length;
+				}
+			}
+			else {
+				length += (long) types[c].getWidth() * rows;
+			}
+		}
+
+		out.writeInt(rows);
+		out.writeLong(length);
+		out.writeLong(minKey);
+		out.writeLong(maxKey);
+
+		for (int c = 0; c < columns.length; c++) {
+			writeNulls(c);
+
+			switch (types[c]) {
+				case LONG:
+					for (Object[] row : block) {
+						out.writeLong(row[c] == null ? 0 : ((Number) row[c]).longValue());
+					}
+					break;
+				case INTEGER:
+					for (Object[] row : block) {
+						out.writeInt(row[c] == null ? 0 : ((Number) row[c]).intValue());
+					}
+					break;
+				case DOUBLE:
+					for (Object[] row : block) {
+						out.writeDouble(row[c] == null ? 0 : ((Number) row[c]).doubleValue());
+					}
+					break;
+				case STRING:
+					int offset = 0;
+					out.writeInt(offset);
+					for (byte[] bytes : strings[c]) {
+						offset += bytes.length;
+						out.writeInt(offset);
+					}
+					for (byte[] bytes : strings[c]) {
+						out.write(bytes);
+					}
+					break;
+			}
+		}
+
+		block.clear();
+	}
+
+	/**
+	 * Write the bitmap of the null values of a column
+	 *
+	 * @param column The index of the column
+	 * @throws IOException Any error during the writing
+	 */
+	private void writeNulls(int column) throws IOException {
+		byte[] bitmap = new byte[(block.size() + 7) / 8];
+		for (int r = 0; r < block.size(); r++) {
+			if (block.get(r)[column] == null) {
+				bitmap[r / 8] |= 1 << (r % 8);
+			}
+		}
+		out.write(bitmap);
+	}
+
+	private void writeName(String name) throws IOException {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static int indexOf(String[] columns, String column) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equals(column)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
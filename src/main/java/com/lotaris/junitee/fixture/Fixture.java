@@ -0,0 +1,146 @@
+package com.lotaris.junitee.fixture;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A fixture is a set of rows captured after a data generation. It can be inserted
+ * again through batched JDBC inserts without running the data generators, then
+ * deleted through the primary keys of the rows.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class Fixture {
+	/**
+	 * Number of rows by JDBC batch
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	/**
+	 * The tables in the order to insert them
+	 */
+	private final List<FixtureTable> tables;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tables The tables in the order to insert them
+	 */
+	Fixture(List<FixtureTable> tables) {
+		this.tables = Collections.unmodifiableList(tables);
+	}
+
+	/**
+	 * @return The tables in the order to insert them
+	 */
+	List<FixtureTable> getTables() {
+		return tables;
+	}
+
+	/**
+	 * @return The number of rows of the fixture
+	 */
+	public int getRowCount() {
+		int count = 0;
+		for (FixtureTable table : tables) {
+			count += table.getRows().size();
+		}
+		return count;
+	}
+
+	/**
+	 * Insert the rows of the fixture, table after table
+	 *
+	 * @param connection The connection to the database
+	 * @throws FixtureException Any error during the insertion
+	 */
+	public void insert(Connection connection) throws FixtureException {
+		for (FixtureTable table : tables) {
+			if (table.getRows().isEmpty()) {
+				continue;
+			}
+
+			StringBuilder columns = new StringBuilder();
+			StringBuilder parameters = new StringBuilder();
+			for (String column : table.getColumns()) {
+				columns.append(columns.length() > 0 ? ", " : "").append(column);
+				parameters.append(parameters.length() > 0 ? ", ?" : "?");
+			}
+
+			String sql = "INSERT INTO " + table.getName() + " (" + columns + ") VALUES (" + parameters + ")";
+			int[] indexes = new int[table.getColumns().length];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = i;
+			}
+
+			execute(connection, sql, table, indexes);
+		}
+	}
+
+	/**
+	 * Delete the rows of the fixture through their primary keys, table after table
+	 * in the reverse order of the insertion
+	 *
+	 * @param connection The connection to the database
+	 * @throws FixtureException Any error during the deletion
+	 */
+	public void delete(Connection connection) throws FixtureException {
+		for (int i = tables.size() - 1; i >= 0; i--) {
+			FixtureTable table = tables.get(i);
+
+			if (table.getRows().isEmpty()) {
+				continue;
+			}
+
+			StringBuilder condition = new StringBuilder();
+			for (int keyColumn : table.getKeyColumns()) {
+				condition.append(condition.length() > 0 ? " AND " : "").append(table.getColumns()[keyColumn]).append(" = ?");
+			}
+
+			execute(connection, "DELETE FROM " + table.getName() + " WHERE " + condition, table, table.getKeyColumns());
+		}
+	}
+
+	/**
+	 * Execute a statement for each row of a table by batches
+	 *
+	 * @param connection The connection to the database
+	 * @param sql The statement
+	 * @param table The table
+	 * @param indexes The indexes of the columns to bind to the parameters
+	 * @throws FixtureException Any error during the execution
+	 */
+	private void execute(Connection connection, String sql, FixtureTable table, int[] indexes) throws FixtureException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int pending = 0;
+
+			for (Object[] row : table.getRows()) {
+				for (int i = 0; i < indexes.length; i++) {
+					int type = table.getTypes()[indexes[i]];
+					if (row[indexes[i]] == null) {
+						statement.setNull(i + 1, type);
+					}
+					else {
+						statement.setObject(i + 1, row[indexes[i]], type);
+					}
+				}
+
+				statement.addBatch();
+				if (++pending == BATCH_SIZE) {
+					statement.executeBatch();
+					pending = 0;
+				}
+			}
+
+			if (pending > 0) {
+				statement.executeBatch();
+			}
+		}
+		catch (SQLException sqle) {
+			throw new FixtureException("Unable to execute the statement [" + sql + "] for the fixture.", sqle);
+		}
+	}
+}
@@ -0,0 +1,440 @@
+package com.lotaris.junitee.fixture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The fixture cache keeps the rows generated by a set of data generators in fixture files.
+ * The first run of the data generators is recorded: the rows added to the tables of the cache
+ * are captured and stored in a file. The next runs insert the rows of the file instead of
+ * running the data generators.
+ *
+ * The files are identified by the data generator classes and a hash of the schema of the
+ * tables, a change of the columns of the tables invalidates the files. A change in the code
+ * of the data generators does not, the files must then be removed from the directory.
+ *
+ * The tables must be given in the order to insert them (referenced tables first) and
+ * must have a single numeric primary key allocated in increasing order (like sequences
+ * and identity columns). The rows added by a data generation are the rows with a key
+ * higher than the highest key of the table before the generation.
+ *
+ * The rows of a fixture are inserted with their recorded keys. The generators of the keys
+ * must then be moved past the highest key inserted, otherwise the next entities persisted
+ * get the keys of the fixture. As this depends on the database and on the way the keys are
+ * allocated, the statement to run for each table is configured with advanceKeys.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class FixtureCache {
+	private static final Logger LOG = LoggerFactory.getLogger(FixtureCache.class);
+
+	/**
+	 * The numeric SQL types of the primary keys supported
+	 */
+	private static final Set<Integer> NUMERIC_TYPES = new HashSet<>(Arrays.asList(
+		Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.TINYINT, Types.NUMERIC, Types.DECIMAL
+	));
+
+	/**
+	 * Extension of the fixture files
+	 */
+	private static final String EXTENSION = ".fixture";
+
+	/**
+	 * Directory of the fixture files
+	 */
+	private final File directory;
+
+	/**
+	 * Tables to capture in the order to insert them
+	 */
+	private final List<String> tables;
+
+	/**
+	 * Statement to move the generator of the keys of a table past the keys of a fixture, null when not configured
+	 */
+	private String keyAdvanceStatement;
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory Directory of the fixture files
+	 * @param tables Tables to capture in the order to insert them
+	 */
+	public FixtureCache(File directory, String... tables) {
+		this.directory = directory;
+		this.tables = Arrays.asList(tables);
+	}
+
+	/**
+	 * Configure the statement run for each table after the rows of a fixture are inserted to
+	 * move the generator of its keys past the highest key inserted. The placeholders {table},
+	 * {column}, {highest} and {next} are replaced by the name of the table, the name of its key
+	 * column, the highest key inserted and the key that follows. For example:
+	 * 
+	 * <ul>
+	 *	<li>Identity columns (H2, HSQLDB, Derby): ALTER TABLE {table} ALTER COLUMN {column} RESTART WITH {next}</li>
+	 *	<li>Identity columns (MySQL): ALTER TABLE {table} AUTO_INCREMENT = {next}</li>
+	 *	<li>Serial columns (PostgreSQL): SELECT setval(pg_get_serial_sequence('{table}', '{column}'), {highest})</li>
+	 *	<li>Table generator: UPDATE SEQUENCE SET SEQ_COUNT = {highest} WHERE SEQ_NAME = 'SEQ_GEN' AND SEQ_COUNT &lt; {highest}</li>
+	 * </ul>
+	 * 
+	 * The keys already allocated in memory by the persistence provider are not affected, the
+	 * fixtures should be inserted before the persistence provider allocates keys.
+	 *
+	 * @param statement The statement with the placeholders
+	 * @return This
+	 */
+	public FixtureCache advanceKeys(String statement) {
+		keyAdvanceStatement = statement;
+		return this;
+	}
+
+	/**
+	 * Calculate the key of the fixture of a set of data generators
+	 *
+	 * @param dataGeneratorClasses The data generator classes
+	 * @param connection The connection to the database to retrieve the schema of the tables
+	 * @return The key
+	 * @throws FixtureException Any error during the retrieval of the schema
+	 */
+	public String key(Class<?>[] dataGeneratorClasses, Connection connection) throws FixtureException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+			for (Class<?> dataGeneratorClass : dataGeneratorClasses) {
+				digest.update(dataGeneratorClass.getName().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+
+			DatabaseMetaData metaData = connection.getMetaData();
+			for (String table : tables) {
+				digest.update(table.getBytes(StandardCharsets.UTF_8));
+
+				try (ResultSet columns = metaData.getColumns(null, null, resolveTableName(metaData, table), null)) {
+					while (columns.next()) {
+						String column = columns.getString("COLUMN_NAME") + ":" + columns.getInt("DATA_TYPE") + ":" + columns.getInt("COLUMN_SIZE");
+						digest.update(column.getBytes(StandardCharsets.UTF_8));
+					}
+				}
+			}
+
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest()) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException | SQLException e) {
+			throw new FixtureException("Unable to calculate the key of the fixture.", e);
+		}
+	}
+
+	/**
+	 * Load a fixture
+	 *
+	 * @param key The key of the fixture
+	 * @return The fixture, null when it was not recorded yet
+	 * @throws FixtureException Any error during the reading of the file
+	 */
+	public Fixture load(String key) throws FixtureException {
+		File file = new File(directory, key + EXTENSION);
+
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return FixtureFormat.read(in);
+		}
+		catch (IOException ioe) {
+			throw new FixtureException("Unable to read the fixture file " + file.getAbsolutePath(), ioe);
+		}
+	}
+
+	/**
+	 * Store a fixture. The file is written next to its final location and moved when
+	 * complete to avoid partial files.
+	 *
+	 * @param key The key of the fixture
+	 * @param fixture The fixture
+	 * @throws FixtureException Any error during the writing of the file
+	 */
+	public void store(String key, Fixture fixture) throws FixtureException {
+		File file = new File(directory, key + EXTENSION);
+		File temporary = new File(directory, key + EXTENSION + ".tmp");
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new FixtureException("Unable to create the directory of the fixtures " + directory.getAbsolutePath());
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			FixtureFormat.write(fixture, out);
+		}
+		catch (IOException ioe) {
+			temporary.delete();
+			throw new FixtureException("Unable to write the fixture file " + file.getAbsolutePath(), ioe);
+		}
+
+		if (!temporary.renameTo(file)) {
+			temporary.delete();
+			throw new FixtureException("Unable to move the fixture file to " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Insert the rows of a fixture and move the generators of the keys of its tables past
+	 * the highest keys inserted
+	 *
+	 * @param fixture The fixture
+	 * @param connection The connection to the database
+	 * @throws FixtureException Any error during the insertion
+	 */
+	public void insert(Fixture fixture, Connection connection) throws FixtureException {
+		fixture.insert(connection);
+
+		if (keyAdvanceStatement == null) {
+			LOG.warn("The generators of the keys are not moved past the keys of the fixture, configure advanceKeys on the fixture cache.");
+			return;
+		}
+
+		for (FixtureTable table : fixture.getTables()) {
+			Long highest = table.getHighestKey();
+
+			if (highest != null) {
+				String sql = keyAdvanceStatement
+					.replace("{table}", table.getName())
+					.replace("{column}", table.getColumns()[table.getKeyColumns()[0]])
+					.replace("{highest}", Long.toString(highest))
+					.replace("{next}", Long.toString(highest + 1));
+
+				try (Statement statement = connection.createStatement()) {
+					statement.execute(sql);
+				}
+				catch (SQLException sqle) {
+					throw new FixtureException("Unable to move the keys of the table " + table.getName() + " with [" + sql + "].", sqle);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take a snapshot of the highest primary key of the tables before a data generation
+	 *
+	 * @param connection The connection to the database
+	 * @return The snapshot to capture the rows added after it
+	 * @throws FixtureException Any error during the reading of the tables
+	 */
+	public Snapshot snapshot(Connection connection) throws FixtureException {
+		try {
+			DatabaseMetaData metaData = connection.getMetaData();
+			Map<String, String> keyColumns = new HashMap<>();
+			Map<String, Object> watermarks = new HashMap<>();
+
+			for (String table : tables) {
+				String keyColumn = numericKeyColumn(metaData, table);
+				keyColumns.put(table, keyColumn);
+
+				try (Statement statement = connection.createStatement(); 
+					ResultSet rows = statement.executeQuery("SELECT MAX(" + keyColumn + ") FROM " + table)) {
+					watermarks.put(table, rows.next() ? rows.getObject(1) : null);
+				}
+			}
+
+			return new Snapshot(keyColumns, watermarks);
+		}
+		catch (SQLException sqle) {
+			throw new FixtureException("Unable to take the snapshot of the tables of the fixture.", sqle);
+		}
+	}
+
+	/**
+	 * Retrieve the column of the primary key of a table
+	 *
+	 * @param metaData The metadata of the database
+	 * @param table The table
+	 * @return The column of the primary key
+	 * @throws FixtureException When the table has not a single numeric primary key
+	 * @throws SQLException Any error
+	 */
+	private static String numericKeyColumn(DatabaseMetaData metaData, String table) throws FixtureException, SQLException {
+		String tableName = resolveTableName(metaData, table);
+
+		List<String> columns = new ArrayList<>();
+		try (ResultSet primaryKeys = metaData.getPrimaryKeys(null, null, tableName)) {
+			while (primaryKeys.next()) {
+				columns.add(primaryKeys.getString("COLUMN_NAME"));
+			}
+		}
+
+		if (columns.size() != 1) {
+			throw new FixtureException("The table " + table + " has not a single column primary key and cannot be captured in a fixture.");
+		}
+
+		try (ResultSet column = metaData.getColumns(null, null, tableName, columns.get(0))) {
+			if (!column.next() || !NUMERIC_TYPES.contains(column.getInt("DATA_TYPE"))) {
+				throw new FixtureException("The primary key of the table " + table + " is not numeric and cannot be captured in a fixture.");
+			}
+		}
+
+		return columns.get(0);
+	}
+
+	/**
+	 * Resolve the name of a table as stored in the metadata of the database
+	 *
+	 * @param metaData The metadata of the database
+	 * @param table The name of the table
+	 * @return The name of the table in the case used by the database
+	 * @throws SQLException Any error
+	 */
+	private static String resolveTableName(DatabaseMetaData metaData, String table) throws SQLException {
+		if (metaData.storesUpperCaseIdentifiers()) {
+			return table.toUpperCase();
+		}
+		else if (metaData.storesLowerCaseIdentifiers()) {
+			return table.toLowerCase();
+		}
+		return table;
+	}
+
+	/**
+	 * Snapshot of the highest primary key of the tables before a data generation
+	 */
+	public final class Snapshot {
+		/**
+		 * Column of the primary key of each table
+		 */
+		private final Map<String, String> keyColumns;
+
+		/**
+		 * Highest primary key of each table, null when the table was empty
+		 */
+		private final Map<String, Object> watermarks;
+
+		private Snapshot(Map<String, String> keyColumns, Map<String, Object> watermarks) {
+			this.keyColumns = keyColumns;
+			this.watermarks = watermarks;
+		}
+
+		/**
+		 * Capture the rows added since the snapshot
+		 *
+		 * @param connection The connection to the database
+		 * @return The fixture with the rows added
+		 * @throws FixtureException Any error during the reading of the tables
+		 */
+		public Fixture capture(Connection connection) throws FixtureException {
+			List<FixtureTable> fixtureTables = new ArrayList<>(tables.size());
+
+			try {
+				for (String table : tables) {
+					String keyColumn = keyColumns.get(table);
+					Object watermark = watermarks.get(table);
+
+					String sql = "SELECT * FROM " + table + (watermark != null ? " WHERE " + keyColumn + " > ?" : "") + " ORDER BY " + keyColumn;
+					try (PreparedStatement statement = connection.prepareStatement(sql)) {
+						if (watermark != null) {
+							statement.setObject(1, watermark);
+						}
+
+						try (ResultSet rows = statement.executeQuery()) {
+							ResultSetMetaData metaData = rows.getMetaData();
+							String[] columns = new String[metaData.getColumnCount()];
+							int[] types = new int[columns.length];
+
+							for (int i = 0; i < columns.length; i++) {
+								columns[i] = metaData.getColumnName(i + 1);
+								types[i] = metaData.getColumnType(i + 1);
+							}
+
+							FixtureTable fixtureTable = new FixtureTable(table, columns, types, new int[] { keyIndex(table, columns) });
+
+							while (rows.next()) {
+								Object[] row = new Object[columns.length];
+								for (int i = 0; i < columns.length; i++) {
+									row[i] = readValue(rows, i + 1);
+								}
+								fixtureTable.addRow(row);
+							}
+
+							fixtureTables.add(fixtureTable);
+						}
+					}
+				}
+			}
+			catch (SQLException sqle) {
+				throw new FixtureException("Unable to capture the rows of the fixture.", sqle);
+			}
+
+			return new Fixture(fixtureTables);
+		}
+
+		/**
+		 * @param table The table
+		 * @param columns The columns of the table
+		 * @return The index of the primary key column in the columns
+		 * @throws FixtureException When the primary key column is missing
+		 */
+		private int keyIndex(String table, String[] columns) throws FixtureException {
+			for (int i = 0; i < columns.length; i++) {
+				if (columns[i].equalsIgnoreCase(keyColumns.get(table))) {
+					return i;
+				}
+			}
+
+			throw new FixtureException("The primary key column " + keyColumns.get(table) + " is missing from the table " + table);
+		}
+
+		/**
+		 * Read a value of a row. The large objects are read completely.
+		 *
+		 * @param rows The rows
+		 * @param index The index of the column
+		 * @return The value
+		 * @throws SQLException Any error
+		 */
+		private Object readValue(ResultSet rows, int index) throws SQLException {
+			Object value = rows.getObject(index);
+
+			if (value instanceof Clob) {
+				Clob clob = (Clob) value;
+				return clob.getSubString(1, (int) clob.length());
+			}
+			else if (value instanceof Blob) {
+				Blob blob = (Blob) value;
+				return blob.getBytes(1, (int) blob.length());
+			}
+
+			return value;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.lotaris.junitee.fixture;
+
+/**
+ * Dedicated exception for the fixtures
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class FixtureException extends Exception {
+	public FixtureException() {}
+
+	public FixtureException(String message) {
+		super(message);
+	}
+
+	public FixtureException(Throwable cause) {
+		super(cause);
+	}
+
+	public FixtureException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
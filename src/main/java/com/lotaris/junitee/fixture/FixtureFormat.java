@@ -0,0 +1,244 @@
+package com.lotaris.junitee.fixture;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary format of the fixture files. A file starts with a header followed by the
+ * tables. Each table is described by its name, its columns with their SQL types and
+ * the indexes of its primary key columns, followed by its rows. Each value of a row
+ * is written with a tag giving its Java type.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+final class FixtureFormat {
+	/**
+	 * Header of the fixture files
+	 */
+	private static final int MAGIC = 0x4A454658;
+
+	/**
+	 * Version of the format
+	 */
+	private static final int VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte LONG = 2;
+	private static final byte INTEGER = 3;
+	private static final byte SHORT = 4;
+	private static final byte BYTE = 5;
+	private static final byte DOUBLE = 6;
+	private static final byte FLOAT = 7;
+	private static final byte BOOLEAN = 8;
+	private static final byte DECIMAL = 9;
+	private static final byte BYTES = 10;
+	private static final byte TIMESTAMP = 11;
+	private static final byte DATE = 12;
+	private static final byte TIME = 13;
+
+	private FixtureFormat() {}
+
+	/**
+	 * Write a fixture
+	 *
+	 * @param fixture The fixture to write
+	 * @param out The output
+	 * @throws IOException Any error during the writing or a value of an unsupported type
+	 */
+	static void write(Fixture fixture, DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(fixture.getTables().size());
+
+		for (FixtureTable table : fixture.getTables()) {
+			out.writeUTF(table.getName());
+
+			out.writeInt(table.getColumns().length);
+			for (int i = 0; i < table.getColumns().length; i++) {
+				out.writeUTF(table.getColumns()[i]);
+				out.writeInt(table.getTypes()[i]);
+			}
+
+			out.writeInt(table.getKeyColumns().length);
+			for (int keyColumn : table.getKeyColumns()) {
+				out.writeInt(keyColumn);
+			}
+
+			out.writeInt(table.getRows().size());
+			for (Object[] row : table.getRows()) {
+				for (Object value : row) {
+					writeValue(value, out);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read a fixture
+	 *
+	 * @param in The input
+	 * @return The fixture read
+	 * @throws IOException Any error during the reading or an invalid file
+	 */
+	static Fixture read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("The file is not a fixture file of version " + VERSION + ".");
+		}
+
+		int tableCount = in.readInt();
+		List<FixtureTable> tables = new ArrayList<>(tableCount);
+
+		for (int t = 0; t < tableCount; t++) {
+			String name = in.readUTF();
+
+			int columnCount = in.readInt();
+			String[] columns = new String[columnCount];
+			int[] types = new int[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				columns[i] = in.readUTF();
+				types[i] = in.readInt();
+			}
+
+			int[] keyColumns = new int[in.readInt()];
+			for (int i = 0; i < keyColumns.length; i++) {
+				keyColumns[i] = in.readInt();
+			}
+
+			FixtureTable table = new FixtureTable(name, columns, types, keyColumns);
+
+			int rowCount = in.readInt();
+			for (int r = 0; r < rowCount; r++) {
+				Object[] row = new Object[columnCount];
+				for (int i = 0; i < columnCount; i++) {
+					row[i] = readValue(in);
+				}
+				table.addRow(row);
+			}
+
+			tables.add(table);
+		}
+
+		return new Fixture(tables);
+	}
+
+	/**
+	 * Write a value with its tag
+	 *
+	 * @param value The value
+	 * @param out The output
+	 * @throws IOException Any error during the writing or a value of an unsupported type
+	 */
+	private static void writeValue(Object value, DataOutputStream out) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeBytes(((String) value).getBytes(StandardCharsets.UTF_8), out);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof BigDecimal) {
+			out.writeByte(DECIMAL);
+			out.writeUTF(value.toString());
+		}
+		else if (value instanceof byte[]) {
+			out.writeByte(BYTES);
+			writeBytes((byte[]) value, out);
+		}
+		else if (value instanceof Timestamp) {
+			out.writeByte(TIMESTAMP);
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		}
+		else if (value instanceof Date) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) value).getTime());
+		}
+		else if (value instanceof Time) {
+			out.writeByte(TIME);
+			out.writeLong(((Time) value).getTime());
+		}
+		else {
+			throw new IOException("The values of type " + value.getClass().getCanonicalName() + " cannot be stored in a fixture.");
+		}
+	}
+
+	/**
+	 * Read a value with its tag
+	 *
+	 * @param in The input
+	 * @return The value
+	 * @throws IOException Any error during the reading or an unknown tag
+	 */
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+
+		switch (tag) {
+			case NULL: return null;
+			case STRING: return new String(readBytes(in), StandardCharsets.UTF_8);
+			case LONG: return in.readLong();
+			case INTEGER: return in.readInt();
+			case SHORT: return in.readShort();
+			case BYTE: return in.readByte();
+			case DOUBLE: return in.readDouble();
+			case FLOAT: return in.readFloat();
+			case BOOLEAN: return in.readBoolean();
+			case DECIMAL: return new BigDecimal(in.readUTF());
+			case BYTES: return readBytes(in);
+			case TIMESTAMP:
+				Timestamp timestamp = new Timestamp(in.readLong());
+				timestamp.setNanos(in.readInt());
+				return timestamp;
+			case DATE: return new Date(in.readLong());
+			case TIME: return new Time(in.readLong());
+			default: throw new IOException("Unknown value tag " + tag + " in the fixture file.");
+		}
+	}
+
+	private static void writeBytes(byte[] bytes, DataOutputStream out) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,100 @@
+package com.lotaris.junitee.fixture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rows of a table captured in a fixture with the description of the columns
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class FixtureTable {
+	/**
+	 * Name of the table
+	 */
+	private final String name;
+
+	/**
+	 * Name of the columns
+	 */
+	private final String[] columns;
+
+	/**
+	 * SQL types of the columns as defined in java.sql.Types
+	 */
+	private final int[] types;
+
+	/**
+	 * Indexes of the columns of the primary key
+	 */
+	private final int[] keyColumns;
+
+	/**
+	 * The rows, one value by column
+	 */
+	private final List<Object[]> rows = new ArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param name Name of the table
+	 * @param columns Name of the columns
+	 * @param types SQL types of the columns
+	 * @param keyColumns Indexes of the columns of the primary key
+	 */
+	FixtureTable(String name, String[] columns, int[] types, int[] keyColumns) {
+		this.name = name;
+		this.columns = columns;
+		this.types = types;
+		this.keyColumns = keyColumns;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	String[] getColumns() {
+		return columns;
+	}
+
+	int[] getTypes() {
+		return types;
+	}
+
+	int[] getKeyColumns() {
+		return keyColumns;
+	}
+
+	List<Object[]> getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return The highest key of the rows, null when the table has no rows or has not a single numeric key
+	 */
+	Long getHighestKey() {
+		if (keyColumns.length != 1) {
+			return null;
+		}
+
+		Long highest = null;
+		for (Object[] row : rows) {
+			Object key = row[keyColumns[0]];
+
+			if (!(key instanceof Number)) {
+				return null;
+			}
+			else if (highest == null || ((Number) key).longValue() > highest) {
+				highest = ((Number) key).longValue();
+			}
+		}
+		return highest;
+	}
+
+	/**
+	 * @param row The row to add
+	 */
+	void addRow(Object[] row) {
+		rows.add(row);
+	}
+}
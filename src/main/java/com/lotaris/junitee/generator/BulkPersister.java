@@ -0,0 +1,223 @@
+package com.lotaris.junitee.generator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bulk persister allows a data generator to persist a large number of entities
+ * in bounded memory. The persistence context is flushed every time a chunk of entities
+ * is persisted and the entities of the chunk are detached, so they are no more dirty
+ * checked. The persistence context is not cleared: the other entities managed by the
+ * entity manager, for example the ones of the other data generators, stay managed.
+ *
+ * The persister must be used inside the transaction of the data generator (in the
+ * generate method). Once all the entities are persisted, the finish method flushes
+ * the last chunk, restores the JDBC batch size of the entity manager and reports the
+ * throughput. The persister is closeable to restore the JDBC batch size when the 
+ * persistence fails before the finish method:
+ * 
+ * <pre>
+ * try (BulkPersister persister = new BulkPersister(entityManager, 500)) {
+ *   persister.persistAll(entities).finish();
+ * }
+ * </pre>
+ *
+ * The JDBC batch size given to the entity manager is a best-effort hint. Hibernate
+ * reads it from the properties of the entity manager, while EclipseLink configures the
+ * batch writing of the persistence unit when the session is created and ignores it.
+ * The memory is bounded by the chunks in any case.
+ *
+ * As the entities persisted are detached after each chunk, they must be reloaded to
+ * be modified afterwards. The entities reached from them through a cascade detach
+ * are detached as well.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class BulkPersister implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(BulkPersister.class);
+
+	/**
+	 * JDBC batch size properties of the known persistence providers. Providers that
+	 * configure the batch size per persistence unit ignore them.
+	 */
+	private static final String[] BATCH_SIZE_PROPERTIES = {
+		"hibernate.jdbc.batch_size",
+		"eclipselink.jdbc.batch-writing.size"
+	};
+
+	/**
+	 * Entity manager to persist the entities
+	 */
+	private final EntityManager entityManager;
+
+	/**
+	 * Number of entities to persist before a flush and clear
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Entities persisted since the last flush
+	 */
+	private final List<Object> chunk;
+
+	/**
+	 * JDBC batch size properties of the entity manager before the persister changed them
+	 */
+	private final Map<String, Object> previousProperties = new HashMap<>();
+
+	/**
+	 * Whether the persister is finished
+	 */
+	private boolean finished = false;
+
+	/**
+	 * Whether the JDBC batch size of the entity manager is restored
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Number of entities persisted
+	 */
+	private long count = 0;
+
+	/**
+	 * Start of the persistence in nano seconds
+	 */
+	private final long start;
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityManager The entity manager to persist the entities
+	 * @param chunkSize The number of entities to persist before a flush and clear
+	 */
+	public BulkPersister(EntityManager entityManager, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size should be at least one.");
+		}
+
+		this.entityManager = entityManager;
+		this.chunkSize = chunkSize;
+		this.chunk = new ArrayList<>(chunkSize);
+
+		// Align the JDBC batches with the chunks, JPA cannot remove a property so only the defined ones are restored
+		Map<String, Object> properties = entityManager.getProperties();
+		for (String property : BATCH_SIZE_PROPERTIES) {
+			if (properties != null && properties.containsKey(property)) {
+				previousProperties.put(property, properties.get(property));
+			}
+			entityManager.setProperty(property, chunkSize);
+		}
+
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Persist an entity. The persistence context is flushed and the entities of the chunk
+	 * are detached when the chunk is full.
+	 *
+	 * @param entity The entity to persist
+	 * @return This
+	 */
+	public BulkPersister persist(Object entity) {
+		entityManager.persist(entity);
+		chunk.add(entity);
+		count++;
+
+		if (chunk.size() == chunkSize) {
+			flush();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Persist several entities
+	 *
+	 * @param entities The entities to persist
+	 * @return This
+	 */
+	public BulkPersister persistAll(Iterable<?> entities) {
+		for (Object entity : entities) {
+			persist(entity);
+		}
+		return this;
+	}
+
+	/**
+	 * Flush the last chunk, restore the JDBC batch size of the entity manager and report
+	 * the throughput
+	 *
+	 * @return The number of entities persisted
+	 */
+	public long finish() {
+		if (finished) {
+			return count;
+		}
+
+		try {
+			if (!chunk.isEmpty()) {
+				flush();
+			}
+		}
+		finally {
+			finished = true;
+			close();
+		}
+
+		long elapsed = System.nanoTime() - start;
+		if (LOG.isInfoEnabled()) {
+			LOG.info("{} entities persisted in {} ms ({} entities/s) by chunks of {}.",
+				count, elapsed / 1000000, getThroughput(elapsed), chunkSize);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Restore the JDBC batch size of the entity manager without flushing the last chunk. 
+	 * Nothing is done when the persister is already finished or closed.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		for (Map.Entry<String, Object> property : previousProperties.entrySet()) {
+			entityManager.setProperty(property.getKey(), property.getValue());
+		}
+	}
+
+	/**
+	 * @return The number of entities persisted
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Flush the pending entities and detach them from the persistence context
+	 */
+	private void flush() {
+		entityManager.flush();
+		for (Object entity : chunk) {
+			entityManager.detach(entity);
+		}
+		chunk.clear();
+	}
+
+	/**
+	 * @param elapsed The elapsed time in nano seconds
+	 * @return The number of entities persisted by second
+	 */
+	private long getThroughput(long elapsed) {
+		return elapsed > 0 ? count * 1000000000L / elapsed : count;
+	}
+}
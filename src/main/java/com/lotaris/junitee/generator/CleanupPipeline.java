@@ -0,0 +1,179 @@
+package com.lotaris.junitee.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.MultipleFailureException;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The cleanup pipeline runs the cleanup of the finished tests in background to let the
+ * next test start right away. The cleanups are run one after another in the order the
+ * tests finished.
+ *
+ * The number of cleanups waiting to be run is limited. When the limit is reached, the
+ * test that hands its cleanup over waits for the pipeline to have room for it.
+ *
+ * The pipeline should be used as a JUnit class rule. It waits for all the cleanups at the
+ * end of the class (or of the suite when declared on a suite) and reports their failures.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class CleanupPipeline implements TestRule {
+	private static final Logger LOG = LoggerFactory.getLogger(CleanupPipeline.class);
+
+	/**
+	 * Maximum number of cleanups waiting or running in the pipeline
+	 */
+	private final int capacity;
+
+	/**
+	 * Permits to hand over a cleanup to the pipeline
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Worker to run the cleanups
+	 */
+	private final ExecutorService worker;
+
+	/**
+	 * The failures of the cleanups not yet reported
+	 */
+	private final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity Maximum number of cleanups waiting or running in the pipeline
+	 */
+	public CleanupPipeline(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of the pipeline should be at least one.");
+		}
+
+		this.capacity = capacity;
+		this.permits = new Semaphore(capacity);
+		this.worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "junitee-cleanup");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public Statement apply(final Statement base, Description description) {
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				List<Throwable> errors = new ArrayList<>();
+
+				try {
+					base.evaluate();
+				}
+				catch (Throwable t) {
+					errors.add(t);
+				}
+
+				try {
+					await();
+				}
+				catch (DataGeneratorException dge) {
+					errors.add(dge);
+				}
+
+				MultipleFailureException.assertEmpty(errors);
+			}
+		};
+	}
+
+	/**
+	 * Hand over a cleanup to the pipeline. Wait when the pipeline is full.
+	 *
+	 * @param cleanup The cleanup to run
+	 * @throws DataGeneratorException When the wait is interrupted
+	 */
+	void submit(final Cleanup cleanup) throws DataGeneratorException {
+		try {
+			permits.acquire();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new DataGeneratorException("Interrupted while waiting for room in the cleanup pipeline.", ie);
+		}
+
+		try {
+			worker.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						cleanup.run();
+					}
+					catch (Throwable t) {
+						LOG.error("The cleanup run in background failed.", t);
+						failures.add(t);
+					}
+					finally {
+						permits.release();
+					}
+				}
+			});
+		}
+		catch (RuntimeException re) {
+			permits.release();
+			throw re;
+		}
+	}
+
+	/**
+	 * Wait for all the cleanups handed over to the pipeline and report their failures.
+	 *
+	 * @throws DataGeneratorException The first failure of the cleanups, with the other ones suppressed
+	 */
+	public void await() throws DataGeneratorException {
+		try {
+			permits.acquire(capacity);
+			permits.release(capacity);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new DataGeneratorException("Interrupted while waiting for the cleanups to be done.", ie);
+		}
+
+		DataGeneratorException failure = null;
+		for (Throwable t = failures.poll(); t != null; t = failures.poll()) {
+			if (failure == null) {
+				failure = t instanceof DataGeneratorException ? (DataGeneratorException) t :
+					new DataGeneratorException("An unexpected error occured during the background cleanup.", t);
+			}
+			else {
+				failure.addSuppressed(t);
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Cleanup to run in the pipeline
+	 */
+	interface Cleanup {
+		/**
+		 * @throws Exception Any error during the cleanup
+		 */
+		void run() throws Exception;
+	}
+}
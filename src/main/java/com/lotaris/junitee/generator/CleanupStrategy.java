@@ -0,0 +1,37 @@
+package com.lotaris.junitee.generator;
+
+/**
+ * Define how the data of a test are cleaned up
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public enum CleanupStrategy {
+	/**
+	 * Use the strategy of the data generator manager
+	 */
+	DEFAULT,
+	
+	/**
+	 * Run the cleanup of each data generator
+	 */
+	GENERATORS,
+	
+	/**
+	 * Truncate the tables touched during the test. Falls back to DELETE when the tables
+	 * cannot be truncated.
+	 */
+	TRUNCATE,
+	
+	/**
+	 * Delete all the rows of the tables touched during the test. Falls back to GENERATORS
+	 * when the rows cannot be deleted.
+	 */
+	DELETE,
+	
+	/**
+	 * Delete the rows created above the highest identifier of each table touched during the
+	 * test, recorded before the first write of each table. Falls back to GENERATORS when an
+	 * entity has no numeric identifier or its table had no rows before the test.
+	 */
+	WATERMARK
+}
@@ -2,6 +2,7 @@ package com.lotaris.junitee.generator;
 
 import java.util.HashMap;
 import java.util.Map;
+import javax.persistence.EntityManager;
 
 /**
  * Use a composite data generator if you want to beneficiate from the power
@@ -13,22 +14,47 @@ import java.util.Map;
  * Basically, you have to override the setup method to put the code you need
  * to register and setup your data generators to be run in the correct order.
  * 
+ * The registered data generators form a graph of dependencies. By default, a
+ * data generator is run after the previously registered one. The registration
+ * can also declare explicitly the data generators to run before or no dependency
+ * at all. The data generators are run in the topological order of the graph and the
+ * cleanup follows the reverse order. The registered data generators share the entity 
+ * manager and the transaction of the composite data generator, they are not run at the
+ * same time. Use the parallel mode of the data generator manager to run data generators
+ * at the same time, each one with its own entity manager.
+ * 
+ * The entities of the registered streaming data generators are persisted by batches
+ * after their generate method, like the data generator manager does.
+ * 
+ * Each composite data generator has its own stream of synthetic data to generate
+ * the values of the data. The stream of a registered composite data generator is
+ * split from the stream of the composite data generator that registers it.
+ * 
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  */
 public abstract class CompositeDataGenerator implements IDataGenerator {
 	/**
-	 * Maintains the state of the data generation order when
-	 * register methods are called to register data generators
-	 * in certain order.
+	 * Maintains the dependencies between the data generators when
+	 * register methods are called to register data generators.
+	 */
+	private DataGeneratorGraph<IDataGenerator> graph = new DataGeneratorGraph<>();
+	
+	/**
+	 * Shortcut reference to keep the last data generator registered
+	 * into the composite generator. The next data generator registered
+	 * through the register method will run after it.
 	 */
-	private DataGeneratorRunner first;
+	private IDataGenerator last;
 	
 	/**
-	 * Shortcut reference to keep the current last data generator
-	 * runner registered into the composite generator. It helps to
-	 * add new data generator at the end in O(1) operation.
+	 * Entity manager to persist the entities of the registered streaming data generators
 	 */
-	private DataGeneratorRunner last;
+	private EntityManager streamingEntityManager;
+	
+	/**
+	 * Number of entities by batch of the registered streaming data generators
+	 */
+	private int streamingBatchSize;
 	
 	/**
 	 * Keep a list of dependencies that can be used into
@@ -44,6 +70,17 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 	private int numberToGenerate = 0;
 	private String prefix = null;
 	
+	/**
+	 * The stream of synthetic data of the composite data generator, created from
+	 * the seed zero when no stream is configured
+	 */
+	private SyntheticData syntheticData;
+
+	/**
+	 * Whether the setup was run, the data generation is retried without running it again
+	 */
+	private boolean setUp = false;
+	
 	/**
 	 * Define a dependency from a data generator to another one. This
 	 * allows to gain access to the data generator directly into
@@ -98,7 +135,8 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 	}
 	
 	/**
-	 * Configure a string prefix to be used in the data generation
+	 * Configure a string prefix to be used in the data generation. By default,
+	 * the prefix is the data namespace of the test run.
 	 * 
 	 * @param prefix The prefix to use
 	 * @return This
@@ -108,6 +146,42 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 		return this;
 	}
 
+	/**
+	 * Configure the seed of the synthetic data. The composite data generators registered
+	 * afterwards get a stream split from this one when they have no stream of their own.
+	 * 
+	 * @param seed The seed of the synthetic data
+	 * @return This
+	 */
+	public CompositeDataGenerator useSeed(long seed) {
+		return useSyntheticData(new SyntheticData(seed));
+	}
+	
+	/**
+	 * Configure the stream of synthetic data
+	 * 
+	 * @param syntheticData The stream of synthetic data
+	 * @return This
+	 */
+	CompositeDataGenerator useSyntheticData(SyntheticData syntheticData) {
+		this.syntheticData = syntheticData;
+		return this;
+	}
+
+	/**
+	 * Configure the persistence of the entities of the registered streaming data generators. The
+	 * registered composite data generators get the same configuration when they have none.
+	 * 
+	 * @param entityManager Entity manager to persist the entities
+	 * @param batchSize Number of entities by batch
+	 * @return This
+	 */
+	CompositeDataGenerator useStreaming(EntityManager entityManager, int batchSize) {
+		this.streamingEntityManager = entityManager;
+		this.streamingBatchSize = batchSize;
+		return this;
+	}
+
 	/**
 	 * @return The configuration value for the number to generate
 	 */
@@ -116,10 +190,24 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 	}
 
 	/**
-	 * @return The configuration value for the prefix to use
+	 * @return The configuration value for the prefix to use, the data namespace of the
+	 * test run when no prefix is configured
 	 */
 	protected String getPrefix() {
-		return prefix;
+		return prefix != null ? prefix : DataNamespace.current();
+	}
+	
+	/**
+	 * The stream of synthetic data is reserved to the composite data generator. The registered 
+	 * composite data generators get their own stream split from this one.
+	 * 
+	 * @return The stream of synthetic data to generate values
+	 */
+	protected SyntheticData getSyntheticData() {
+		if (syntheticData == null) {
+			syntheticData = new SyntheticData(0);
+		}
+		return syntheticData;
 	}
 	
 	/**
@@ -160,11 +248,64 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 	 * @param dataGenerator The data generator to register
 	 */
 	protected final void register(IDataGenerator dataGenerator) {
-		if (first == null) {
-			first = last = new DataGeneratorRunner(dataGenerator);
+		if (last == null) {
+			registerIndependent(dataGenerator);
 		}
 		else {
-			last = last.setNext(dataGenerator);
+			registerAfter(dataGenerator, last);
+		}
+	}
+	
+	/**
+	 * Register a data generator that does not depend on the other registered
+	 * data generators. It can be run at the same time than the other ones.
+	 * 
+	 * @param dataGenerator The data generator to register
+	 */
+	protected final void registerIndependent(IDataGenerator dataGenerator) {
+		graph.addNode(dataGenerator);
+		configure(dataGenerator);
+		last = dataGenerator;
+	}
+	
+	/**
+	 * Register a data generator to be run after other registered data generators.
+	 * The data generator is run as soon as all of them are done.
+	 * 
+	 * @param dataGenerator The data generator to register
+	 * @param previousDataGenerators The registered data generators to run before
+	 */
+	protected final void registerAfter(IDataGenerator dataGenerator, IDataGenerator... previousDataGenerators) {
+		for (IDataGenerator previousDataGenerator : previousDataGenerators) {
+			if (!graph.contains(previousDataGenerator)) {
+				throw new IllegalArgumentException("The data generator " + previousDataGenerator + " must be registered before.");
+			}
+		}
+		
+		graph.addNode(dataGenerator);
+		for (IDataGenerator previousDataGenerator : previousDataGenerators) {
+			graph.addEdge(previousDataGenerator, dataGenerator);
+		}
+		configure(dataGenerator);
+		last = dataGenerator;
+	}
+	
+	/**
+	 * Give a stream of synthetic data split from this one and the streaming configuration to a 
+	 * registered composite data generator without them. The registration order is the same from
+	 * one run to another, the streams of the registered data generators are the same for a given seed.
+	 * 
+	 * @param dataGenerator The registered data generator
+	 */
+	private void configure(IDataGenerator dataGenerator) {
+		if (dataGenerator instanceof CompositeDataGenerator) {
+			CompositeDataGenerator composite = (CompositeDataGenerator) dataGenerator;
+			if (composite.syntheticData == null) {
+				composite.syntheticData = getSyntheticData().split();
+			}
+			if (composite.streamingEntityManager == null) {
+				composite.useStreaming(streamingEntityManager, streamingBatchSize);
+			}
 		}
 	}
 	
@@ -176,7 +317,10 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 	 * or dependsOn and so on. All the stuff to configure correctly
 	 * your data generator.
 	 * 
-	 * The setup method is always run before the data generation
+	 * The setup method is run once before the first data generation. When the data
+	 * generation is retried (a deadlock victim for example), the data generators
+	 * registered are run again without running the setup again. When the setup fails,
+	 * the registrations are forgotten and the setup is run again on the next generation.
 	 */
 	protected void setup() { };
 		
@@ -191,13 +335,32 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 	
 	@Override
 	public final void generate() {
-		setup();
-		
-		if (first  != null) {
-			first.generate();
+		if (!setUp) {
+			try {
+				setup();
+				setUp = true;
+			}
+			finally {
+				if (!setUp) {
+					graph = new DataGeneratorGraph<>();
+					last = null;
+					dataGenerators = new HashMap<>();
+				}
+			}
 		}
+		
+		run(false, new DataGeneratorGraph.NodeTask<IDataGenerator>() {
+			@Override
+			public void run(IDataGenerator dataGenerator) throws DataGeneratorException {
+				dataGenerator.generate();
+				
+				if (dataGenerator instanceof IStreamingDataGenerator) {
+					persistEntities((IStreamingDataGenerator<?>) dataGenerator);
+				}
+			}
+		});
 
-			generateData();
+		generateData();
 	}
 
 	/**
@@ -213,8 +376,50 @@ public abstract class CompositeDataGenerator implements IDataGenerator {
 	public final void cleanup() {
 		cleanData();
 		
-		if (last != null) {
-			last.cleanup();
+		run(true, new DataGeneratorGraph.NodeTask<IDataGenerator>() {
+			@Override
+			public void run(IDataGenerator dataGenerator) {
+				dataGenerator.cleanup();
+			}
+		});
+	}
+	
+	/**
+	 * Persist the entities of a registered streaming data generator by batches
+	 * 
+	 * @param dataGenerator The streaming data generator
+	 * @throws DataGeneratorException Any error during the production or the persistence of the entities
+	 */
+	private void persistEntities(IStreamingDataGenerator<?> dataGenerator) throws DataGeneratorException {
+		if (streamingEntityManager == null) {
+			throw new DataGeneratorException("The entities of the streaming data generator " + dataGenerator.getClass().getCanonicalName() 
+				+ " cannot be persisted, the composite data generator " + getClass().getCanonicalName() + " is not run by a data generator manager.");
+		}
+		
+		new EntityStreamPersister(streamingEntityManager, streamingBatchSize).persist(dataGenerator);
+	}
+	
+	/**
+	 * Run the registered data generators one after another in the topological order
+	 * 
+	 * @param reverse True to run the data generators in the reverse order of the dependencies
+	 * @param task The task to run on each data generator
+	 */
+	private void run(boolean reverse, DataGeneratorGraph.NodeTask<IDataGenerator> task) {
+		if (graph.isEmpty()) {
+			return;
+		}
+		
+		try {
+			for (IDataGenerator dataGenerator : reverse ? graph.reverseTopologicalOrder() : graph.topologicalOrder()) {
+				task.run(dataGenerator);
+			}
+		}
+		catch (RuntimeException re) {
+			throw re;
+		}
+		catch (Exception e) {
+			throw new RuntimeException(new DataGeneratorException("Unable to run the data generators of " + getClass().getCanonicalName(), e));
 		}
 	}
 }
@@ -6,11 +6,13 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * This annotation is used to configure Data Generators for a test method.
+ * This annotation is used to configure Data Generators for a test method. It can also
+ * be put on a test class when the data generator manager is used as a class rule, the
+ * data generators then run once for all the tests of the class.
  * 
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  */
-@Target({ElementType.METHOD})
+@Target({ElementType.METHOD, ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface DataGenerator {
 	/**
@@ -22,4 +24,9 @@ public @interface DataGenerator {
 	 * @return Define if after must be run
 	 */
 	boolean executeCleanup() default true;
+	
+	/**
+	 * @return The cleanup strategy, the one of the data generator manager by default
+	 */
+	CleanupStrategy cleanupStrategy() default CleanupStrategy.DEFAULT;
 }
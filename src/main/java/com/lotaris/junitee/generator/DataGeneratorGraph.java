@@ -0,0 +1,271 @@
+package com.lotaris.junitee.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The data generator graph is a data structure to keep the dependencies between
+ * data generators (or anything else to run in a certain order). It allows to get
+ * a topological order of the nodes and to run concurrently the nodes that do not
+ * depend on each other.
+ *
+ * When several nodes can be run at the same time, the topological order keeps
+ * the order in which the nodes were added.
+ *
+ * @param <T> The type of the nodes
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class DataGeneratorGraph<T> {
+	/**
+	 * The nodes in the order they were added
+	 */
+	private final List<T> nodes = new ArrayList<>();
+
+	/**
+	 * The indexes of the nodes that must be run after each node
+	 */
+	private final List<Set<Integer>> dependents = new ArrayList<>();
+
+	/**
+	 * Add a node to the graph
+	 *
+	 * @param node The node to add
+	 * @exception IllegalArgumentException When the node is already present
+	 */
+	void addNode(T node) {
+		if (nodes.contains(node)) {
+			throw new IllegalArgumentException("The node " + node + " is already present in the graph.");
+		}
+
+		nodes.add(node);
+		dependents.add(new LinkedHashSet<Integer>());
+	}
+
+	/**
+	 * Add an edge between two nodes to run a node after another one
+	 *
+	 * @param before The node that must be run first
+	 * @param after The node that must be run after
+	 * @exception IllegalArgumentException When one of the nodes is not present or when both nodes are the same
+	 */
+	void addEdge(T before, T after) {
+		int beforeIndex = indexOf(before);
+		int afterIndex = indexOf(after);
+
+		if (beforeIndex == afterIndex) {
+			throw new IllegalArgumentException("The node " + before + " cannot be run after itself.");
+		}
+
+		dependents.get(beforeIndex).add(afterIndex);
+	}
+
+	/**
+	 * @return The nodes in the order they were added
+	 */
+	List<T> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	/**
+	 * @param node The node
+	 * @return True if the node is present in the graph
+	 */
+	boolean contains(T node) {
+		return nodes.contains(node);
+	}
+
+	/**
+	 * Calculate the topological order of the nodes
+	 *
+	 * @return The nodes ordered to have each node after the nodes it depends on
+	 * @exception IllegalStateException When there is a loop in the graph
+	 */
+	List<T> topologicalOrder() {
+		int[] remaining = prerequisiteCounts();
+		List<T> order = new ArrayList<>(nodes.size());
+		boolean[] visited = new boolean[nodes.size()];
+
+		// Always take the first ready node to keep the insertion order when possible
+		while (order.size() < nodes.size()) {
+			int next = -1;
+			for (int i = 0; i < nodes.size() && next < 0; i++) {
+				if (!visited[i] && remaining[i] == 0) {
+					next = i;
+				}
+			}
+
+			if (next < 0) {
+				throw new IllegalStateException("There is a loop between the nodes of the graph. It is not allowed.");
+			}
+
+			visited[next] = true;
+			order.add(nodes.get(next));
+
+			for (int dependent : dependents.get(next)) {
+				remaining[dependent]--;
+			}
+		}
+
+		return order;
+	}
+
+	/**
+	 * @return The reverse of the topological order
+	 */
+	List<T> reverseTopologicalOrder() {
+		List<T> order = topologicalOrder();
+		Collections.reverse(order);
+		return order;
+	}
+
+	/**
+	 * @return A new graph with the same nodes and the edges reversed
+	 */
+	DataGeneratorGraph<T> reverse() {
+		DataGeneratorGraph<T> reversed = new DataGeneratorGraph<>();
+
+		for (T node : nodes) {
+			reversed.addNode(node);
+		}
+
+		for (int i = 0; i < nodes.size(); i++) {
+			for (int dependent : dependents.get(i)) {
+				reversed.dependents.get(dependent).add(i);
+			}
+		}
+
+		return reversed;
+	}
+
+	/**
+	 * @return True if there is no node in the graph
+	 */
+	boolean isEmpty() {
+		return nodes.isEmpty();
+	}
+
+	/**
+	 * Run the nodes with the executor. A node is submitted as soon as all the nodes
+	 * it depends on are done. When a node fails, no new node is submitted, the running
+	 * nodes are awaited and the first failure is thrown.
+	 *
+	 * @param executor The executor to run the nodes
+	 * @param task The task to run for each node
+	 * @throws Exception The first failure of the nodes
+	 * @exception IllegalStateException When there is a loop in the graph
+	 */
+	void execute(ExecutorService executor, final NodeTask<T> task) throws Exception {
+		// Ensure there is no loop to avoid waiting nodes that will never be ready
+		topologicalOrder();
+
+		int[] remaining = prerequisiteCounts();
+		CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+		int running = 0;
+		Exception failure = null;
+
+		for (int i = 0; i < nodes.size(); i++) {
+			if (remaining[i] == 0) {
+				submit(completionService, task, i);
+				running++;
+			}
+		}
+
+		while (running > 0) {
+			Future<Integer> future = completionService.take();
+			running--;
+
+			try {
+				int done = future.get();
+
+				// Release the dependents that have no more node to wait
+				if (failure == null) {
+					for (int dependent : dependents.get(done)) {
+						if (--remaining[dependent] == 0) {
+							submit(completionService, task, dependent);
+							running++;
+						}
+					}
+				}
+			}
+			catch (ExecutionException ee) {
+				if (failure == null) {
+					failure = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Submit the task of a node
+	 *
+	 * @param completionService The completion service
+	 * @param task The task to run
+	 * @param index The index of the node
+	 */
+	private void submit(CompletionService<Integer> completionService, final NodeTask<T> task, final int index) {
+		final T node = nodes.get(index);
+
+		completionService.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				task.run(node);
+				return index;
+			}
+		});
+	}
+
+	/**
+	 * @return The number of nodes to run before each node
+	 */
+	private int[] prerequisiteCounts() {
+		int[] counts = new int[nodes.size()];
+		for (Set<Integer> nodeDependents : dependents) {
+			for (int dependent : nodeDependents) {
+				counts[dependent]++;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * @param node The node
+	 * @return The index of the node
+	 * @exception IllegalArgumentException When the node is not present
+	 */
+	private int indexOf(T node) {
+		int index = nodes.indexOf(node);
+
+		if (index < 0) {
+			throw new IllegalArgumentException("The node " + node + " is not present in the graph.");
+		}
+
+		return index;
+	}
+
+	/**
+	 * Task to run for each node of the graph
+	 *
+	 * @param <T> The type of the nodes
+	 */
+	interface NodeTask<T> {
+		/**
+		 * @param node The node to run
+		 * @throws Exception Any error
+		 */
+		void run(T node) throws Exception;
+	}
+}
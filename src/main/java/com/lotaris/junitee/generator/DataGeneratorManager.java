@@ -1,13 +1,32 @@
 package com.lotaris.junitee.generator;
 
 import com.lotaris.junitee.dependency.DependencyInjector;
+import com.lotaris.junitee.fixture.Fixture;
+import com.lotaris.junitee.fixture.FixtureCache;
+import com.lotaris.junitee.fixture.FixtureException;
+import com.lotaris.junitee.utils.InflectorHelper;
+import com.lotaris.junitee.utils.NoValidClassException;
+import com.lotaris.junitee.utils.ProxyFactoryCache;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import net.sf.cglib.proxy.Enhancer;
+import javax.persistence.metamodel.EntityType;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
 import org.junit.rules.TestRule;
@@ -22,162 +41,1240 @@ import org.slf4j.LoggerFactory;
  * 
  * This data generator manager should be used associated with a JUnit Rule mechanism.
  * 
+ * When used as a class rule, the data generators of the @DataGenerator annotation of the
+ * test class run once for all the tests of the class. Combined with the rule returned by
+ * rollbackEachTest, each test runs in a transaction rolled back at the end of the test to
+ * keep the data of the class untouched.
+ * 
+ * The cleanup strategy of the manager, or the one of the @DataGenerator annotation, defines
+ * if the data are cleaned up by the data generators or by a reset of the tables touched
+ * during the test.
+ * 
+ * The data generators of the @SharedDataGenerator annotation are shared between all the
+ * tests, test classes and suites that declare them. They are generated by the first one
+ * and kept until the end of the suite or the shutdown of the JVM.
+ * 
+ * Each test gets a data namespace (see DataNamespace) that is current during the test and
+ * during the calls to its data generators, to generate data that do not collide with the
+ * data of the tests run at the same time.
+ * 
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  */
 public class DataGeneratorManager implements TestRule {
 	private static final Logger LOG = LoggerFactory.getLogger(DataGeneratorManager.class);
 	
+	/**
+	 * Proxy factories shared by all the managers to generate the proxy classes only once
+	 */
+	private static final ProxyFactoryCache PROXIES = new ProxyFactoryCache(IDataGenerator.class);
+	
+	/**
+	 * Shared data generators of the JVM
+	 */
+	private static final SharedDataGeneratorRegistry SHARED = new SharedDataGeneratorRegistry();
+	
+	/**
+	 * The keys of the fixtures inserted in the database, a fixture is inserted by one test at a time
+	 */
+	private static final Set<String> REPLAYED_FIXTURES = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
 	/**
 	 * Entity manager factory to generate new entity manager to share between generators for a same test
 	 */
 	private EntityManagerFactory entityManagerFactory;
 	
 	/**
-	 * Keep track of factories to be able to retrieve a data generator directly in a test
+	 * Keep track of the generation context of the test run by each thread. The context
+	 * is removed at the end of the test, the data generators can be retrieved during the
+	 * test only.
+	 */
+	private final ThreadLocal<GenerationContext> contexts = new ThreadLocal<>();
+	
+	/**
+	 * The generation context of the test class when the manager is used as a class rule. The 
+	 * tests of the class can be run by other threads than the one of the class rule.
+	 */
+	private volatile GenerationContext classContext;
+	
+	/**
+	 * Maximum number of data generators to run at the same time. Data generators
+	 * run one after another in a single transaction when the value is 1.
+	 */
+	private int parallelism = 1;
+	
+	/**
+	 * Threads to run the data generators in parallel, shared by the generations and the cleanups
+	 * of the tests and created with the first parallel run
+	 */
+	private ExecutorService executor;
+	
+	/**
+	 * Define if the data generators that do not write related tables are cleaned up at the same time
+	 */
+	private boolean parallelCleanup = false;
+	
+	/**
+	 * Retry of the transactions chosen as deadlock victims, null when the deadlocks are not retried
+	 */
+	private DeadlockRetry deadlockRetry;
+	
+	/**
+	 * The dataset retained by the last test that did not write any data. There is only
+	 * one dataset retained at a time for the JVM.
+	 */
+	private static final AtomicReference<RetainedDataset> RETAINED = new AtomicReference<>();
+	
+	/**
+	 * Define if the shutdown hook to cleanup the retained dataset and the shared data generators is registered
+	 */
+	private static final AtomicBoolean SHUTDOWN_HOOK = new AtomicBoolean(false);
+	
+	/**
+	 * Define if the datasets of the tests that did not write any data are reused
+	 */
+	private boolean reuseDatasets = false;
+	
+	/**
+	 * Define if the entities persisted are tracked to be deleted in bulk instead of the cleanup of the data generators
+	 */
+	private boolean trackEntities = false;
+	
+	/**
+	 * The cleanup strategy of the tests that do not define their own one
+	 */
+	private CleanupStrategy cleanupStrategy = CleanupStrategy.GENERATORS;
+	
+	/**
+	 * Cache of the fixtures recorded from the data generators, null to always run the data generators
+	 */
+	private FixtureCache fixtureCache;
+	
+	/**
+	 * Number of entities persisted by batch for the streaming data generators
+	 */
+	private int streamingBatchSize = 100;
+	
+	/**
+	 * Seed of the values generated for the data generators
+	 */
+	private long seed = 0;
+	
+	/**
+	 * Allocator of the unique values injected through @InjectAllocator into the data generators
+	 */
+	private UniqueValueAllocator allocator = new UniqueValueAllocator(0);
+	
+	/**
+	 * Pipeline to run the cleanups in background, null to run them at the end of each test
+	 */
+	private CleanupPipeline cleanupPipeline;
+	
+	/**
+	 * Cache of the data generator classes injected through @InjectDataGenerator
+	 * into the data generators (across the class hierarchy)
+	 */
+	private static final ClassValue<Set<Class>> INJECTED_DATA_GENERATORS = new ClassValue<Set<Class>>() {
+		@Override
+		protected Set<Class> computeValue(Class<?> type) {
+			Set<Class> injectedClasses = new HashSet<>();
+			for (Class<?> cl = type; cl != null && cl != Object.class; cl = cl.getSuperclass()) {
+				for (Field field : cl.getDeclaredFields()) {
+					if (field.isAnnotationPresent(InjectDataGenerator.class)) {
+						try {
+							injectedClasses.add(InflectorHelper.retrieveInstantiableClassName(field.getType()));
+						}
+						catch (NoValidClassException nvce) {
+							injectedClasses.add(field.getType());
+						}
+					}
+				}
+			}
+			return injectedClasses;
+		}
+	};
+	
+	/**
+	 * Force the construction of the data generator with an entity manager
+	 * 
+	 * @param entityManagerFactory Entity manager factory to create new entity managers
+	 */
+	public DataGeneratorManager(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = entityManagerFactory;
+	}
+	
+	/**
+	 * Run the data generators of a test in parallel. The data generators that do not depend
+	 * on each other are run at the same time, each one with its own entity manager and transaction.
+	 * 
+	 * A data generator depends on the data generators of the same test that are injected into it
+	 * through @InjectDataGenerator or that are listed in its @RunAfter annotation. The cleanup is
+	 * done in the reverse order of the dependencies.
+	 * 
+	 * @param threads The maximum number of data generators to run at the same time
+	 * @return This
+	 */
+	public DataGeneratorManager parallel(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads should be at least one.");
+		}
+		
+		synchronized (this) {
+			parallelism = threads;
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Cleanup at the same time the data generators run in parallel that write unrelated tables.
+	 * The tables written by each data generator are tracked through its entity manager. Two
+	 * data generators are related when they write the same table or tables with a foreign key
+	 * between them (according to the JPA metamodel), or when they depend on each other. The
+	 * related data generators are cleaned up in the reverse order of the generation.
+	 * 
+	 * A data generator that does not write any entity through its entity manager is considered
+	 * as related to all the other ones. Without parallel, the data generators share a transaction
+	 * and the cleanup is not run in parallel.
+	 * 
+	 * @return This
+	 */
+	public DataGeneratorManager parallelCleanup() {
+		parallelCleanup = true;
+		return this;
+	}
+	
+	/**
+	 * Recover from the deadlocks between the tests run at the same time against the same database.
+	 * The transactions of the data generation and of the cleanup chosen as deadlock victims are
+	 * run again after a random backoff. The data generators must support to run their generate
+	 * and cleanup methods again after a rollback.
+	 * 
+	 * The deadlocks are not avoided: the order of the writes is left to the persistence provider.
+	 * Configuring it to order the writes by foreign keys (like hibernate.order_inserts) makes
+	 * the deadlocks less likely.
+	 * 
+	 * @param maxRetries The maximum number of times a transaction is run again
+	 * @return This
+	 */
+	public DataGeneratorManager retryDeadlocks(int maxRetries) {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("The number of retries should not be negative.");
+		}
+		
+		deadlockRetry = new DeadlockRetry(maxRetries, 10);
+		return this;
+	}
+	
+	/**
+	 * @return The number of transactions run again after a deadlock
+	 */
+	public long getDeadlockRetries() {
+		return deadlockRetry != null ? deadlockRetry.getRetries() : 0;
+	}
+	
+	/**
+	 * Define the seed of the values generated for the data generators. The unique value 
+	 * allocator injected through @InjectAllocator starts the values of each namespace at
+	 * the seed. Each composite data generator gets a stream of synthetic data derived from
+	 * the seed, the test and the name of its class: the tests get different data and the
+	 * same test gets the same data from one run to another.
+	 * 
+	 * @param seed The seed, zero by default
+	 * @return This
+	 */
+	public DataGeneratorManager seed(long seed) {
+		this.seed = seed;
+		allocator = new UniqueValueAllocator(seed);
+		return this;
+	}
+	
+	/**
+	 * @return The allocator of the unique values injected into the data generators
+	 */
+	public UniqueValueAllocator getUniqueValueAllocator() {
+		return allocator;
+	}
+	
+	/**
+	 * Define the number of entities of the streaming data generators to persist by batch. The
+	 * persistence context is flushed and cleared after each batch.
+	 * 
+	 * @param batchSize The number of entities by batch
+	 * @return This
+	 */
+	public DataGeneratorManager streamingBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size should be at least one.");
+		}
+		
+		streamingBatchSize = batchSize;
+		return this;
+	}
+	
+	/**
+	 * Track the entities persisted through the entity managers of the data generators and
+	 * delete them at the end of the test with one bulk delete by entity type, in the order of
+	 * the foreign keys. The bulk delete replaces the cleanup of the data generators.
+	 * 
+	 * The new entities saved through merge are tracked too, the entities with identifiers assigned 
+	 * by the application are tracked only when they are persisted as they cannot be told apart 
+	 * from the existing entities updated through merge.
+	 * 
+	 * The entities persisted by cascade from a tracked entity are tracked too. The bulk deletes
+	 * do not cascade, the entities owning a join table are removed one by one.
+	 * 
+	 * @return This
+	 */
+	public DataGeneratorManager trackEntities() {
+		trackEntities = true;
+		return this;
+	}
+	
+	/**
+	 * Define the cleanup strategy of the tests that do not define one in their @DataGenerator
+	 * annotation. With TRUNCATE or DELETE, the classes of the entities persisted, merged and
+	 * removed through the entity managers of the data generators are tracked and the tables
+	 * of these entities (and of the entities persisted by cascade) are reset at the end of the
+	 * test. The other tables are never touched.
+	 * 
+	 * The tables are reset entirely, these strategies must only be used with a database dedicated
+	 * to the tests. The cleanup of the data generators is run when the tables cannot be reset.
+	 * 
+	 * With WATERMARK, the highest identifier of each entity is recorded before the data generation
+	 * and the rows of the touched tables above it are deleted at the end of the test. The other
+	 * tests must not create rows in the same tables at the same time.
+	 * 
+	 * @param strategy The cleanup strategy
+	 * @return This
+	 */
+	public DataGeneratorManager cleanupStrategy(CleanupStrategy strategy) {
+		if (strategy == null || strategy == CleanupStrategy.DEFAULT) {
+			throw new IllegalArgumentException("The cleanup strategy of the manager should be GENERATORS, TRUNCATE, DELETE or WATERMARK.");
+		}
+		
+		cleanupStrategy = strategy;
+		return this;
+	}
+	
+	/**
+	 * Record the rows generated by the data generators of a test in a fixture cache and insert 
+	 * them from the cache for the next tests with the same data generators. The data generators
+	 * are still instantiated but are not run when the fixture is inserted from the cache, the 
+	 * cleanup then deletes the rows of the fixture.
+	 * 
+	 * The connection to the database is retrieved from the entity manager, the persistence provider
+	 * must support to unwrap a connection from an entity manager in a transaction.
+	 * 
+	 * The rows of a fixture are captured from the entity manager of the test, the data generators
+	 * run one after another even when the parallel mode is configured. A fixture is inserted with
+	 * the keys and the values recorded, whatever the data namespace of the test. It is therefore 
+	 * inserted by one test at a time in the JVM: until its rows are deleted, the other tests with 
+	 * the same data generators run them instead. The fixtures must be recorded while no other test
+	 * writes the tables of the cache.
+	 * 
+	 * @param cache The fixture cache
+	 * @return This
+	 */
+	public DataGeneratorManager fixtureCache(FixtureCache cache) {
+		fixtureCache = cache;
+		return this;
+	}
+	
+	/**
+	 * Run the cleanup of each test in background to let the next test start right away. The
+	 * entity manager of the test is handed over to the pipeline with the cleanup and is no more
+	 * used by the manager.
+	 * 
+	 * The pipeline must be declared as a class rule to wait for the cleanups at the end of the
+	 * class and to report their failures.
+	 * 
+	 * @param pipeline The pipeline to run the cleanups
+	 * @return This
+	 */
+	public DataGeneratorManager asyncCleanup(CleanupPipeline pipeline) {
+		cleanupPipeline = pipeline;
+		return this;
+	}
+
+	/**
+	 * Reuse the dataset of a test that did not write any data for the next test with the same
+	 * data generators. The cleanup of the test is skipped and the data generators are handed
+	 * over to the next test instead of being generated again.
+	 * 
+	 * The writes are detected through the create, update and delete methods of the data generators
+	 * and through the persist, merge, remove and flush methods of the entity managers of the
+	 * data generators. A test that writes data in another way must call markDirty.
+	 * 
+	 * The last dataset retained is cleaned up by releaseRetainedDataset or at the shutdown of the JVM.
+	 * 
+	 * @return This
+	 */
+	public DataGeneratorManager reuseDatasets() {
+		reuseDatasets = true;
+		return this;
+	}
+	
+	/**
+	 * Mark the data of the current test as written to avoid their reuse by the next test
+	 */
+	public void markDirty() {
+		GenerationContext context = currentContext();
+		
+		if (context != null) {
+			context.markDirty();
+		}
+	}
+	
+	/**
+	 * Cleanup the dataset retained for the next test, if any
+	 * 
+	 * @throws DataGeneratorException Any error during the cleanup
+	 */
+	public static void releaseRetainedDataset() throws DataGeneratorException {
+		RetainedDataset retained = RETAINED.getAndSet(null);
+		
+		if (retained != null) {
+			retained.cleanup();
+		}
+	}
+
+	@Override
+	public Statement apply(final Statement base, final Description description) {
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				final RetainedDataset reused = reuseDatasets ? takeRetainedDataset(description) : null;
+				
+				// Create the context of the test with an entity manager to share between the before and 
+				// after phase. The context must be created there because there is no warranty to reach 
+				// the after if a test fails.
+				final GenerationContext context = reused != null ? reused.context : 
+					new GenerationContext(entityManagerFactory.createEntityManager(), reuseDatasets, trackEntities, 
+						resolveCleanupStrategy(description.getAnnotation(DataGenerator.class)) != CleanupStrategy.GENERATORS || 
+						parallelCleanup && runsInParallel());
+				final EntityManager entityManager = context.getEntityManager();
+				final GenerationContext previousContext = contexts.get();
+				contexts.set(context);
+				
+				// A suite description means a class rule, its context is published to the threads of the tests
+				if (description.isSuite()) {
+					classContext = context;
+				}
+				
+				// The reused dataset keeps the namespace of the test that generated it
+				if (reused == null) {
+					context.setNamespace(DataNamespace.create(description.getDisplayName()));
+				}
+				final String previousNamespace = DataNamespace.enter(context.getNamespace());
+				
+				final List<Class<? extends IDataGenerator>> shared = new ArrayList<>();
+				boolean succeeded = false;
+				
+				try {
+					acquireShared(context, description, shared);
+					
+					if (reused == null) {
+						generate(context, description, entityManager);
+					}
+					
+					context.resetDirty();
+					context.setTestRunning(true);
+					base.evaluate();
+					succeeded = true;
+				}
+				finally {
+					context.setTestRunning(false);
+					
+					try {
+						if (succeeded && reuseDatasets && retainDataset(context, description)) {
+							releaseShared(shared);
+						}
+						else if (cleanupPipeline != null) {
+							cleanupPipeline.submit(new CleanupPipeline.Cleanup() {
+								@Override
+								public void run() throws Exception {
+									cleanupAndClose(context, description, entityManager, shared);
+								}
+							});
+						}
+						else {
+							cleanupAndClose(context, description, entityManager, shared);
+						}
+						
+						if (isSuiteOfClasses(description)) {
+							releaseSharedDataGenerators();
+						}
+					}
+					finally {
+						DataNamespace.restore(previousNamespace);
+						
+						if (classContext == context) {
+							classContext = null;
+						}
+						
+						// Restore the context of the enclosing rule (class rule) of the same manager
+						if (previousContext != null) {
+							contexts.set(previousContext);
+						}
+						else {
+							contexts.remove();
+						}
+					}
+				}
+			}
+		};
+	}	
+	
+	/**
+	 * Create a rule to run each test in a transaction that is rolled back at the end of
+	 * the test. The rule must be used with the manager declared as a class rule to share the
+	 * data generated for the class between the tests. The calls to the create, update and
+	 * delete methods of the data generators join the transaction of the test.
+	 * 
+	 * The changes done in the test are rolled back only when they are done through the 
+	 * entity managers of the data generators, like the one returned by getEntityManager.
+	 * 
+	 * The tests can be run by other threads than the one of the class rule (parallel methods).
+	 * As they share the entity managers of the class, they are run one after another.
+	 * 
+	 * @return The rule to declare on the test class
+	 */
+	public TestRule rollbackEachTest() {
+		return new TestRule() {
+			@Override
+			public Statement apply(final Statement base, Description description) {
+				return new Statement() {
+					@Override
+					public void evaluate() throws Throwable {
+						GenerationContext context = currentContext();
+						
+						if (context == null) {
+							throw new DataGeneratorException("No data generated for the class. The data generator manager must be used as a class rule.");
+						}
+						
+						// The entity managers of the class are not thread safe
+						synchronized (context) {
+							Set<EntityManager> entityManagers = context.getEntityManagers();
+							for (EntityManager entityManager : entityManagers) {
+								entityManager.getTransaction().begin();
+							}
+
+							try {
+								base.evaluate();
+							}
+							finally {
+								for (EntityManager entityManager : entityManagers) {
+									if (entityManager.getTransaction().isActive()) {
+										entityManager.getTransaction().rollback();
+									}
+									entityManager.clear();
+								}
+							}
+						}
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * @return The entity manager shared by the data generators of the current test or class
+	 */
+	public EntityManager getEntityManager() {
+		GenerationContext context = currentContext();
+		
+		if (context == null) {
+			throw new RuntimeException(new DataGeneratorException("No data generation is running."));
+		}
+		
+		return context.getEntityManager();
+	}
+	
+	/**
+	 * Be able to retrieve a data generator
+	 * 
+	 * @param <T> Data generator type
+	 * @param dataGeneratorClass The data generator class to lookup
+	 * @return The data generator found, null otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends IDataGenerator> T getDataGenerator(Class<T> dataGeneratorClass) {
+		GenerationContext context = currentContext();
+		
+		// Check if the data generator exists
+		if (context != null && context.contains(dataGeneratorClass)) {
+			return (T) context.getDataGenerator(dataGeneratorClass);
+		}
+		// Unknown data generator
+		else {
+			throw new RuntimeException(new DataGeneratorException("The data generator " + dataGeneratorClass.getCanonicalName() + " is not present in the annotation."));
+		}
+	}
+	
+	/**
+	 * @return The generation context of the test run by the current thread, the one of the test
+	 * class when the thread runs no test with data generators, null when there is none
+	 */
+	private GenerationContext currentContext() {
+		GenerationContext context = contexts.get();
+		return context != null ? context : classContext;
+	}
+	
+	/**
+	 * @return True if the data generators run in parallel, the fixture cache needs them to run
+	 * through the entity manager of the test
+	 */
+	private boolean runsInParallel() {
+		return parallelism > 1 && fixtureCache == null;
+	}
+	
+	/**
+	 * The threads are created on demand and stop when they are idle, the executor does not
+	 * need to be shut down when the manager is no more used.
+	 * 
+	 * @return The executor to run the data generators in parallel
+	 */
+	private synchronized ExecutorService executor() {
+		if (executor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "junitee-generator");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+	
+	/**
+	 * Decide if a failed transaction must be run again
+	 * 
+	 * @param failure The failure of the transaction
+	 * @param attempt The number of times the transaction was already retried
+	 * @return True if the transaction was chosen as a deadlock victim and must be run again
+	 */
+	private boolean retryOnDeadlock(Exception failure, int attempt) {
+		return deadlockRetry != null && deadlockRetry.shouldRetry(failure, attempt);
+	}
+	
+	/**
+	 * @param dgAnnotation The data generator annotation of the test, can be null
+	 * @return The cleanup strategy of the test
+	 */
+	private CleanupStrategy resolveCleanupStrategy(DataGenerator dgAnnotation) {
+		if (dgAnnotation != null && dgAnnotation.cleanupStrategy() != CleanupStrategy.DEFAULT) {
+			return dgAnnotation.cleanupStrategy();
+		}
+		return cleanupStrategy;
+	}
+	
+	/**
+	 * Take the dataset retained by the previous test when it was generated by the same data 
+	 * generators. A dataset generated by other data generators is cleaned up.
+	 * 
+	 * @param description The description to get test data
+	 * @return The dataset to reuse, null if there is none
+	 * @throws DataGeneratorException Any error during the cleanup of a dataset that cannot be reused
+	 */
+	private RetainedDataset takeRetainedDataset(Description description) throws DataGeneratorException {
+		RetainedDataset retained = RETAINED.getAndSet(null);
+		
+		if (retained == null) {
+			return null;
+		}
+		else if (retained.matches(this, description.getAnnotation(DataGenerator.class))) {
+			return retained;
+		}
+		else {
+			retained.cleanup();
+			return null;
+		}
+	}
+	
+	/**
+	 * Retain the dataset of a test that did not write any data for the next test
+	 * 
+	 * @param context The generation context of the test
+	 * @param description The description to get test data
+	 * @return True if the dataset is retained, false if it must be cleaned up
+	 * @throws DataGeneratorException Any error during the cleanup of a dataset retained concurrently
+	 */
+	private boolean retainDataset(GenerationContext context, Description description) throws DataGeneratorException {
+		DataGenerator dgAnnotation = description.getAnnotation(DataGenerator.class);
+		
+		if (context.isDirty() || dgAnnotation == null || !dgAnnotation.executeCleanup()) {
+			return false;
+		}
+		
+		registerShutdownHook();
+		
+		// A test run concurrently can have retained its dataset in the meantime
+		RetainedDataset previous = RETAINED.getAndSet(new RetainedDataset(this, context, description));
+		if (previous != null) {
+			previous.cleanup();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Register the shutdown hook that cleans up the retained dataset, then the shared data generators
+	 * it can depend on
+	 */
+	private static void registerShutdownHook() {
+		if (SHUTDOWN_HOOK.compareAndSet(false, true)) {
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						releaseRetainedDataset();
+					}
+					catch (DataGeneratorException dge) {
+						LOG.error("Unable to cleanup the retained dataset.", dge);
+					}
+					
+					try {
+						releaseSharedDataGenerators();
+					}
+					catch (DataGeneratorException dge) {
+						LOG.error("Unable to cleanup the shared data generators.", dge);
+					}
+				}
+			}, "junitee-cleanup"));
+		}
+	}
+	
+	/**
+	 * Acquire the shared data generators of a test
+	 * 
+	 * @param context The generation context of the test
+	 * @param description The description to get test data
+	 * @param shared The shared data generators acquired
+	 * @throws DataGeneratorException Any error during the generation of the shared data generators
+	 */
+	private void acquireShared(GenerationContext context, Description description, List<Class<? extends IDataGenerator>> shared) throws DataGeneratorException {
+		SharedDataGenerator sharedAnnotation = description.getAnnotation(SharedDataGenerator.class);
+		
+		if (sharedAnnotation == null) {
+			return;
+		}
+		
+		registerShutdownHook();
+		
+		for (Class<? extends IDataGenerator> dataGeneratorClass : sharedAnnotation.value()) {
+			if (shared.contains(dataGeneratorClass)) {
+				throw new DataGeneratorException("The shared data generator " + dataGeneratorClass.getCanonicalName() + " is already registered. "
+					+ "Only one instance of each generator can be specified in the annotation.");
+			}
+			
+			SharedDataGeneratorRegistry.Entry entry = SHARED.acquire(dataGeneratorClass, new SharedDataGeneratorRegistry.EntryFactory() {
+				@Override
+				public SharedDataGeneratorRegistry.Entry create(Class<? extends IDataGenerator> dataGeneratorClass) throws DataGeneratorException {
+					try {
+						// The shared data generator has its own entity manager as it lives longer than the test
+						EntityManager sharedEntityManager = entityManagerFactory.createEntityManager();
+						GenerationContext sharedContext = new GenerationContext(sharedEntityManager);
+						sharedContext.setNamespace(DataNamespace.create(dataGeneratorClass.getName()));
+						sharedContext.setTestRunning(true);
+						
+						IDataGenerator dataGenerator = (IDataGenerator) PROXIES.newInstance(dataGeneratorClass, new GeneratorCallback(sharedContext, sharedEntityManager));
+						DependencyInjector.inject(dataGenerator, sharedEntityManager, true, allocator);
+						if (dataGenerator instanceof CompositeDataGenerator) {
+							((CompositeDataGenerator) dataGenerator).useSyntheticData(new SyntheticData(seed, dataGeneratorClass.getName()))
+								.useStreaming(sharedEntityManager, streamingBatchSize);
+						}
+						
+						return new SharedDataGeneratorRegistry.Entry(dataGenerator, sharedEntityManager);
+					}
+					catch (Exception ex) {
+						LOG.error("Injection failed during the creation of the data generator: " + dataGeneratorClass.getCanonicalName(), ex);
+						throw new DataGeneratorException("Unable to instantiate the data generator " + dataGeneratorClass.getCanonicalName(), ex);
+					}
+				}
+			});
+			
+			shared.add(dataGeneratorClass);
+			context.register(dataGeneratorClass, entry.getDataGenerator(), entry.getEntityManager());
+		}
+	}
+	
+	/**
+	 * Release the shared data generators of a test in the reverse order of their acquisition. The
+	 * shared data generators are kept for the next tests until the end of the suite.
+	 * 
+	 * @param shared The shared data generators acquired by the test
 	 */
-	private Map<Class, IDataGenerator> dataGenerators = new HashMap<>();
+	private void releaseShared(List<Class<? extends IDataGenerator>> shared) {
+		for (int i = shared.size() - 1; i >= 0; i--) {
+			SHARED.release(shared.get(i));
+		}
+	}
 	
 	/**
-	 * Determine if a test is running or not. This is required to enable/disable
-	 * the behavior of method interceptions during the test method run.
+	 * Cleanup the shared data generators no more used by a test, a test class or a suite. It is done 
+	 * at the end of each suite of test classes run with the manager as a class rule and at the 
+	 * shutdown of the JVM.
+	 * 
+	 * @throws DataGeneratorException The first error during the cleanup of the shared data generators
 	 */
-	private static Boolean testRunning = false;
+	public static void releaseSharedDataGenerators() throws DataGeneratorException {
+		SHARED.cleanup();
+	}
+	
+	/**
+	 * @param description The description of a test, a test class or a suite
+	 * @return True if the description is a suite of test classes
+	 */
+	private static boolean isSuiteOfClasses(Description description) {
+		for (Description child : description.getChildren()) {
+			if (child.isSuite()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Actions to generate data
+	 * 
+	 * @param context The generation context of the test
+	 * @param description The description to get test data
+	 * @param entityManager The entity manager
+	 * @throws Throwable Any errors 
+	 */
+	private void generate(GenerationContext context, Description description, EntityManager entityManager) throws DataGeneratorException {
+		DataGenerator dgAnnotation = description.getAnnotation(DataGenerator.class);
+		
+		if (dgAnnotation == null) {
+			return;
+		}
+		
+		// Retrieve all the data generators defined for the test method.
+		for (Class<? extends IDataGenerator> dataGeneratorClass : dgAnnotation.value()) {
+			// Check if the data generator is already instantiated.
+			if (!context.contains(dataGeneratorClass)) {
+				try {
+					// Instantiate a new data generator proxy, inject the EJB and keep track of it.
+					EntityManager generatorEntityManager = runsInParallel() ? context.createEntityManager(entityManagerFactory) : entityManager;
+					IDataGenerator dataGenerator = (IDataGenerator) PROXIES.newInstance(dataGeneratorClass, new GeneratorCallback(context, generatorEntityManager));
+					
+					DependencyInjector.inject(dataGenerator, generatorEntityManager, true, allocator);
+					if (dataGenerator instanceof CompositeDataGenerator) {
+						// The test identifier keeps the stream reproducible, unlike the namespace that depends on the fork and the thread
+						((CompositeDataGenerator) dataGenerator).useSyntheticData(new SyntheticData(seed, description.getDisplayName() + "/" + dataGeneratorClass.getName()))
+							.useStreaming(generatorEntityManager, streamingBatchSize);
+					}
+					context.register(dataGeneratorClass, dataGenerator, generatorEntityManager);
+				}
+				catch (Exception ex) {
+					LOG.error("Injection failed during the creation of the data generator: " + dataGeneratorClass.getCanonicalName(), ex);
+					throw new DataGeneratorException("Unable to instantiate the data generator " + dataGeneratorClass.getCanonicalName(), ex);
+				}
+			}
+			else {
+				LOG.error("The data generator [" + dataGeneratorClass.getCanonicalName() + "] is already instantiated. One instance of each data generator is allowed.");
+				throw new DataGeneratorException("The data generator " + dataGeneratorClass.getCanonicalName() + " is already registered. "
+					+ "Only one instance of each generator can be specified in the annotation.");
+			}
+		}
+		
+		// The highest identifiers are recorded by the entity managers of the test before the first write of each entity
+		if (resolveCleanupStrategy(dgAnnotation) == CleanupStrategy.WATERMARK) {
+			context.setWatermarkCleaner(new WatermarkCleaner());
+		}
+		
+		if (fixtureCache != null) {
+			generateWithFixtureCache(context, dgAnnotation, entityManager);
+			return;
+		}
+		
+		if (runsInParallel()) {
+			generateInParallel(context, dgAnnotation);
+			return;
+		}
+		
+		for (int attempt = 0; ; attempt++) {
+			try {
+				entityManager.getTransaction().begin();
+				context.getGenerationOrder().clear();
+				Class<? extends IDataGenerator>[] dataGeneratorClass = dgAnnotation.value();
+				for (int i = 0; i < dataGeneratorClass.length; i++) {
+					context.getGenerationOrder().add(dataGeneratorClass[i]);
+					generate(context.getDataGenerator(dataGeneratorClass[i]), entityManager);
+				}
+				entityManager.getTransaction().commit();
+				return;
+			}
+			catch (Exception e) {
+				if (entityManager.getTransaction().isActive()) {
+					entityManager.getTransaction().rollback();
+				}
+				if (retryOnDeadlock(e, attempt)) {
+					continue;
+				}
+				LOG.error("Unkown error", e);
+				throw new DataGeneratorException("An unexpected error occured during the data generation.", e);
+			}
+			finally {
+				entityManager.clear();
+			}
+		}
+	}
+
+	/**
+	 * Run a data generator. The entities of the streaming data generators are persisted
+	 * by batches after the generate method.
+	 * 
+	 * @param dataGenerator The data generator
+	 * @param entityManager The entity manager of the data generator
+	 * @throws DataGeneratorException Any error during the persistence of the entities
+	 */
+	private void generate(IDataGenerator dataGenerator, EntityManager entityManager) throws DataGeneratorException {
+		dataGenerator.generate();
+		
+		if (dataGenerator instanceof IStreamingDataGenerator) {
+			new EntityStreamPersister(entityManager, streamingBatchSize).persist((IStreamingDataGenerator<?>) dataGenerator);
+		}
+	}
+
+	/**
+	 * Clean the data, close the entity managers of the test and release its namespace
+	 * 
+	 * @param context The generation context of the test
+	 * @param description The description to get test data
+	 * @param entityManager The entity manager
+	 * @param shared The shared data generators to release after the cleanup
+	 * @throws DataGeneratorException Any error during the cleanup
+	 */
+	private void cleanupAndClose(GenerationContext context, Description description, EntityManager entityManager, 
+		List<Class<? extends IDataGenerator>> shared) throws DataGeneratorException {
+		try {
+			cleanup(context, description, entityManager, shared);
+		}
+		finally {
+			context.close();
+			allocator.release(context.getNamespace());
+		}
+	}
+	
+	/**
+	 * Actions to clean the data
+	 * 
+	 * @param context The generation context of the test
+	 * @param description The description to get test data
+	 * @param entityManager The entity manager
+	 * @param shared The shared data generators to release after the cleanup
+	 * @throws Throwable Any errors 
+	 */
+	private void cleanup(GenerationContext context, Description description, EntityManager entityManager, 
+		List<Class<? extends IDataGenerator>> shared) throws DataGeneratorException {
+		try {
+			cleanup(context, description, entityManager);
+		}
+		finally {
+			releaseShared(shared);
+		}
+	}
+	
+	/**
+	 * Actions to clean the data of the data generators of the test
+	 * 
+	 * @param context The generation context of the test
+	 * @param description The description to get test data
+	 * @param entityManager The entity manager
+	 * @throws Throwable Any errors 
+	 */
+	private void cleanup(GenerationContext context, Description description, EntityManager entityManager) throws DataGeneratorException {
+		DataGenerator dgAnnotation = description.getAnnotation(DataGenerator.class);
+		
+		if (dgAnnotation != null && dgAnnotation.executeCleanup()) {
+			if (context.getReplayedFixture() != null) {
+				cleanupFixture(context.getReplayedFixture(), entityManager);
+				
+				// The fixture can be inserted again once its rows are deleted
+				REPLAYED_FIXTURES.remove(context.getReplayedFixtureKey());
+				return;
+			}
+			
+			CleanupStrategy strategy = resolveCleanupStrategy(dgAnnotation);
+			
+			if (strategy == CleanupStrategy.WATERMARK && context.getWatermarkCleaner() != null && 
+				cleanupAboveWatermarks(context.getWatermarkCleaner(), context.getTouchedClasses(), entityManager)) {
+				return;
+			}
+			
+			if ((strategy == CleanupStrategy.TRUNCATE || strategy == CleanupStrategy.DELETE) && 
+				context.getTouchedClasses() != null && cleanupTables(context.getTouchedClasses(), strategy, entityManager)) {
+				return;
+			}
+			
+			if (context.getEntityTracker() != null) {
+				cleanupTrackedEntities(context.getEntityTracker(), entityManager);
+				return;
+			}
+			
+			if (runsInParallel() && parallelCleanup) {
+				cleanupInParallel(context, dgAnnotation);
+				return;
+			}
+			
+			if (runsInParallel()) {
+				cleanupInReverseOrder(context);
+				return;
+			}
+			
+			for (int attempt = 0; ; attempt++) {
+				try {
+					entityManager.getTransaction().begin();
+					
+					Class<? extends IDataGenerator>[] dataGeneratorClass = dgAnnotation.value();
+					for (int i = dataGeneratorClass.length - 1; i >= 0; i--) {
+						context.getDataGenerator(dataGeneratorClass[i]).cleanup();
+					}
+					entityManager.getTransaction().commit();
+					return;
+				}
+				catch (Exception e) {
+					if (entityManager.getTransaction().isActive()) {
+						entityManager.getTransaction().rollback();
+					}
+					if (retryOnDeadlock(e, attempt)) {
+						continue;
+					}
+					LOG.error("Unknow error", e);
+					throw new DataGeneratorException("An unexpected error occured during cleanup phase.", e);
+				}
+				finally {
+					entityManager.clear();
+				}
+			}
+		}
+	}
 	
 	/**
-	 * Force the construction of the data generator with an entity manager
+	 * Insert the fixture of the data generators from the cache or run the data generators
+	 * and record the rows they generated when the fixture is not in the cache.
 	 * 
-	 * @param entityManagerFactory Entity manager factory to create new entity managers
+	 * @param context The generation context of the test
+	 * @param dgAnnotation The data generator annotation of the test
+	 * @param entityManager The entity manager
+	 * @throws DataGeneratorException Any error during the data generation
 	 */
-	public DataGeneratorManager(EntityManagerFactory entityManagerFactory) {
-		this.entityManagerFactory = entityManagerFactory;
-	}
-
-	@Override
-	public Statement apply(final Statement base, final Description description) {
-		return new Statement() {
-			@Override
-			public void evaluate() throws Throwable {
-				// Create an entity manager to share between the before and after phase
-				EntityManager entityManager = entityManagerFactory.createEntityManager();
+	private void generateWithFixtureCache(GenerationContext context, DataGenerator dgAnnotation, EntityManager entityManager) throws DataGeneratorException {
+		long start = System.nanoTime();
+		String replayed = null;
+		
+		try {
+			entityManager.getTransaction().begin();
+			Connection connection = entityManager.unwrap(Connection.class);
+			String key = fixtureCache.key(dgAnnotation.value(), connection);
+			Fixture fixture = fixtureCache.load(key);
+			
+			if (fixture != null && REPLAYED_FIXTURES.add(key)) {
+				replayed = key;
+				fixtureCache.insert(fixture, connection);
+				entityManager.getTransaction().commit();
+				context.setReplayedFixture(key, fixture);
+				
+				LOG.info("Fixture {} of {} rows inserted in {} ms.", key, fixture.getRowCount(), (System.nanoTime() - start) / 1000000);
+			}
+			else {
+				// The rows of a fixture inserted by another test have the same keys, the data generators are run instead
+				FixtureCache.Snapshot snapshot = fixture == null ? fixtureCache.snapshot(connection) : null;
+				
+				Class<? extends IDataGenerator>[] dataGeneratorClass = dgAnnotation.value();
+				for (int i = 0; i < dataGeneratorClass.length; i++) {
+					context.getGenerationOrder().add(dataGeneratorClass[i]);
+					generate(context.getDataGenerator(dataGeneratorClass[i]), entityManager);
+				}
+				
+				if (snapshot == null) {
+					entityManager.getTransaction().commit();
+					LOG.info("Fixture {} inserted by another test, the data generators were run in {} ms.", key, (System.nanoTime() - start) / 1000000);
+					return;
+				}
+				
+				entityManager.flush();
+				fixture = snapshot.capture(connection);
+				entityManager.getTransaction().commit();
 				
+				// The data are generated, a fixture that cannot be recorded is recorded by a next test
 				try {
-					generate(description, entityManager);
-					testRunning = true;
-					base.evaluate();
+					fixtureCache.store(key, fixture);
+					LOG.info("Fixture {} of {} rows generated and recorded in {} ms.", key, fixture.getRowCount(), (System.nanoTime() - start) / 1000000);
 				}
-				finally {
-					testRunning = false;
-					cleanup(description, entityManager);
+				catch (FixtureException fe) {
+					LOG.warn("Unable to record the fixture " + key + ".", fe);
 				}
 			}
-		};
-	}	
+		}
+		catch (Exception e) {
+			LOG.error("Unkown error", e);
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().rollback();
+			}
+			if (replayed != null) {
+				REPLAYED_FIXTURES.remove(replayed);
+			}
+			throw new DataGeneratorException("An unexpected error occured during the data generation.", e);
+		}
+		finally {
+			entityManager.clear();
+		}
+	}
 	
 	/**
-	 * Be able to retrieve a data generator
+	 * Delete the rows of a fixture inserted from the cache
 	 * 
-	 * @param <T> Data generator type
-	 * @param dataGeneratorClass The data generator class to lookup
-	 * @return The data generator found, null otherwise
+	 * @param fixture The fixture
+	 * @param entityManager The entity manager
+	 * @throws DataGeneratorException Any error during the cleanup
 	 */
-	@SuppressWarnings("unchecked")
-	public <T extends IDataGenerator> T getDataGenerator(Class<T> dataGeneratorClass) {
-		// Check if the data generator exists
-		if (dataGenerators.containsKey(dataGeneratorClass)) {
-			return (T) dataGenerators.get(dataGeneratorClass);
+	private void cleanupFixture(Fixture fixture, EntityManager entityManager) throws DataGeneratorException {
+		try {
+			entityManager.getTransaction().begin();
+			fixture.delete(entityManager.unwrap(Connection.class));
+			entityManager.getTransaction().commit();
 		}
-		// Unknown data generator
-		else {
-			throw new RuntimeException(new DataGeneratorException("The data generator " + dataGeneratorClass.getCanonicalName() + " is not present in the annotation."));
+		catch (Exception e) {
+			LOG.error("Unknow error", e);
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().rollback();
+			}
+			throw new DataGeneratorException("An unexpected error occured during cleanup phase.", e);
+		}
+		finally {
+			entityManager.clear();
 		}
 	}
 	
 	/**
-	 * Actions to generate data
+	 * Reset the tables touched during the test. A truncate that fails falls back to a delete
+	 * of all the rows of the tables.
 	 * 
-	 * @param description The description to get test data
+	 * @param touchedClasses The classes of the entities written during the test
+	 * @param strategy The cleanup strategy, TRUNCATE or DELETE
 	 * @param entityManager The entity manager
-	 * @throws Throwable Any errors 
+	 * @return True if the tables are reset, false to fall back to the cleanup of the data generators
 	 */
-	private void generate(Description description, EntityManager entityManager) throws DataGeneratorException {
-		// Clear the generators used in a previous test. Clear must be there because 
-		// there is no warranty to reach the after if a test fails.
-		dataGenerators.clear();
-
-		DataGenerator dgAnnotation = description.getAnnotation(DataGenerator.class);
+	private boolean cleanupTables(Set<Class<?>> touchedClasses, CleanupStrategy strategy, EntityManager entityManager) {
+		if (touchedClasses.isEmpty()) {
+			return true;
+		}
 		
-		if (dgAnnotation == null) {
-			return;
+		TableCleaner cleaner = new TableCleaner(entityManager);
+		List<EntityType<?>> types = cleaner.touchedTypes(touchedClasses);
+		
+		if (strategy == CleanupStrategy.TRUNCATE && resetTables(cleaner, types, true, entityManager)) {
+			return true;
 		}
 		
-		// Retrieve all the data generators defined for the test method.
-		for (Class<? extends IDataGenerator> dataGeneratorClass : dgAnnotation.value()) {
-			// Check if the data generator is already instantiated.
-			if (!dataGenerators.containsKey(dataGeneratorClass)) {
-				try {
-					// Instantiate a new data generator proxy, inject the EJB and keep track of it.
-					IDataGenerator dataGenerator = (IDataGenerator) Enhancer.create(
-						dataGeneratorClass, 
-						new Class[] {IDataGenerator.class}, 
-						new GeneratorCallback(entityManager)
-					);
-					
-					DependencyInjector.inject(dataGenerator, entityManager, true);
-					dataGenerators.put(dataGeneratorClass, dataGenerator);
-				}
-				catch (Exception ex) {
-					LOG.error("Injection failed during the creation of the data generator: " + dataGeneratorClass.getCanonicalName(), ex);
-					throw new DataGeneratorException("Unable to instantiate the data generator " + dataGeneratorClass.getCanonicalName(), ex);
-				}
-			}
-			else {
-				LOG.error("The data generator [" + dataGeneratorClass.getCanonicalName() + "] is already instantiated. One instance of each data generator is allowed.");
-				throw new DataGeneratorException("The data generator " + dataGeneratorClass.getCanonicalName() + " is already registered. "
-					+ "Only one instance of each generator can be specified in the annotation.");
-			}
+		return resetTables(cleaner, types, false, entityManager);
+	}
+	
+	/**
+	 * Delete the rows of the tables touched during the test above the highest identifiers recorded
+	 * before the data generation
+	 * 
+	 * @param cleaner The watermark cleaner
+	 * @param touchedClasses The classes of the entities written during the test
+	 * @param entityManager The entity manager
+	 * @return True if the rows are deleted, false to fall back to the cleanup of the data generators
+	 */
+	private boolean cleanupAboveWatermarks(WatermarkCleaner cleaner, Set<Class<?>> touchedClasses, EntityManager entityManager) {
+		if (touchedClasses.isEmpty()) {
+			return true;
 		}
 		
+		List<EntityType<?>> types = new TableCleaner(entityManager).touchedTypes(touchedClasses);
+		
 		try {
 			entityManager.getTransaction().begin();
-			Class<? extends IDataGenerator>[] dataGeneratorClass = dgAnnotation.value();
-			for (int i = 0; i < dataGeneratorClass.length; i++) {
-				getDataGenerator(dataGeneratorClass[i]).generate();
+			int deleted = cleaner.delete(entityManager, types);
+			entityManager.getTransaction().commit();
+			
+			LOG.debug("{} rows deleted above the watermarks of the entities {}.", deleted, types);
+			return true;
+		}
+		catch (Exception e) {
+			LOG.warn("Unable to delete the rows above the watermarks, falling back.", e);
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().rollback();
 			}
+			return false;
+		}
+		finally {
+			entityManager.clear();
+		}
+	}
+	
+	/**
+	 * Reset tables in a transaction
+	 * 
+	 * @param cleaner The table cleaner
+	 * @param types The entity types of the tables in the order to delete them
+	 * @param truncate True to truncate the tables, false to delete their rows
+	 * @param entityManager The entity manager
+	 * @return True if the tables are reset
+	 */
+	private boolean resetTables(TableCleaner cleaner, List<EntityType<?>> types, boolean truncate, EntityManager entityManager) {
+		try {
+			entityManager.getTransaction().begin();
+			int count = truncate ? cleaner.truncate(types) : cleaner.delete(types);
 			entityManager.getTransaction().commit();
+			
+			LOG.debug("{} {} for the entities {}.", count, truncate ? "tables truncated" : "rows deleted", types);
+			return true;
 		}
 		catch (Exception e) {
-			LOG.error("Unkown error", e);
-			entityManager.getTransaction().rollback();
-			throw new DataGeneratorException("An unexpected error occured during the data generation.", e);
+			LOG.warn("Unable to " + (truncate ? "truncate" : "delete") + " the tables touched by the test, falling back.", e);
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().rollback();
+			}
+			return false;
 		}
 		finally {
 			entityManager.clear();
 		}
 	}
-
+	
 	/**
-	 * Actions to clean the data
+	 * Delete the entities tracked during the test
 	 * 
-	 * @param description The description to get test data
+	 * @param tracker The entity tracker
 	 * @param entityManager The entity manager
-	 * @throws Throwable Any errors 
+	 * @throws DataGeneratorException Any error during the cleanup
 	 */
-	private void cleanup(Description description, EntityManager entityManager) throws DataGeneratorException {
-		DataGenerator dgAnnotation = description.getAnnotation(DataGenerator.class);
+	private void cleanupTrackedEntities(EntityTracker tracker, EntityManager entityManager) throws DataGeneratorException {
+		if (tracker.isEmpty()) {
+			return;
+		}
 		
-		if (dgAnnotation != null && dgAnnotation.executeCleanup()) {
+		for (int attempt = 0; ; attempt++) {
 			try {
 				entityManager.getTransaction().begin();
-				
-				Class<? extends IDataGenerator>[] dataGeneratorClass = dgAnnotation.value();
-				for (int i = dataGeneratorClass.length - 1; i >= 0; i--) {
-					getDataGenerator(dataGeneratorClass[i]).cleanup();
-				}
+				int deleted = tracker.delete(entityManager);
 				entityManager.getTransaction().commit();
+				
+				LOG.debug("{} tracked entities deleted.", deleted);
+				return;
 			}
 			catch (Exception e) {
+				if (entityManager.getTransaction().isActive()) {
+					entityManager.getTransaction().rollback();
+				}
+				if (retryOnDeadlock(e, attempt)) {
+					continue;
+				}
 				LOG.error("Unknow error", e);
-				entityManager.getTransaction().rollback();
 				throw new DataGeneratorException("An unexpected error occured during cleanup phase.", e);
 			}
 			finally {
@@ -186,10 +1283,271 @@ public class DataGeneratorManager implements TestRule {
 		}
 	}
 	
+	/**
+	 * Run the data generators in parallel by respecting the dependencies between them
+	 * 
+	 * @param context The generation context of the test
+	 * @param dgAnnotation The data generator annotation of the test
+	 * @throws DataGeneratorException Any error during the data generation
+	 */
+	private void generateInParallel(final GenerationContext context, DataGenerator dgAnnotation) throws DataGeneratorException {
+		DataGeneratorGraph<Class<? extends IDataGenerator>> graph = buildGraph(dgAnnotation.value());
+		
+		try {
+			context.getGenerationOrder().addAll(graph.topologicalOrder());
+			
+			graph.execute(executor(), new DataGeneratorGraph.NodeTask<Class<? extends IDataGenerator>>() {
+				@Override
+				public void run(Class<? extends IDataGenerator> dataGeneratorClass) throws Exception {
+					EntityManager generatorEntityManager = context.getEntityManager(dataGeneratorClass);
+					
+					for (int attempt = 0; ; attempt++) {
+						try {
+							generatorEntityManager.getTransaction().begin();
+							generate(context.getDataGenerator(dataGeneratorClass), generatorEntityManager);
+							generatorEntityManager.getTransaction().commit();
+							return;
+						}
+						catch (Exception e) {
+							if (generatorEntityManager.getTransaction().isActive()) {
+								generatorEntityManager.getTransaction().rollback();
+							}
+							if (!retryOnDeadlock(e, attempt)) {
+								throw e;
+							}
+						}
+						finally {
+							generatorEntityManager.clear();
+						}
+					}
+				}
+			});
+		}
+		catch (Exception e) {
+			LOG.error("Unkown error", e);
+			throw new DataGeneratorException("An unexpected error occured during the data generation.", e);
+		}
+	}
+	
+	/**
+	 * Cleanup the data generators one after another in the reverse order of the generation,
+	 * each one with its own entity manager and transaction
+	 * 
+	 * @param context The generation context of the test
+	 * @throws DataGeneratorException Any error during the cleanup
+	 */
+	private void cleanupInReverseOrder(GenerationContext context) throws DataGeneratorException {
+		List<Class<? extends IDataGenerator>> generationOrder = context.getGenerationOrder();
+		
+		for (int i = generationOrder.size() - 1; i >= 0; i--) {
+			EntityManager generatorEntityManager = context.getEntityManager(generationOrder.get(i));
+			
+			for (int attempt = 0; ; attempt++) {
+				try {
+					generatorEntityManager.getTransaction().begin();
+					context.getDataGenerator(generationOrder.get(i)).cleanup();
+					generatorEntityManager.getTransaction().commit();
+					break;
+				}
+				catch (Exception e) {
+					if (generatorEntityManager.getTransaction().isActive()) {
+						generatorEntityManager.getTransaction().rollback();
+					}
+					if (retryOnDeadlock(e, attempt)) {
+						continue;
+					}
+					LOG.error("Unknow error", e);
+					throw new DataGeneratorException("An unexpected error occured during cleanup phase.", e);
+				}
+				finally {
+					generatorEntityManager.clear();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Cleanup the data generators that write unrelated tables at the same time, each one with its
+	 * own entity manager and transaction. The related data generators are cleaned up in the reverse
+	 * order of the generation.
+	 * 
+	 * @param context The generation context of the test
+	 * @param dgAnnotation The data generator annotation of the test
+	 * @throws DataGeneratorException Any error during the cleanup
+	 */
+	private void cleanupInParallel(final GenerationContext context, DataGenerator dgAnnotation) throws DataGeneratorException {
+		List<Class<? extends IDataGenerator>> generationOrder = context.getGenerationOrder();
+		DataGeneratorGraph<Class<? extends IDataGenerator>> graph = buildGraph(dgAnnotation.value()).reverse();
+		
+		// The entity types written by each data generator, null when they are unknown
+		List<Set<EntityType<?>>> written = new ArrayList<>();
+		TableCleaner cleaner = null;
+		for (Class<? extends IDataGenerator> dataGeneratorClass : generationOrder) {
+			Set<Class<?>> touchedClasses = context.getTouchedClasses(context.getEntityManager(dataGeneratorClass));
+			
+			if (touchedClasses == null || touchedClasses.isEmpty()) {
+				written.add(null);
+			}
+			else {
+				if (cleaner == null) {
+					cleaner = new TableCleaner(context.getEntityManager());
+				}
+				written.add(new HashSet<>(cleaner.touchedTypes(touchedClasses)));
+			}
+		}
+		
+		// The edges always go from a data generator to one generated before, there is no loop
+		EntityDependencyGraph entityGraph = cleaner != null ? EntityDependencyGraph.of(context.getEntityManager().getMetamodel()) : null;
+		for (int later = generationOrder.size() - 1; later > 0; later--) {
+			for (int earlier = later - 1; earlier >= 0; earlier--) {
+				if (areRelated(written.get(later), written.get(earlier), entityGraph)) {
+					graph.addEdge(generationOrder.get(later), generationOrder.get(earlier));
+				}
+			}
+		}
+		
+		try {
+			graph.execute(executor(), new DataGeneratorGraph.NodeTask<Class<? extends IDataGenerator>>() {
+				@Override
+				public void run(Class<? extends IDataGenerator> dataGeneratorClass) throws Exception {
+					EntityManager generatorEntityManager = context.getEntityManager(dataGeneratorClass);
+					
+					for (int attempt = 0; ; attempt++) {
+						try {
+							generatorEntityManager.getTransaction().begin();
+							context.getDataGenerator(dataGeneratorClass).cleanup();
+							generatorEntityManager.getTransaction().commit();
+							return;
+						}
+						catch (Exception e) {
+							if (generatorEntityManager.getTransaction().isActive()) {
+								generatorEntityManager.getTransaction().rollback();
+							}
+							if (!retryOnDeadlock(e, attempt)) {
+								throw e;
+							}
+						}
+						finally {
+							generatorEntityManager.clear();
+						}
+					}
+				}
+			});
+		}
+		catch (Exception e) {
+			LOG.error("Unknow error", e);
+			throw new DataGeneratorException("An unexpected error occured during cleanup phase.", e);
+		}
+	}
+	
+	/**
+	 * @param left The entity types written by a data generator, null when they are unknown
+	 * @param right The entity types written by another data generator, null when they are unknown
+	 * @param entityGraph The entity dependency graph
+	 * @return True if the data generators write related tables
+	 */
+	private static boolean areRelated(Set<EntityType<?>> left, Set<EntityType<?>> right, EntityDependencyGraph entityGraph) {
+		if (left == null || right == null) {
+			return true;
+		}
+		
+		for (EntityType<?> leftType : left) {
+			for (EntityType<?> rightType : right) {
+				if (entityGraph.areRelated(leftType, rightType)) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Build the dependency graph between the data generators of a test
+	 * 
+	 * @param dataGeneratorClasses The data generator classes of the test
+	 * @return The graph
+	 */
+	private DataGeneratorGraph<Class<? extends IDataGenerator>> buildGraph(Class<? extends IDataGenerator>[] dataGeneratorClasses) {
+		DataGeneratorGraph<Class<? extends IDataGenerator>> graph = new DataGeneratorGraph<>();
+		
+		for (Class<? extends IDataGenerator> dataGeneratorClass : dataGeneratorClasses) {
+			graph.addNode(dataGeneratorClass);
+		}
+		
+		for (Class<? extends IDataGenerator> dataGeneratorClass : dataGeneratorClasses) {
+			// Dependencies through the injections
+			for (Class<? extends IDataGenerator> other : dataGeneratorClasses) {
+				if (other != dataGeneratorClass && INJECTED_DATA_GENERATORS.get(dataGeneratorClass).contains(other)) {
+					graph.addEdge(other, dataGeneratorClass);
+				}
+			}
+			
+			// Declared dependencies
+			RunAfter runAfter = dataGeneratorClass.getAnnotation(RunAfter.class);
+			if (runAfter != null) {
+				for (Class<? extends IDataGenerator> before : runAfter.value()) {
+					if (before != dataGeneratorClass && graph.contains(before)) {
+						graph.addEdge(before, dataGeneratorClass);
+					}
+				}
+			}
+		}
+		
+		return graph;
+	}
+	
+	/**
+	 * Dataset of a test kept to be reused by the next test with the same data generators
+	 */
+	private static class RetainedDataset {
+		private final DataGeneratorManager manager;
+		private final GenerationContext context;
+		private final Description description;
+
+		public RetainedDataset(DataGeneratorManager manager, GenerationContext context, Description description) {
+			this.manager = manager;
+			this.context = context;
+			this.description = description;
+		}
+		
+		/**
+		 * @param other The manager of the test
+		 * @param dgAnnotation The data generator annotation of the test
+		 * @return True if the dataset is generated by the same data generators with the same entity manager factory
+		 */
+		public boolean matches(DataGeneratorManager other, DataGenerator dgAnnotation) {
+			return dgAnnotation != null && 
+				manager.entityManagerFactory == other.entityManagerFactory &&
+				manager.parallelism == other.parallelism &&
+				Arrays.equals(description.getAnnotation(DataGenerator.class).value(), dgAnnotation.value());
+		}
+		
+		/**
+		 * Cleanup the dataset
+		 * 
+		 * @throws DataGeneratorException Any error during the cleanup
+		 */
+		public void cleanup() throws DataGeneratorException {
+			try {
+				manager.cleanup(context, description, context.getEntityManager());
+			}
+			finally {
+				context.close();
+				manager.allocator.release(context.getNamespace());
+			}
+		}
+	}
+	
 	/**
 	 * Callback class to allow lazy instantiation of annotated fields
 	 */
 	private static class GeneratorCallback implements MethodInterceptor {
+		/**
+		 * Generation context of the test that owns the generator
+		 */
+		private GenerationContext context;
+		
 		/**
 		 * Entity manager to manage the transactions
 		 */
@@ -198,17 +1556,46 @@ public class DataGeneratorManager implements TestRule {
 		/**
 		 * Constructor
 		 * 
+		 * @param context Generation context of the test
 		 * @param entityManager Entity manager
-		 * @param proxiedGenerator The generator to proxy
 		 */
-		public GeneratorCallback(EntityManager entityManager) {
+		public GeneratorCallback(GenerationContext context, EntityManager entityManager) {
+			this.context = context;
 			this.entityManager = entityManager;
 		}
 		
 		@Override
 		public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
-			// Invoke create/update/delete methods encapsulated into a transaction
-			if (testRunning && method.getName().startsWith("create") || method.getName().startsWith("update") || method.getName().startsWith("delete")) {
+			// The namespace of the test is current whatever the thread calling the data generator
+			String previousNamespace = DataNamespace.enter(context.getNamespace());
+			try {
+				return invoke(obj, method, args, proxy);
+			}
+			finally {
+				DataNamespace.restore(previousNamespace);
+			}
+		}
+		
+		/**
+		 * Invoke a method of the data generator
+		 * 
+		 * @param obj The data generator
+		 * @param method The method
+		 * @param args The arguments
+		 * @param proxy The proxy of the method
+		 * @return The result of the method
+		 * @throws Throwable Any error of the method
+		 */
+		private Object invoke(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
+			// Invoke create/update/delete methods encapsulated into a transaction, the transaction
+			// of the test is joined when there is one
+			boolean write = context.isTestRunning() && (method.getName().startsWith("create") || method.getName().startsWith("update") || method.getName().startsWith("delete"));
+			
+			if (write) {
+				context.markDirty();
+			}
+			
+			if (write && !entityManager.getTransaction().isActive()) {
 				try {
 					entityManager.getTransaction().begin();
 					Object result = proxy.invokeSuper(obj, args);
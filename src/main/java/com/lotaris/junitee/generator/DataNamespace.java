@@ -0,0 +1,104 @@
+package com.lotaris.junitee.generator;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The data namespace identifies the test run by a worker. It is derived from the fork
+ * of the test JVM, the thread that runs the test and the test itself. Two tests run at
+ * the same time in the same JVM or in different forks get different namespaces.
+ *
+ * The data generator manager makes the namespace of the test current during the test
+ * and during each call to its data generators, whatever the thread of the call. The data
+ * generators can use it to build unique values (names, emails, external identifiers) that
+ * do not collide with the data of the other tests run at the same time. It is the default
+ * prefix of the composite data generators.
+ *
+ * The fork is read from the surefire.forkNumber system property that can be configured
+ * in surefire with the ${surefire.forkNumber} placeholder. The process identifier of the
+ * JVM is used when the property is not defined.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public final class DataNamespace {
+	/**
+	 * System property to identify the fork of the test JVM
+	 */
+	public static final String FORK_NUMBER_PROPERTY = "surefire.forkNumber";
+
+	/**
+	 * The namespace of the test run by the current thread
+	 */
+	private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * The fork of the test JVM
+	 */
+	private static final String FORK = fork();
+
+	/**
+	 * Constructor
+	 */
+	private DataNamespace() {}
+
+	/**
+	 * @return The namespace of the test run by the current thread, null when no test is run by the data generator manager
+	 */
+	public static String current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Create the namespace of a test run by the current thread. The namespace contains only
+	 * lower case letters and digits to be usable in any kind of value.
+	 *
+	 * @param testId The identifier of the test
+	 * @return The namespace
+	 */
+	static String create(String testId) {
+		return "f" + FORK + "t" + Long.toString(Thread.currentThread().getId(), Character.MAX_RADIX) +
+			"s" + Integer.toString(testId.hashCode() & Integer.MAX_VALUE, Character.MAX_RADIX);
+	}
+
+	/**
+	 * Make a namespace current for the current thread
+	 *
+	 * @param namespace The namespace, null to have no current namespace
+	 * @return The previous namespace of the current thread to restore
+	 */
+	static String enter(String namespace) {
+		String previous = CURRENT.get();
+		restore(namespace);
+		return previous;
+	}
+
+	/**
+	 * Restore the namespace of the current thread
+	 *
+	 * @param namespace The namespace returned by enter
+	 */
+	static void restore(String namespace) {
+		if (namespace == null) {
+			CURRENT.remove();
+		}
+		else {
+			CURRENT.set(namespace);
+		}
+	}
+
+	/**
+	 * @return The fork number configured or the process identifier of the JVM
+	 */
+	private static String fork() {
+		String fork = System.getProperty(FORK_NUMBER_PROPERTY);
+
+		if (fork == null || fork.isEmpty()) {
+			// The name of the runtime is pid@host on the usual JVMs
+			fork = ManagementFactory.getRuntimeMXBean().getName();
+			if (fork.contains("@")) {
+				fork = fork.substring(0, fork.indexOf('@'));
+			}
+		}
+
+		return fork.replaceAll("[^A-Za-z0-9]", "").toLowerCase();
+	}
+}
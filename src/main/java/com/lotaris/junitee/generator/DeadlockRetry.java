@@ -0,0 +1,117 @@
+package com.lotaris.junitee.generator;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.LockTimeoutException;
+import javax.persistence.PessimisticLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The deadlock retry decides if a transaction that failed must be run again. Only the
+ * transactions chosen as deadlock victims by the database (or that timed out waiting for
+ * a lock) are retried, after a backoff that grows with the attempts. The backoff is
+ * randomized to avoid the same transactions to meet again.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class DeadlockRetry {
+	private static final Logger LOG = LoggerFactory.getLogger(DeadlockRetry.class);
+
+	/**
+	 * SQL states of the deadlocks and serialization failures
+	 */
+	private static final Set<String> DEADLOCK_SQL_STATES = new HashSet<>(Arrays.asList("40001", "40P01"));
+
+	/**
+	 * Vendor error codes of the deadlocks and lock wait timeouts (MySQL, Oracle)
+	 */
+	private static final Set<Integer> DEADLOCK_ERROR_CODES = new HashSet<>(Arrays.asList(1213, 1205, 60));
+
+	/**
+	 * Maximum number of times a transaction is run again
+	 */
+	private final int maxRetries;
+
+	/**
+	 * Base of the backoff in milliseconds
+	 */
+	private final long backoff;
+
+	/**
+	 * Number of transactions run again
+	 */
+	private final AtomicLong retries = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxRetries Maximum number of times a transaction is run again
+	 * @param backoff Base of the backoff in milliseconds
+	 */
+	DeadlockRetry(int maxRetries, long backoff) {
+		this.maxRetries = maxRetries;
+		this.backoff = backoff;
+	}
+
+	/**
+	 * Decide if a failed transaction must be run again and wait for the backoff when it is the case
+	 *
+	 * @param failure The failure of the transaction
+	 * @param attempt The number of times the transaction was already retried
+	 * @return True if the transaction must be run again
+	 */
+	boolean shouldRetry(Throwable failure, int attempt) {
+		if (attempt >= maxRetries || !isDeadlock(failure)) {
+			return false;
+		}
+
+		retries.incrementAndGet();
+
+		// Full jitter, the wait is random between zero and the exponential backoff
+		long delay = ThreadLocalRandom.current().nextLong((backoff << Math.min(attempt, 16)) + 1);
+		LOG.warn("Deadlock detected, the transaction is run again in {} ms (retry {} of {}).", delay, attempt + 1, maxRetries);
+
+		try {
+			Thread.sleep(delay);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The number of transactions run again
+	 */
+	long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @param failure The failure of a transaction
+	 * @return True if the failure or one of its causes is a deadlock or a lock wait timeout
+	 */
+	static boolean isDeadlock(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+			if (cause instanceof PessimisticLockException || cause instanceof LockTimeoutException) {
+				return true;
+			}
+
+			if (cause instanceof SQLException) {
+				SQLException sqle = (SQLException) cause;
+				if (DEADLOCK_SQL_STATES.contains(sqle.getSQLState()) || DEADLOCK_ERROR_CODES.contains(sqle.getErrorCode())) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+}
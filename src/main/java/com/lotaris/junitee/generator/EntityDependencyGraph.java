@@ -0,0 +1,404 @@
+package com.lotaris.junitee.generator;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Member;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import javax.persistence.CascadeType;
+import javax.persistence.CollectionTable;
+import javax.persistence.ElementCollection;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinColumns;
+import javax.persistence.JoinTable;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The entity dependency graph keeps the foreign keys between the entities of a persistence
+ * unit. It is built once from the JPA metamodel and gives the order to delete the entities
+ * without violating the foreign keys: an entity is deleted before the entities it references.
+ *
+ * The foreign keys are taken from the owning side of the associations (many to one, one to one
+ * without mapped by and one to many with a join column). The join tables and the collection
+ * tables are kept by entity as their rows must be deleted before the rows of the entity.
+ * The entities persisted by cascade from each entity are kept too.
+ *
+ * A foreign key that closes a loop between entities (self references included) is ignored
+ * for the order. Such a foreign key must be nullable and cleared before the entities are deleted.
+ *
+ * The graph is cached by metamodel, so by persistence unit.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class EntityDependencyGraph {
+	private static final Logger LOG = LoggerFactory.getLogger(EntityDependencyGraph.class);
+
+	/**
+	 * The graphs already built by metamodel
+	 */
+	private static final Map<Metamodel, EntityDependencyGraph> GRAPHS = Collections.synchronizedMap(new WeakHashMap<Metamodel, EntityDependencyGraph>());
+
+	/**
+	 * The entity types in the order to delete them
+	 */
+	private final List<EntityType<?>> deletionOrder;
+
+	/**
+	 * The entity types referenced by each entity type (the foreign keys kept for the order)
+	 */
+	private final Map<EntityType<?>, Set<EntityType<?>>> references = new HashMap<>();
+
+	/**
+	 * The join and collection tables owned by each entity type
+	 */
+	private final Map<EntityType<?>, Set<String>> joinTables = new HashMap<>();
+
+	/**
+	 * The entity types referenced through the join tables of each entity type
+	 */
+	private final Map<EntityType<?>, Set<EntityType<?>>> joinTargets = new HashMap<>();
+
+	/**
+	 * The entity types persisted by cascade from each entity type
+	 */
+	private final Map<EntityType<?>, Set<EntityType<?>>> cascades = new HashMap<>();
+
+	/**
+	 * The entity types by class
+	 */
+	private final Map<Class<?>, EntityType<?>> typesByClass = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param metamodel The metamodel of the persistence unit
+	 */
+	private EntityDependencyGraph(Metamodel metamodel) {
+		List<EntityType<?>> types = new ArrayList<>(metamodel.getEntities());
+
+		// Sort the types to get the same order whatever the order of the metamodel is
+		Collections.sort(types, new Comparator<EntityType<?>>() {
+			@Override
+			public int compare(EntityType<?> left, EntityType<?> right) {
+				return left.getName().compareTo(right.getName());
+			}
+		});
+
+		for (EntityType<?> type : types) {
+			typesByClass.put(type.getJavaType(), type);
+			references.put(type, new LinkedHashSet<EntityType<?>>());
+			joinTables.put(type, new LinkedHashSet<String>());
+			joinTargets.put(type, new LinkedHashSet<EntityType<?>>());
+			cascades.put(type, new LinkedHashSet<EntityType<?>>());
+		}
+
+		for (EntityType<?> type : types) {
+			for (Attribute<?, ?> attribute : type.getAttributes()) {
+				analyze(type, attribute);
+			}
+		}
+
+		DataGeneratorGraph<EntityType<?>> graph = new DataGeneratorGraph<>();
+		for (EntityType<?> type : types) {
+			graph.addNode(type);
+		}
+
+		for (EntityType<?> type : types) {
+			for (EntityType<?> referenced : references.get(type)) {
+				graph.addEdge(type, referenced);
+			}
+		}
+
+		deletionOrder = Collections.unmodifiableList(graph.topologicalOrder());
+	}
+
+	/**
+	 * Get the graph of a persistence unit, built on the first call
+	 *
+	 * @param metamodel The metamodel of the persistence unit
+	 * @return The graph
+	 */
+	static EntityDependencyGraph of(Metamodel metamodel) {
+		synchronized (GRAPHS) {
+			EntityDependencyGraph graph = GRAPHS.get(metamodel);
+
+			if (graph == null) {
+				graph = new EntityDependencyGraph(metamodel);
+				GRAPHS.put(metamodel, graph);
+				LOG.debug("Deletion order of the entities: {}", graph.deletionOrder);
+			}
+
+			return graph;
+		}
+	}
+
+	/**
+	 * @return All the entity types in the order to delete them
+	 */
+	List<EntityType<?>> getDeletionOrder() {
+		return deletionOrder;
+	}
+
+	/**
+	 * Sort entity types in the order to delete them
+	 *
+	 * @param types The entity types to sort
+	 * @return The entity types in the order to delete them
+	 */
+	List<EntityType<?>> sortForDeletion(Collection<EntityType<?>> types) {
+		Set<EntityType<?>> wanted = new HashSet<>(types);
+		List<EntityType<?>> sorted = new ArrayList<>(types.size());
+
+		for (EntityType<?> type : deletionOrder) {
+			if (wanted.remove(type)) {
+				sorted.add(type);
+			}
+		}
+
+		// Types unknown from the metamodel of the graph are deleted last
+		for (EntityType<?> type : types) {
+			if (wanted.contains(type)) {
+				sorted.add(type);
+			}
+		}
+
+		return sorted;
+	}
+
+	/**
+	 * @param type The entity type
+	 * @return The entity types referenced by the foreign keys of the entity type
+	 */
+	Set<EntityType<?>> getReferences(EntityType<?> type) {
+		Set<EntityType<?>> referenced = references.get(type);
+		return referenced != null ? Collections.unmodifiableSet(referenced) : Collections.<EntityType<?>>emptySet();
+	}
+
+	/**
+	 * @param type The entity type
+	 * @return The join and collection tables owned by the entity type
+	 */
+	Set<String> getJoinTables(EntityType<?> type) {
+		Set<String> tables = joinTables.get(type);
+		return tables != null ? Collections.unmodifiableSet(tables) : Collections.<String>emptySet();
+	}
+
+	/**
+	 * Two entity types are related when they are the same or when the rows of one can reference
+	 * the rows of the other, through a foreign key or a join table
+	 *
+	 * @param left An entity type
+	 * @param right Another entity type
+	 * @return True if the entity types are related
+	 */
+	boolean areRelated(EntityType<?> left, EntityType<?> right) {
+		return left.equals(right) || relates(left, right) || relates(right, left);
+	}
+
+	/**
+	 * @param type The entity type
+	 * @return The entity types persisted by cascade from the entity type
+	 */
+	Set<EntityType<?>> getCascades(EntityType<?> type) {
+		Set<EntityType<?>> cascaded = cascades.get(type);
+		return cascaded != null ? Collections.unmodifiableSet(cascaded) : Collections.<EntityType<?>>emptySet();
+	}
+
+	/**
+	 * @param cl The class of an entity, or a subclass of it
+	 * @return The entity type, null if the class is not an entity
+	 */
+	EntityType<?> typeOf(Class<?> cl) {
+		// The class can be a proxy of the persistence provider
+		for (Class<?> current = cl; current != null && current != Object.class; current = current.getSuperclass()) {
+			EntityType<?> type = typesByClass.get(current);
+			if (type != null) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param member The member of an association
+	 * @return True if the persist is cascaded through the association
+	 */
+	static boolean cascadesPersist(Member member) {
+		if (!(member instanceof AccessibleObject)) {
+			return false;
+		}
+
+		AccessibleObject annotated = (AccessibleObject) member;
+		CascadeType[] cascadeTypes = null;
+		if (annotated.isAnnotationPresent(OneToMany.class)) {
+			cascadeTypes = annotated.getAnnotation(OneToMany.class).cascade();
+		}
+		else if (annotated.isAnnotationPresent(OneToOne.class)) {
+			cascadeTypes = annotated.getAnnotation(OneToOne.class).cascade();
+		}
+		else if (annotated.isAnnotationPresent(ManyToOne.class)) {
+			cascadeTypes = annotated.getAnnotation(ManyToOne.class).cascade();
+		}
+		else if (annotated.isAnnotationPresent(ManyToMany.class)) {
+			cascadeTypes = annotated.getAnnotation(ManyToMany.class).cascade();
+		}
+
+		if (cascadeTypes != null) {
+			for (CascadeType cascade : cascadeTypes) {
+				if (cascade == CascadeType.PERSIST || cascade == CascadeType.ALL) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Register the foreign key, the join table and the cascade of an attribute
+	 *
+	 * @param type The entity type of the attribute
+	 * @param attribute The attribute
+	 */
+	private void analyze(EntityType<?> type, Attribute<?, ?> attribute) {
+		Member member = attribute.getJavaMember();
+		if (!(member instanceof AccessibleObject)) {
+			return;
+		}
+
+		AccessibleObject annotated = (AccessibleObject) member;
+		EntityType<?> target = typesByClass.get(attribute instanceof PluralAttribute ?
+			((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType() : attribute.getJavaType());
+
+		if (target != null && !target.equals(type) && cascadesPersist(member)) {
+			cascades.get(type).add(target);
+		}
+
+		if (annotated.isAnnotationPresent(ManyToOne.class)) {
+			addReference(type, target);
+		}
+		else if (annotated.isAnnotationPresent(OneToOne.class)) {
+			if (annotated.getAnnotation(OneToOne.class).mappedBy().isEmpty()) {
+				addReference(type, target);
+			}
+		}
+		else if (annotated.isAnnotationPresent(OneToMany.class)) {
+			if (!annotated.getAnnotation(OneToMany.class).mappedBy().isEmpty()) {
+				return;
+			}
+
+			if (annotated.isAnnotationPresent(JoinColumn.class) || annotated.isAnnotationPresent(JoinColumns.class)) {
+				// The foreign key is in the table of the target
+				addReference(target, type);
+			}
+			else {
+				addJoinTable(type, target, joinTableName(annotated, type, target));
+			}
+		}
+		else if (annotated.isAnnotationPresent(ManyToMany.class)) {
+			if (annotated.getAnnotation(ManyToMany.class).mappedBy().isEmpty()) {
+				addJoinTable(type, target, joinTableName(annotated, type, target));
+			}
+		}
+		else if (annotated.isAnnotationPresent(ElementCollection.class)) {
+			CollectionTable collectionTable = annotated.getAnnotation(CollectionTable.class);
+			joinTables.get(type).add(collectionTable != null && !collectionTable.name().isEmpty() ?
+				collectionTable.name() : type.getName() + "_" + attribute.getName());
+		}
+	}
+
+	/**
+	 * Add a join table
+	 *
+	 * @param type The entity type owning the join table
+	 * @param target The entity type referenced through the join table, null if it is not an entity
+	 * @param name The name of the join table
+	 */
+	private void addJoinTable(EntityType<?> type, EntityType<?> target, String name) {
+		joinTables.get(type).add(name);
+
+		if (target != null) {
+			joinTargets.get(type).add(target);
+		}
+	}
+
+	/**
+	 * @param from An entity type
+	 * @param to Another entity type
+	 * @return True if the rows of the first entity type can reference the rows of the other one
+	 */
+	private boolean relates(EntityType<?> from, EntityType<?> to) {
+		return references.containsKey(from) && (references.get(from).contains(to) || joinTargets.get(from).contains(to));
+	}
+
+	/**
+	 * Add a foreign key unless it closes a loop
+	 *
+	 * @param from The entity type with the foreign key
+	 * @param to The entity type referenced
+	 */
+	private void addReference(EntityType<?> from, EntityType<?> to) {
+		if (from == null || to == null) {
+			return;
+		}
+
+		if (from.equals(to) || references(to, from, new HashSet<EntityType<?>>())) {
+			LOG.debug("The foreign key from {} to {} closes a loop, it is ignored for the deletion order.", from.getName(), to.getName());
+			return;
+		}
+
+		references.get(from).add(to);
+	}
+
+	/**
+	 * @param from The entity type to start from
+	 * @param to The entity type to reach
+	 * @param visited The entity types already visited
+	 * @return True if the entity type to reach is referenced directly or indirectly
+	 */
+	private boolean references(EntityType<?> from, EntityType<?> to, Set<EntityType<?>> visited) {
+		if (!visited.add(from)) {
+			return false;
+		}
+
+		for (EntityType<?> referenced : references.get(from)) {
+			if (referenced.equals(to) || references(referenced, to, visited)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param annotated The annotated association
+	 * @param type The entity type owning the association
+	 * @param target The entity type of the association target
+	 * @return The name of the join table
+	 */
+	private static String joinTableName(AccessibleObject annotated, EntityType<?> type, EntityType<?> target) {
+		JoinTable joinTable = annotated.getAnnotation(JoinTable.class);
+
+		if (joinTable != null && !joinTable.name().isEmpty()) {
+			return joinTable.name();
+		}
+
+		return type.getName() + "_" + (target != null ? target.getName() : "");
+	}
+}
@@ -0,0 +1,148 @@
+package com.lotaris.junitee.generator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.persistence.EntityManager;
+
+/**
+ * The entity stream persister pulls the entities of a streaming data generator and persists
+ * them by batches. The entities are produced in a background thread while the previous batches
+ * are persisted, the number of batches produced in advance is limited to keep the memory bounded.
+ * The entities are produced in the data namespace of the caller.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class EntityStreamPersister {
+	/**
+	 * Number of batches that can be produced in advance
+	 */
+	private static final int BATCHES_IN_ADVANCE = 2;
+
+	/**
+	 * Marker to indicate the end of the stream
+	 */
+	private static final Object END = new Object();
+
+	/**
+	 * Threads to produce the entities
+	 */
+	private static final ExecutorService PRODUCERS = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "junitee-stream");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Entity manager to persist the entities
+	 */
+	private final EntityManager entityManager;
+
+	/**
+	 * Number of entities by batch
+	 */
+	private final int batchSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityManager Entity manager to persist the entities
+	 * @param batchSize Number of entities by batch
+	 */
+	EntityStreamPersister(EntityManager entityManager, int batchSize) {
+		this.entityManager = entityManager;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Persist the entities of a streaming data generator
+	 *
+	 * @param dataGenerator The data generator
+	 * @return The number of entities persisted
+	 * @throws DataGeneratorException Any error during the production or the persistence of the entities
+	 */
+	long persist(IStreamingDataGenerator<?> dataGenerator) throws DataGeneratorException {
+		final Iterator<?> entities = dataGenerator.entities();
+		final BlockingQueue<Object> batches = new ArrayBlockingQueue<>(BATCHES_IN_ADVANCE);
+		final String namespace = DataNamespace.current();
+
+		Future<?> producer = PRODUCERS.submit(new Runnable() {
+			@Override
+			public void run() {
+				String previousNamespace = DataNamespace.enter(namespace);
+				try {
+					List<Object> batch = new ArrayList<>(batchSize);
+					while (entities.hasNext()) {
+						batch.add(entities.next());
+
+						if (batch.size() == batchSize) {
+							batches.put(batch);
+							batch = new ArrayList<>(batchSize);
+						}
+					}
+
+					if (!batch.isEmpty()) {
+						batches.put(batch);
+					}
+					batches.put(END);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				catch (Throwable t) {
+					try {
+						batches.put(new Failure(t));
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				finally {
+					DataNamespace.restore(previousNamespace);
+				}
+			}
+		});
+
+		try (BulkPersister persister = new BulkPersister(entityManager, batchSize)) {
+			for (Object batch = batches.take(); batch != END; batch = batches.take()) {
+				if (batch instanceof Failure) {
+					throw new DataGeneratorException("Unable to produce the entities of the data generator " + 
+						dataGenerator.getClass().getCanonicalName(), ((Failure) batch).cause);
+				}
+
+				persister.persistAll((List<?>) batch);
+			}
+
+			return persister.finish();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new DataGeneratorException("Interrupted while waiting for the entities of the data generator " + 
+				dataGenerator.getClass().getCanonicalName(), ie);
+		}
+		finally {
+			// Stop the production when the persistence fails
+			producer.cancel(true);
+		}
+	}
+
+	/**
+	 * Failure of the production of the entities
+	 */
+	private static class Failure {
+		private final Throwable cause;
+
+		public Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+}
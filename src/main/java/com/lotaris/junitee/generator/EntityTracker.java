@@ -0,0 +1,252 @@
+package com.lotaris.junitee.generator;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+
+/**
+ * The entity tracker records the entities persisted through the entity managers of a test
+ * to delete them at the end of the test with one bulk delete by entity type (by chunks of
+ * identifiers), instead of the cleanup of the data generators.
+ *
+ * The entities persisted by cascade from a recorded entity are recorded too. The entity
+ * types are deleted in the order given by the entity dependency graph of the persistence
+ * unit, so an entity is deleted before the entities it references.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class EntityTracker {
+	/**
+	 * Maximum number of identifiers by delete statement
+	 */
+	private static final int CHUNK_SIZE = 500;
+
+	/**
+	 * The entities already recorded
+	 */
+	private final Map<Object, Boolean> entities = Collections.synchronizedMap(new IdentityHashMap<Object, Boolean>());
+
+	/**
+	 * The entities in the order of their recording
+	 */
+	private final List<Object> order = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * Record a persisted entity
+	 *
+	 * @param entity The entity
+	 */
+	void record(Object entity) {
+		if (entity != null && entities.put(entity, Boolean.TRUE) == null) {
+			order.add(entity);
+		}
+	}
+
+	/**
+	 * @return True if no entity was recorded
+	 */
+	boolean isEmpty() {
+		return order.isEmpty();
+	}
+
+	/**
+	 * Group the identifiers of the recorded entities (and the entities persisted by cascade)
+	 * by entity type in the order of the first persist of each type.
+	 *
+	 * @param entityManager The entity manager
+	 * @return The identifiers by entity type
+	 */
+	Map<EntityType<?>, List<Object>> collectIdentifiers(EntityManager entityManager) {
+		Metamodel metamodel = entityManager.getMetamodel();
+		PersistenceUnitUtil util = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+
+		List<Object> all;
+		synchronized (order) {
+			all = new ArrayList<>(order);
+		}
+
+		// Follow the cascades to get the entities not persisted directly
+		Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		List<Object> expanded = new ArrayList<>();
+		for (Object entity : all) {
+			expand(entity, metamodel, seen, expanded);
+		}
+
+		Map<EntityType<?>, List<Object>> identifiers = new LinkedHashMap<>();
+		for (Object entity : expanded) {
+			EntityType<?> type = entityType(metamodel, entity.getClass());
+			Object id = util.getIdentifier(entity);
+
+			if (type != null && id != null) {
+				if (!identifiers.containsKey(type)) {
+					identifiers.put(type, new ArrayList<>());
+				}
+				identifiers.get(type).add(id);
+			}
+		}
+
+		return identifiers;
+	}
+
+	/**
+	 * Delete the recorded entities with one bulk delete by entity type and chunk of identifiers.
+	 * The entity types are deleted in the order of the entity dependency graph.
+	 *
+	 * @param entityManager The entity manager in a transaction
+	 * @return The number of entities deleted
+	 */
+	int delete(EntityManager entityManager) {
+		Map<EntityType<?>, List<Object>> identifiers = collectIdentifiers(entityManager);
+		EntityDependencyGraph graph = EntityDependencyGraph.of(entityManager.getMetamodel());
+
+		return delete(entityManager, graph, graph.sortForDeletion(identifiers.keySet()), identifiers);
+	}
+
+	/**
+	 * Delete the recorded entities in the given order of the entity types
+	 *
+	 * @param entityManager The entity manager in a transaction
+	 * @param graph The entity dependency graph of the persistence unit
+	 * @param types The entity types in the order to delete them
+	 * @param identifiers The identifiers by entity type
+	 * @return The number of entities deleted
+	 */
+	int delete(EntityManager entityManager, EntityDependencyGraph graph, List<EntityType<?>> types, Map<EntityType<?>, List<Object>> identifiers) {
+		int deleted = 0;
+
+		for (EntityType<?> type : types) {
+			List<Object> ids = identifiers.get(type);
+			if (ids == null || ids.isEmpty()) {
+				continue;
+			}
+
+			if (!type.hasSingleIdAttribute() || !graph.getJoinTables(type).isEmpty()) {
+				// Composite identifiers cannot be used in a IN clause and the bulk deletes do not clean
+				// the join tables, the entities are removed one by one
+				for (Object id : ids) {
+					Object entity = entityManager.find(type.getJavaType(), id);
+					if (entity != null) {
+						entityManager.remove(entity);
+						deleted++;
+					}
+				}
+				continue;
+			}
+
+			String idName = null;
+			for (SingularAttribute<?, ?> attribute : type.getSingularAttributes()) {
+				if (attribute.isId()) {
+					idName = attribute.getName();
+				}
+			}
+
+			String query = "DELETE FROM " + type.getName() + " e WHERE e." + idName + " IN :ids";
+
+			for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+				deleted += entityManager.createQuery(query)
+					.setParameter("ids", ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size())))
+					.executeUpdate();
+			}
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * Add an entity and the entities persisted by cascade from it
+	 *
+	 * @param entity The entity
+	 * @param metamodel The metamodel
+	 * @param seen The entities already added
+	 * @param expanded The entities added in the order they were found
+	 */
+	private static void expand(Object entity, Metamodel metamodel, Set<Object> seen, List<Object> expanded) {
+		if (entity == null || !seen.add(entity)) {
+			return;
+		}
+
+		expanded.add(entity);
+
+		EntityType<?> type = entityType(metamodel, entity.getClass());
+		if (type == null) {
+			return;
+		}
+
+		for (Attribute<?, ?> attribute : type.getAttributes()) {
+			if (!attribute.isAssociation() || !EntityDependencyGraph.cascadesPersist(attribute.getJavaMember())) {
+				continue;
+			}
+
+			Object value = readMember(attribute.getJavaMember(), entity);
+			if (value instanceof Collection) {
+				for (Object item : new ArrayList<>((Collection<?>) value)) {
+					expand(item, metamodel, seen, expanded);
+				}
+			}
+			else if (value instanceof Map) {
+				for (Object item : new ArrayList<>(((Map<?, ?>) value).values())) {
+					expand(item, metamodel, seen, expanded);
+				}
+			}
+			else {
+				expand(value, metamodel, seen, expanded);
+			}
+		}
+	}
+
+	/**
+	 * @param metamodel The metamodel
+	 * @param cl The class of an entity, or a subclass of it
+	 * @return The entity type, null if the class is not an entity
+	 */
+	private static EntityType<?> entityType(Metamodel metamodel, Class<?> cl) {
+		for (Class<?> current = cl; current != null && current != Object.class; current = current.getSuperclass()) {
+			try {
+				return metamodel.entity(current);
+			}
+			catch (IllegalArgumentException iae) {
+				// Not an entity, try the super class (the class can be a proxy of the persistence provider)
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param member The field or getter of an attribute
+	 * @param entity The entity
+	 * @return The value of the attribute, null if it cannot be read
+	 */
+	private static Object readMember(Member member, Object entity) {
+		try {
+			if (member instanceof Field) {
+				Field field = (Field) member;
+				field.setAccessible(true);
+				return field.get(entity);
+			}
+			else if (member instanceof Method) {
+				Method method = (Method) member;
+				method.setAccessible(true);
+				return method.invoke(entity);
+			}
+		}
+		catch (IllegalAccessException | InvocationTargetException e) {
+			// The value cannot be read, the associated entities are not followed
+		}
+		return null;
+	}
+}
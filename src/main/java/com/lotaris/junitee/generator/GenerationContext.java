@@ -0,0 +1,427 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.junitee.fixture.Fixture;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * The generation context keeps the state of the data generators of one test. A new
+ * context is created for each test run by the data generator manager, that allows
+ * to run several tests at the same time with the same manager.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class GenerationContext {
+	/**
+	 * Methods of the entity manager that write data
+	 */
+	private static final Set<String> WRITE_METHODS = new HashSet<>(Arrays.asList("persist", "merge", "remove", "flush"));
+
+	/**
+	 * Define if the writes done through the entity managers are tracked
+	 */
+	private final boolean trackWrites;
+
+	/**
+	 * Tracker of the entities persisted through the entity managers, null when the entities are not tracked
+	 */
+	private final EntityTracker entityTracker;
+
+	/**
+	 * The classes of the entities written through the entity managers, null when the tables are not tracked
+	 */
+	private final Set<Class<?>> touchedClasses;
+
+	/**
+	 * The classes of the entities written through each entity manager, empty when the tables are not tracked
+	 */
+	private final Map<EntityManager, Set<Class<?>>> touchedClassesByEntityManager = Collections.synchronizedMap(new IdentityHashMap<EntityManager, Set<Class<?>>>());
+
+	/**
+	 * Entity manager shared by the data generators of the test
+	 */
+	private final EntityManager entityManager;
+
+	/**
+	 * The entity managers created for the test, closed at the end of the test
+	 */
+	private final Set<EntityManager> ownedEntityManagers = Collections.newSetFromMap(new ConcurrentHashMap<EntityManager, Boolean>());
+
+	/**
+	 * Keep track of factories to be able to retrieve a data generator directly in a test
+	 */
+	private final Map<Class, IDataGenerator> dataGenerators = new ConcurrentHashMap<>();
+
+	/**
+	 * Keep track of the entity managers used by the data generators. The entity manager
+	 * is shared between all the data generators except in parallel mode.
+	 */
+	private final Map<Class, EntityManager> entityManagers = new ConcurrentHashMap<>();
+
+	/**
+	 * The order in which the data generators were run
+	 */
+	private final List<Class<? extends IDataGenerator>> generationOrder = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Determine if the test is running or not. This is required to enable/disable
+	 * the behavior of method interceptions during the test method run.
+	 */
+	private volatile boolean testRunning = false;
+
+	/**
+	 * Determine if data were written since the generation
+	 */
+	private volatile boolean dirty = false;
+
+	/**
+	 * The fixture inserted instead of running the data generators, null when the data
+	 * generators were run
+	 */
+	private volatile Fixture replayedFixture;
+
+	/**
+	 * The key of the fixture inserted instead of running the data generators
+	 */
+	private volatile String replayedFixtureKey;
+
+	/**
+	 * The highest identifiers recorded before the first write of each entity, null when they are not recorded
+	 */
+	private volatile WatermarkCleaner watermarkCleaner;
+
+	/**
+	 * The data namespace of the test, null when the test has no namespace
+	 */
+	private volatile String namespace;
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityManager Entity manager shared by the data generators of the test
+	 */
+	GenerationContext(EntityManager entityManager) {
+		this(entityManager, false, false, false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityManager Entity manager shared by the data generators of the test
+	 * @param trackWrites True to track the writes done through the entity managers
+	 * @param trackEntities True to track the entities persisted through the entity managers
+	 * @param trackTables True to track the classes of the entities written through the entity managers
+	 */
+	GenerationContext(EntityManager entityManager, boolean trackWrites, boolean trackEntities, boolean trackTables) {
+		this.trackWrites = trackWrites;
+		this.entityTracker = trackEntities ? new EntityTracker() : null;
+		this.touchedClasses = trackTables ? Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>()) : null;
+		this.entityManager = track(entityManager);
+		this.ownedEntityManagers.add(entityManager);
+	}
+
+	/**
+	 * Create an entity manager for a data generator of the test. The entity manager is tracked
+	 * like the one of the test and closed with it.
+	 *
+	 * @param entityManagerFactory The entity manager factory
+	 * @return The entity manager returned by track
+	 */
+	EntityManager createEntityManager(EntityManagerFactory entityManagerFactory) {
+		EntityManager created = entityManagerFactory.createEntityManager();
+		ownedEntityManagers.add(created);
+		return track(created);
+	}
+
+	/**
+	 * Close the entity managers created for the test. The entity managers of the shared data
+	 * generators live longer than the test and are not closed.
+	 */
+	void close() {
+		RuntimeException failure = null;
+
+		for (EntityManager owned : ownedEntityManagers) {
+			try {
+				if (owned.isOpen()) {
+					owned.close();
+				}
+			}
+			catch (RuntimeException re) {
+				if (failure == null) {
+					failure = re;
+				}
+			}
+		}
+		ownedEntityManagers.clear();
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * An entity is new when it has no identifier yet. The entities with identifiers assigned by
+	 * the application cannot be told apart from the existing ones, they are not new.
+	 *
+	 * @param entityManager The entity manager
+	 * @param entity The entity given to merge
+	 * @return True if the entity has no identifier, null or zero for a numeric identifier
+	 */
+	private static boolean isNew(EntityManager entityManager, Object entity) {
+		if (entity == null) {
+			return false;
+		}
+
+		try {
+			Object id = entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity);
+			return id == null || id instanceof Number && ((Number) id).longValue() == 0;
+		}
+		catch (IllegalArgumentException iae) {
+			return false;
+		}
+	}
+
+	/**
+	 * Track the writes, the entities persisted and the tables touched through an entity manager when
+	 * the tracking is enabled
+	 *
+	 * @param entityManager The entity manager
+	 * @return The entity manager that marks the context as dirty on writes and records the persisted
+	 * entities and the classes of the entities written, the same entity manager when the tracking is disabled
+	 */
+	EntityManager track(final EntityManager entityManager) {
+		if (!trackWrites && entityTracker == null && touchedClasses == null) {
+			return entityManager;
+		}
+
+		final Set<Class<?>> touchedByEntityManager = touchedClasses != null ? 
+			Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>()) : null;
+
+		EntityManager tracked = (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(), new Class[] { EntityManager.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (WRITE_METHODS.contains(method.getName())) {
+					markDirty();
+
+					if (touchedClasses != null && args != null && args.length > 0 && args[0] != null) {
+						touchedClasses.add(args[0].getClass());
+						touchedByEntityManager.add(args[0].getClass());
+
+						if (watermarkCleaner != null) {
+							watermarkCleaner.record(entityManager, args[0].getClass());
+						}
+					}
+				}
+
+				if (entityTracker != null && "persist".equals(method.getName())) {
+					entityTracker.record(args[0]);
+				}
+
+				// The entity saved through a merge is the managed copy returned
+				boolean mergeNew = entityTracker != null && "merge".equals(method.getName()) && isNew(entityManager, args[0]);
+
+				Object result;
+				try {
+					result = method.invoke(entityManager, args);
+				}
+				catch (InvocationTargetException ite) {
+					throw ite.getCause();
+				}
+
+				if (mergeNew) {
+					entityTracker.record(result);
+				}
+
+				return result;
+			}
+		});
+
+		if (touchedByEntityManager != null) {
+			touchedClassesByEntityManager.put(tracked, touchedByEntityManager);
+		}
+
+		return tracked;
+	}
+
+	/**
+	 * Register a data generator
+	 *
+	 * @param dataGeneratorClass The data generator class
+	 * @param dataGenerator The data generator
+	 * @param entityManager The entity manager used by the data generator
+	 */
+	void register(Class dataGeneratorClass, IDataGenerator dataGenerator, EntityManager entityManager) {
+		dataGenerators.put(dataGeneratorClass, dataGenerator);
+		entityManagers.put(dataGeneratorClass, entityManager);
+	}
+
+	/**
+	 * @param dataGeneratorClass The data generator class
+	 * @return True if the data generator is registered
+	 */
+	boolean contains(Class dataGeneratorClass) {
+		return dataGenerators.containsKey(dataGeneratorClass);
+	}
+
+	/**
+	 * @param dataGeneratorClass The data generator class
+	 * @return The data generator, null if not registered
+	 */
+	IDataGenerator getDataGenerator(Class dataGeneratorClass) {
+		return dataGenerators.get(dataGeneratorClass);
+	}
+
+	/**
+	 * @param dataGeneratorClass The data generator class
+	 * @return The entity manager of the data generator, null if not registered
+	 */
+	EntityManager getEntityManager(Class dataGeneratorClass) {
+		return entityManagers.get(dataGeneratorClass);
+	}
+
+	/**
+	 * @return The entity manager shared by the data generators of the test
+	 */
+	EntityManager getEntityManager() {
+		return entityManager;
+	}
+
+	/**
+	 * @return The shared entity manager and the entity managers of the data generators
+	 */
+	Set<EntityManager> getEntityManagers() {
+		Set<EntityManager> all = new LinkedHashSet<>();
+		all.add(entityManager);
+		all.addAll(entityManagers.values());
+		return all;
+	}
+
+	/**
+	 * @return The order in which the data generators were run
+	 */
+	List<Class<? extends IDataGenerator>> getGenerationOrder() {
+		return generationOrder;
+	}
+
+	/**
+	 * @return The tracker of the entities persisted, null when the entities are not tracked
+	 */
+	EntityTracker getEntityTracker() {
+		return entityTracker;
+	}
+
+	/**
+	 * @return The classes of the entities written, null when the tables are not tracked
+	 */
+	Set<Class<?>> getTouchedClasses() {
+		return touchedClasses;
+	}
+
+	/**
+	 * @param entityManager An entity manager returned by track
+	 * @return The classes of the entities written through the entity manager, null when the tables are not tracked
+	 */
+	Set<Class<?>> getTouchedClasses(EntityManager entityManager) {
+		return touchedClassesByEntityManager.get(entityManager);
+	}
+
+	/**
+	 * Mark the data as written since the generation
+	 */
+	void markDirty() {
+		dirty = true;
+	}
+
+	/**
+	 * @return True if data were written since the generation
+	 */
+	boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Consider the data as they were generated
+	 */
+	void resetDirty() {
+		dirty = false;
+	}
+
+	/**
+	 * @return The fixture inserted instead of running the data generators, null when the data generators were run
+	 */
+	Fixture getReplayedFixture() {
+		return replayedFixture;
+	}
+
+	/**
+	 * @return The key of the fixture inserted instead of running the data generators
+	 */
+	String getReplayedFixtureKey() {
+		return replayedFixtureKey;
+	}
+
+	/**
+	 * @param replayedFixtureKey The key of the fixture in the cache
+	 * @param replayedFixture The fixture inserted instead of running the data generators
+	 */
+	void setReplayedFixture(String replayedFixtureKey, Fixture replayedFixture) {
+		this.replayedFixtureKey = replayedFixtureKey;
+		this.replayedFixture = replayedFixture;
+	}
+
+	/**
+	 * @return The highest identifiers recorded before the first write of each entity, null when they are not recorded
+	 */
+	WatermarkCleaner getWatermarkCleaner() {
+		return watermarkCleaner;
+	}
+
+	/**
+	 * @param watermarkCleaner The highest identifiers recorded before the first write of each entity
+	 */
+	void setWatermarkCleaner(WatermarkCleaner watermarkCleaner) {
+		this.watermarkCleaner = watermarkCleaner;
+	}
+
+	/**
+	 * @return The data namespace of the test, null when the test has no namespace
+	 */
+	String getNamespace() {
+		return namespace;
+	}
+
+	/**
+	 * @param namespace The data namespace of the test
+	 */
+	void setNamespace(String namespace) {
+		this.namespace = namespace;
+	}
+
+	/**
+	 * @return True if the test is running
+	 */
+	boolean isTestRunning() {
+		return testRunning;
+	}
+
+	/**
+	 * @param testRunning Define if the test is running
+	 */
+	void setTestRunning(boolean testRunning) {
+		this.testRunning = testRunning;
+	}
+}
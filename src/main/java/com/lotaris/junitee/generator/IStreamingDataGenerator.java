@@ -0,0 +1,32 @@
+package com.lotaris.junitee.generator;
+
+import java.util.Iterator;
+
+/**
+ * Define a data generator that produces its entities instead of persisting them. The
+ * data generator manager first calls the generate method, then pulls the entities lazily
+ * and persists them by batches while the next ones are produced.
+ * 
+ * The generate method can be used to persist the data the entities depend on. The
+ * entities are produced in another thread than the one that persists them, therefore
+ * the iterator must not use the entity manager.
+ * 
+ * The entities are persisted by the engine but the cleanup stays the job of the data 
+ * generator: the cleanup method must delete the entities produced, for example with a 
+ * bulk delete on the data namespace of the test. When the data generator manager tracks
+ * the entities, the entities produced are recorded like the other persisted entities and
+ * deleted in bulk instead of the cleanup method. The tracker keeps a reference to each
+ * entity until the end of the test, the memory is no more bounded in that case.
+ * 
+ * @param <T> The type of the entities
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public interface IStreamingDataGenerator<T> extends IDataGenerator {
+	/**
+	 * Produce the entities to persist. The iterator is consumed only once.
+	 * 
+	 * @return The entities to persist
+	 */
+	Iterator<T> entities();
+}
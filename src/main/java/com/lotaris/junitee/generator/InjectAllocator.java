@@ -0,0 +1,17 @@
+package com.lotaris.junitee.generator;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to allow injection of the unique value allocator of the
+ * data generator manager into the data generators.
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@Target({ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InjectAllocator {
+}
@@ -0,0 +1,22 @@
+package com.lotaris.junitee.generator;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declare that a data generator must be run after other data generators when they
+ * are used in the same test. It is used when the data generators are run in parallel
+ * to ensure the order of the data generators that depend on each other.
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RunAfter {
+	/**
+	 * @return List of data generators to run before the annotated data generator
+	 */
+	Class<? extends IDataGenerator>[] value();
+}
@@ -0,0 +1,24 @@
+package com.lotaris.junitee.generator;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation is used to configure data generators shared between tests. A shared
+ * data generator is generated by the first test, test class or suite that needs it and
+ * is kept for the next ones. The shared data generators no more used are cleaned up at
+ * the end of a suite of test classes run with the data generator manager as a class rule,
+ * by DataGeneratorManager.releaseSharedDataGenerators or at the shutdown of the JVM.
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SharedDataGenerator {
+	/**
+	 * @return List of data generators to share
+	 */
+	Class<? extends IDataGenerator>[] value();
+}
@@ -0,0 +1,192 @@
+package com.lotaris.junitee.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The registry keeps the shared data generators of the JVM with the number of tests,
+ * test classes or suites using them. A shared data generator is generated when it is
+ * acquired for the first time. Once released by its last user, it is kept for the next
+ * users until the idle shared data generators are cleaned up, at the end of the suite
+ * or at the shutdown of the JVM.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class SharedDataGeneratorRegistry {
+	private static final Logger LOG = LoggerFactory.getLogger(SharedDataGeneratorRegistry.class);
+
+	/**
+	 * The shared data generators by class
+	 */
+	private final Map<Class, Entry> entries = new LinkedHashMap<>();
+
+	/**
+	 * Acquire a shared data generator. The data generator is created and generated
+	 * when it is not already shared.
+	 *
+	 * @param dataGeneratorClass The data generator class
+	 * @param factory The factory to create the data generator when it is not already shared
+	 * @return The shared data generator
+	 * @throws DataGeneratorException Any error during the creation or the generation of the data generator
+	 */
+	synchronized Entry acquire(Class<? extends IDataGenerator> dataGeneratorClass, EntryFactory factory) throws DataGeneratorException {
+		Entry entry = entries.get(dataGeneratorClass);
+
+		if (entry == null) {
+			entry = factory.create(dataGeneratorClass);
+
+			EntityManager entityManager = entry.getEntityManager();
+			try {
+				entityManager.getTransaction().begin();
+				entry.getDataGenerator().generate();
+				entityManager.getTransaction().commit();
+			}
+			catch (Exception e) {
+				LOG.error("Unkown error", e);
+				if (entityManager.getTransaction().isActive()) {
+					entityManager.getTransaction().rollback();
+				}
+				entityManager.clear();
+				if (entityManager.isOpen()) {
+					entityManager.close();
+				}
+				throw new DataGeneratorException("An unexpected error occured during the generation of the shared data generator " +
+					dataGeneratorClass.getCanonicalName(), e);
+			}
+			entityManager.clear();
+
+			entries.put(dataGeneratorClass, entry);
+		}
+
+		entry.references++;
+		return entry;
+	}
+
+	/**
+	 * Release a shared data generator. The data generator is kept when it is released
+	 * by its last user, it is cleaned up with the other idle data generators by cleanup.
+	 *
+	 * @param dataGeneratorClass The data generator class
+	 */
+	synchronized void release(Class<? extends IDataGenerator> dataGeneratorClass) {
+		Entry entry = entries.get(dataGeneratorClass);
+
+		if (entry != null && entry.references > 0) {
+			entry.references--;
+		}
+	}
+
+	/**
+	 * Cleanup the shared data generators no more used in the reverse order of their generation 
+	 * and close their entity managers. The shared data generators still used are kept.
+	 *
+	 * @throws DataGeneratorException The first error during the cleanup of the data generators
+	 */
+	synchronized void cleanup() throws DataGeneratorException {
+		List<Class> dataGeneratorClasses = new ArrayList<>(entries.keySet());
+		DataGeneratorException failure = null;
+
+		for (int i = dataGeneratorClasses.size() - 1; i >= 0; i--) {
+			Class dataGeneratorClass = dataGeneratorClasses.get(i);
+			Entry entry = entries.get(dataGeneratorClass);
+
+			if (entry.references > 0) {
+				LOG.warn("The shared data generator {} is still used, it is not cleaned up.", dataGeneratorClass.getCanonicalName());
+				continue;
+			}
+
+			entries.remove(dataGeneratorClass);
+
+			try {
+				cleanup(dataGeneratorClass, entry);
+			}
+			catch (DataGeneratorException dge) {
+				if (failure == null) {
+					failure = dge;
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Cleanup a shared data generator and close its entity manager
+	 *
+	 * @param dataGeneratorClass The data generator class
+	 * @param entry The shared data generator
+	 * @throws DataGeneratorException Any error during the cleanup
+	 */
+	private void cleanup(Class dataGeneratorClass, Entry entry) throws DataGeneratorException {
+		EntityManager entityManager = entry.getEntityManager();
+		try {
+			entityManager.getTransaction().begin();
+			entry.getDataGenerator().cleanup();
+			entityManager.getTransaction().commit();
+		}
+		catch (Exception e) {
+			LOG.error("Unknow error", e);
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().rollback();
+			}
+			throw new DataGeneratorException("An unexpected error occured during the cleanup of the shared data generator " +
+				dataGeneratorClass.getCanonicalName(), e);
+		}
+		finally {
+			entityManager.clear();
+			if (entityManager.isOpen()) {
+				entityManager.close();
+			}
+		}
+	}
+
+	/**
+	 * @param dataGeneratorClass The data generator class
+	 * @return The number of users of the shared data generator
+	 */
+	synchronized int getReferences(Class<? extends IDataGenerator> dataGeneratorClass) {
+		Entry entry = entries.get(dataGeneratorClass);
+		return entry != null ? entry.references : 0;
+	}
+
+	/**
+	 * A shared data generator with its entity manager
+	 */
+	static class Entry {
+		private final IDataGenerator dataGenerator;
+		private final EntityManager entityManager;
+		private int references = 0;
+
+		public Entry(IDataGenerator dataGenerator, EntityManager entityManager) {
+			this.dataGenerator = dataGenerator;
+			this.entityManager = entityManager;
+		}
+
+		public IDataGenerator getDataGenerator() {
+			return dataGenerator;
+		}
+
+		public EntityManager getEntityManager() {
+			return entityManager;
+		}
+	}
+
+	/**
+	 * Factory to create the shared data generators
+	 */
+	interface EntryFactory {
+		/**
+		 * @param dataGeneratorClass The data generator class
+		 * @return The data generator ready to generate with its own entity manager
+		 * @throws DataGeneratorException Any error during the creation
+		 */
+		Entry create(Class<? extends IDataGenerator> dataGeneratorClass) throws DataGeneratorException;
+	}
+}
@@ -0,0 +1,344 @@
+package com.lotaris.junitee.generator;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The synthetic data is a seeded stream of realistic values for the data generators:
+ * names, emails, addresses, amounts and so on. The values are picked from pools built
+ * once for the JVM and the strings are built in a buffer reused by the stream, so that
+ * millions of values can be produced cheaply.
+ *
+ * The stream is driven by a SplitMix64 generator. The same seed always produces the same
+ * values, which makes the data generated reproducible. A stream can be split into an
+ * independent stream for each worker that generates data at the same time. A stream is
+ * not thread safe, it must be used by one worker at a time.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public final class SyntheticData {
+	/**
+	 * The odd constant closest to 2^64 / phi, the default increment of the generator
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private static final String[] FIRST_NAMES = {
+		"Alice", "Bruno", "Chloe", "David", "Emma", "Felix", "Grace", "Hugo", "Iris", "Jules",
+		"Karin", "Louis", "Marie", "Nathan", "Olivia", "Paul", "Quentin", "Rose", "Simon", "Tina",
+		"Ulrich", "Vera", "William", "Xenia", "Yann", "Zoe", "Anna", "Marc", "Laura", "Pierre",
+		"Sofia", "Thomas"
+	};
+
+	private static final String[] LAST_NAMES = {
+		"Muller", "Martin", "Bernard", "Dubois", "Meier", "Schmid", "Keller", "Weber", "Huber", "Roux",
+		"Fontaine", "Girard", "Bonvin", "Favre", "Rochat", "Baumann", "Fischer", "Brunner", "Gerber", "Moser",
+		"Perrin", "Blanc", "Chevalier", "Morel", "Lambert", "Rossi", "Ferrari", "Smith", "Taylor", "Brown",
+		"Wilson", "Clark"
+	};
+
+	private static final String[] CITIES = {
+		"Lausanne", "Geneva", "Zurich", "Bern", "Basel", "Lugano", "Neuchatel", "Fribourg", "Sion", "Lucerne",
+		"Yverdon", "Montreux", "Vevey", "Nyon", "Morges", "Winterthur"
+	};
+
+	private static final String[] STREETS = {
+		"Main Street", "Station Road", "Lake Avenue", "Church Street", "Mill Lane", "High Street", "Park Road", "Bridge Street",
+		"Market Square", "Garden Way", "Hill Road", "School Lane", "River Walk", "Forest Road", "Castle Street", "Vineyard Path"
+	};
+
+	private static final String[] COMPANIES = {
+		"Acme", "Globex", "Initech", "Umbrella", "Stark", "Wayne", "Hooli", "Vandelay",
+		"Wonka", "Cyberdyne", "Soylent", "Tyrell", "Aperture", "Gringotts", "Oscorp", "Massive Dynamic"
+	};
+
+	private static final String[] DOMAINS = {
+		"example.com", "example.org", "example.net", "test.example.com"
+	};
+
+	private static final String[] LOWER_FIRST_NAMES = lowerCase(FIRST_NAMES);
+	private static final String[] LOWER_LAST_NAMES = lowerCase(LAST_NAMES);
+
+	/**
+	 * The state of the generator
+	 */
+	private long seed;
+
+	/**
+	 * The increment of the state of the generator, always odd
+	 */
+	private final long gamma;
+
+	/**
+	 * Buffer reused to build the strings
+	 */
+	private final StringBuilder buffer = new StringBuilder(64);
+
+	/**
+	 * Constructor
+	 *
+	 * @param seed The seed of the stream
+	 */
+	public SyntheticData(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Create the stream of a named worker, independent from the streams of the other names
+	 * with the same seed. The stream only depends on the seed and the name.
+	 *
+	 * @param seed The seed of the streams
+	 * @param name The name of the worker
+	 */
+	public SyntheticData(long seed, String name) {
+		this(mix64(seed ^ mix64(name.hashCode())), mixGamma(seed + GOLDEN_GAMMA * name.hashCode()));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param seed The state of the generator
+	 * @param gamma The increment of the state of the generator
+	 */
+	private SyntheticData(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Split the stream into a new stream for another worker. The values of the new stream
+	 * are independent from the values of this stream. The splits of a stream are the same
+	 * for a given seed.
+	 *
+	 * @return The new stream
+	 */
+	public SyntheticData split() {
+		return new SyntheticData(nextLong(), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * @return A random long
+	 */
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * @param bound The upper bound (excluded), must be positive
+	 * @return A random int between zero (included) and the bound (excluded)
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("The bound must be positive.");
+		}
+
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * @param min The lower bound (included)
+	 * @param max The upper bound (included)
+	 * @return A random long between the bounds
+	 */
+	public long nextLong(long min, long max) {
+		if (min > max) {
+			throw new IllegalArgumentException("The lower bound cannot be greater than the upper bound.");
+		}
+
+		long range = max - min + 1;
+
+		// The range overflows when the bounds cover more than half of the longs
+		if (range <= 0) {
+			long value;
+			do {
+				value = nextLong();
+			}
+			while (value < min || value > max);
+			return value;
+		}
+
+		return min + (nextLong() >>> 1) % range;
+	}
+
+	/**
+	 * @return A random double between zero (included) and one (excluded)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * @return A random boolean
+	 */
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	/**
+	 * @param <T> The type of the values
+	 * @param pool The values to pick from
+	 * @return A random value of the pool
+	 */
+	public <T> T pick(T[] pool) {
+		return pool[nextInt(pool.length)];
+	}
+
+	/**
+	 * @param <T> The type of the values
+	 * @param pool The values to pick from
+	 * @return A random value of the pool
+	 */
+	public <T> T pick(List<T> pool) {
+		return pool.get(nextInt(pool.size()));
+	}
+
+	/**
+	 * @return A first name
+	 */
+	public String firstName() {
+		return pick(FIRST_NAMES);
+	}
+
+	/**
+	 * @return A last name
+	 */
+	public String lastName() {
+		return pick(LAST_NAMES);
+	}
+
+	/**
+	 * @return A first name followed by a last name
+	 */
+	public String fullName() {
+		buffer.setLength(0);
+		return buffer.append(firstName()).append(' ').append(lastName()).toString();
+	}
+
+	/**
+	 * @return An email address made of a first name, a last name and a number
+	 */
+	public String email() {
+		buffer.setLength(0);
+		return buffer.append(pick(LOWER_FIRST_NAMES)).append('.').append(pick(LOWER_LAST_NAMES)).append(nextInt(1000))
+			.append('@').append(pick(DOMAINS)).toString();
+	}
+
+	/**
+	 * @return A company name
+	 */
+	public String company() {
+		return pick(COMPANIES);
+	}
+
+	/**
+	 * @return A city
+	 */
+	public String city() {
+		return pick(CITIES);
+	}
+
+	/**
+	 * @return A street address made of a number and a street
+	 */
+	public String streetAddress() {
+		buffer.setLength(0);
+		return buffer.append(1 + nextInt(200)).append(' ').append(pick(STREETS)).toString();
+	}
+
+	/**
+	 * @return A postal code of four digits
+	 */
+	public String postalCode() {
+		return digits(4);
+	}
+
+	/**
+	 * @return A phone number in international format
+	 */
+	public String phoneNumber() {
+		buffer.setLength(0);
+		buffer.append("+41");
+		appendDigits(9);
+		return buffer.toString();
+	}
+
+	/**
+	 * @param length The number of digits
+	 * @return A string of random digits, the first one is not zero
+	 */
+	public String digits(int length) {
+		buffer.setLength(0);
+		appendDigits(length);
+		return buffer.toString();
+	}
+
+	/**
+	 * @param minCents The lower bound in cents (included)
+	 * @param maxCents The upper bound in cents (included)
+	 * @return An amount between the bounds in cents
+	 */
+	public long amountInCents(long minCents, long maxCents) {
+		return nextLong(minCents, maxCents);
+	}
+
+	/**
+	 * @param minCents The lower bound in cents (included)
+	 * @param maxCents The upper bound in cents (included)
+	 * @return An amount between the bounds with two decimals
+	 */
+	public BigDecimal amount(long minCents, long maxCents) {
+		return BigDecimal.valueOf(amountInCents(minCents, maxCents), 2);
+	}
+
+	/**
+	 * Append random digits to the buffer
+	 *
+	 * @param length The number of digits, the first one is not zero
+	 */
+	private void appendDigits(int length) {
+		for (int i = 0; i < length; i++) {
+			buffer.append((char) (i == 0 ? '1' + nextInt(9) : '0' + nextInt(10)));
+		}
+	}
+
+	/**
+	 * @return The next state of the generator
+	 */
+	private long nextSeed() {
+		return seed += gamma;
+	}
+
+	/**
+	 * The finalizer of MurmurHash3 with the constants of the variant 13 of David Stafford
+	 *
+	 * @param z The value to mix
+	 * @return The value mixed
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param z The value to mix
+	 * @return An odd increment with enough bit transitions to produce a good stream
+	 */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+	/**
+	 * @param values The values
+	 * @return The values in lower case
+	 */
+	private static String[] lowerCase(String[] values) {
+		String[] lower = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			lower[i] = values[i].toLowerCase();
+		}
+		return lower;
+	}
+}
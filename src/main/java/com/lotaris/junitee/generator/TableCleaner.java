@@ -0,0 +1,155 @@
+package com.lotaris.junitee.generator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.Inheritance;
+import javax.persistence.SecondaryTable;
+import javax.persistence.SecondaryTables;
+import javax.persistence.Table;
+import javax.persistence.metamodel.EntityType;
+
+/**
+ * The table cleaner resets the tables of the entities touched during a test, with a
+ * truncate or a delete of all the rows of each table. The join and collection tables
+ * owned by the entities are reset first, then the tables of the entities in the order
+ * of the entity dependency graph.
+ *
+ * The tables are reset entirely, the cleaner must only be used on a database dedicated
+ * to the tests.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class TableCleaner {
+	/**
+	 * The entity manager in a transaction
+	 */
+	private final EntityManager entityManager;
+
+	/**
+	 * The entity dependency graph of the persistence unit
+	 */
+	private final EntityDependencyGraph graph;
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityManager The entity manager in a transaction
+	 */
+	TableCleaner(EntityManager entityManager) {
+		this.entityManager = entityManager;
+		this.graph = EntityDependencyGraph.of(entityManager.getMetamodel());
+	}
+
+	/**
+	 * Get the entity types touched through the classes of the entities written during a test.
+	 * The entity types persisted by cascade are touched too.
+	 *
+	 * @param classes The classes of the entities written
+	 * @return The entity types touched in the order to delete them
+	 */
+	List<EntityType<?>> touchedTypes(Collection<Class<?>> classes) {
+		Set<EntityType<?>> touched = new LinkedHashSet<>();
+
+		for (Class<?> cl : classes) {
+			EntityType<?> type = graph.typeOf(cl);
+			if (type != null) {
+				touch(type, touched);
+			}
+		}
+
+		return graph.sortForDeletion(touched);
+	}
+
+	/**
+	 * Truncate the tables of the entity types
+	 *
+	 * @param types The entity types in the order to delete them
+	 * @return The number of tables truncated
+	 * @throws DataGeneratorException When the table of an entity type cannot be determined
+	 */
+	int truncate(List<EntityType<?>> types) throws DataGeneratorException {
+		List<String> tables = new ArrayList<>(joinTables(types));
+
+		for (EntityType<?> type : types) {
+			tables.add(tableName(type));
+		}
+
+		for (String table : tables) {
+			entityManager.createNativeQuery("TRUNCATE TABLE " + table).executeUpdate();
+		}
+
+		return tables.size();
+	}
+
+	/**
+	 * Delete all the rows of the tables of the entity types
+	 *
+	 * @param types The entity types in the order to delete them
+	 * @return The number of rows deleted
+	 */
+	int delete(List<EntityType<?>> types) {
+		int deleted = 0;
+
+		for (String table : joinTables(types)) {
+			deleted += entityManager.createNativeQuery("DELETE FROM " + table).executeUpdate();
+		}
+
+		// The persistence provider takes care of the tables of the inheritance
+		for (EntityType<?> type : types) {
+			deleted += entityManager.createQuery("DELETE FROM " + type.getName() + " e").executeUpdate();
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * @param types The entity types
+	 * @return The join and collection tables owned by the entity types
+	 */
+	private Set<String> joinTables(List<EntityType<?>> types) {
+		Set<String> tables = new LinkedHashSet<>();
+		for (EntityType<?> type : types) {
+			tables.addAll(graph.getJoinTables(type));
+		}
+		return tables;
+	}
+
+	/**
+	 * Add an entity type and the entity types persisted by cascade from it
+	 *
+	 * @param type The entity type
+	 * @param touched The entity types already touched
+	 */
+	private void touch(EntityType<?> type, Set<EntityType<?>> touched) {
+		if (touched.add(type)) {
+			for (EntityType<?> cascaded : graph.getCascades(type)) {
+				touch(cascaded, touched);
+			}
+		}
+	}
+
+	/**
+	 * @param type The entity type
+	 * @return The table of the entity type
+	 * @throws DataGeneratorException When the entity is stored in several tables or in a table shared with other entities
+	 */
+	private static String tableName(EntityType<?> type) throws DataGeneratorException {
+		Class<?> cl = type.getJavaType();
+
+		if (type.getSupertype() instanceof EntityType || cl.isAnnotationPresent(Inheritance.class) ||
+			cl.isAnnotationPresent(SecondaryTable.class) || cl.isAnnotationPresent(SecondaryTables.class)) {
+			throw new DataGeneratorException("The entity " + type.getName() + " is not stored in a table of its own, its table cannot be truncated.");
+		}
+
+		Table table = cl.getAnnotation(Table.class);
+		if (table == null || table.name().isEmpty()) {
+			return type.getName();
+		}
+
+		return table.schema().isEmpty() ? table.name() : table.schema() + "." + table.name();
+	}
+}
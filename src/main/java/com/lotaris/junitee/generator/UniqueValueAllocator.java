@@ -0,0 +1,196 @@
+package com.lotaris.junitee.generator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The unique value allocator hands out compact unique values to the data generators, to
+ * build names, emails or external identifiers without timestamps or random UUIDs. The
+ * values are unique by namespace, the namespace of the test (see DataNamespace) is used
+ * when no namespace is given.
+ * 
+ * Each thread reserves a range of values of a namespace at once and hands out the values
+ * of its range without any synchronization. Only the reservation of a new range touches 
+ * the shared counter of the namespace, with an atomic increment. The values handed out by
+ * a thread are increasing.
+ * 
+ * The state of a namespace is kept until the namespace is released at the end of its test
+ * (see release), the values of a released namespace start again at the seed.
+ * 
+ * The values of a namespace start at the seed of the allocator. When the values of a 
+ * namespace are taken by a single thread, they are the same for a given seed from one run
+ * to another.
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class UniqueValueAllocator {
+	/**
+	 * Default number of values reserved at once by a thread
+	 */
+	public static final int DEFAULT_RANGE_SIZE = 64;
+	
+	/**
+	 * Separator between the namespace and the value of the strings, it never appears in a value in base 36
+	 */
+	public static final char SEPARATOR = '-';
+	
+	/**
+	 * The first value of each namespace
+	 */
+	private final long seed;
+	
+	/**
+	 * Number of values reserved at once by a thread
+	 */
+	private final int rangeSize;
+	
+	/**
+	 * The state of each namespace
+	 */
+	private final ConcurrentMap<String, NamespaceState> namespaces = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param seed The first value of each namespace
+	 */
+	public UniqueValueAllocator(long seed) {
+		this(seed, DEFAULT_RANGE_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param seed The first value of each namespace
+	 * @param rangeSize Number of values reserved at once by a thread
+	 */
+	public UniqueValueAllocator(long seed, int rangeSize) {
+		if (seed < 0) {
+			throw new IllegalArgumentException("The seed cannot be negative.");
+		}
+		
+		if (rangeSize < 1) {
+			throw new IllegalArgumentException("The range size should be at least one.");
+		}
+		
+		this.seed = seed;
+		this.rangeSize = rangeSize;
+	}
+	
+	/**
+	 * @return The next unique value of the namespace of the test
+	 */
+	public long nextLong() {
+		return nextLong(currentNamespace());
+	}
+	
+	/**
+	 * @param namespace The namespace
+	 * @return The next unique value of the namespace
+	 */
+	public long nextLong(String namespace) {
+		NamespaceState state = state(namespace);
+		long[] range = state.ranges.get();
+		
+		if (range == null || range[0] == range[1]) {
+			long start = state.counter.getAndAdd(rangeSize);
+			range = new long[] { start, start + rangeSize };
+			state.ranges.set(range);
+		}
+		
+		return range[0]++;
+	}
+	
+	/**
+	 * @return The next unique value of the namespace of the test, prefixed by the namespace and the separator
+	 */
+	public String nextString() {
+		return nextString(currentNamespace());
+	}
+	
+	/**
+	 * The value is written in base 36 after the namespace and a separator. The strings of
+	 * different namespaces do not collide as long as the namespaces do not contain the
+	 * separator, which is the case of the namespaces of the tests.
+	 * 
+	 * @param namespace The namespace
+	 * @return The next unique value of the namespace, prefixed by the namespace and the separator
+	 */
+	public String nextString(String namespace) {
+		return namespace + SEPARATOR + Long.toString(nextLong(namespace), Character.MAX_RADIX);
+	}
+	
+	/**
+	 * @return The first value of each namespace
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Forget the counter and the ranges of a namespace. The ranges reserved by the other
+	 * threads are dropped with the state of the namespace, without touching these threads.
+	 * 
+	 * The namespace must not be used anymore: its values start again at the seed.
+	 * 
+	 * @param namespace The namespace
+	 */
+	void release(String namespace) {
+		NamespaceState state = namespaces.remove(namespace);
+		
+		if (state != null) {
+			state.ranges.remove();
+		}
+	}
+	
+	/**
+	 * @return The number of namespaces with a state
+	 */
+	int countNamespaces() {
+		return namespaces.size();
+	}
+	
+	/**
+	 * Retrieve the state of a namespace, created on the first use
+	 * 
+	 * @param namespace The namespace
+	 * @return The state of the namespace
+	 */
+	private NamespaceState state(String namespace) {
+		NamespaceState state = namespaces.get(namespace);
+		
+		if (state == null) {
+			NamespaceState newState = new NamespaceState(seed);
+			state = namespaces.putIfAbsent(namespace, newState);
+			if (state == null) {
+				state = newState;
+			}
+		}
+		
+		return state;
+	}
+	
+	/**
+	 * @return The namespace of the test, empty when there is none
+	 */
+	private static String currentNamespace() {
+		String namespace = DataNamespace.current();
+		return namespace != null ? namespace : "";
+	}
+	
+	/**
+	 * The state of a namespace: the next value to reserve and the range reserved by each
+	 * thread. A range is the next value to hand out and the end of the range (excluded).
+	 * The ranges of a namespace are in a thread local of its own, the threads lose their 
+	 * ranges when the state is released.
+	 */
+	private static class NamespaceState {
+		private final AtomicLong counter;
+		private final ThreadLocal<long[]> ranges = new ThreadLocal<>();
+
+		public NamespaceState(long seed) {
+			this.counter = new AtomicLong(seed);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.lotaris.junitee.generator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The watermark cleaner records the highest identifier of each entity before the first
+ * write of the entity during the test and deletes the entities with a higher identifier 
+ * after the test, with one range delete by entity. The range deletes use the index of the
+ * primary key, their cost does not depend on the number of entities generated. Only the
+ * entities written (and the ones persisted by cascade) get a watermark.
+ *
+ * Only the entities with a single numeric identifier allocated in increasing order (like
+ * sequences and identity columns) are supported. An entity without a watermark cannot be
+ * cleaned up by the watermark cleaner, like an entity without rows when its watermark was
+ * recorded: the rows created by the test cannot be told apart from the rows created by the
+ * other tests in the meantime.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+class WatermarkCleaner {
+	private static final Logger LOG = LoggerFactory.getLogger(WatermarkCleaner.class);
+
+	/**
+	 * The numeric types of the identifiers supported
+	 */
+	private static final Set<Class<?>> NUMERIC_TYPES = new HashSet<Class<?>>(Arrays.asList(
+		Long.class, Long.TYPE, Integer.class, Integer.TYPE, Short.class, Short.TYPE, BigInteger.class, BigDecimal.class
+	));
+
+	/**
+	 * The classes of the entities already written
+	 */
+	private final Set<Class<?>> writtenClasses = new HashSet<>();
+
+	/**
+	 * The highest identifier of each entity with a watermark, null when there was no entity
+	 */
+	private final Map<EntityType<?>, Object> watermarks = new HashMap<>();
+
+	/**
+	 * Record the highest identifier of the entities touched by the write of an entity class
+	 * that have no watermark yet. Nothing is done when the entity class was already written.
+	 *
+	 * @param entityManager The entity manager
+	 * @param entityClass The class of the entity about to be written
+	 */
+	synchronized void record(EntityManager entityManager, Class<?> entityClass) {
+		if (!writtenClasses.add(entityClass)) {
+			return;
+		}
+
+		for (EntityType<?> type : new TableCleaner(entityManager).touchedTypes(Collections.<Class<?>>singleton(entityClass))) {
+			String idName = numericIdentifier(type);
+
+			if (idName != null && !watermarks.containsKey(type)) {
+				try {
+					watermarks.put(type, entityManager.createQuery("SELECT MAX(e." + idName + ") FROM " + type.getName() + " e").getSingleResult());
+				}
+				catch (RuntimeException re) {
+					LOG.warn("Unable to record the highest identifier of the entity " + type.getName() + ".", re);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param type The entity type
+	 * @return True if the highest identifier of the entity type was recorded
+	 */
+	synchronized boolean hasWatermark(EntityType<?> type) {
+		return watermarks.get(type) != null;
+	}
+
+	/**
+	 * Delete the entities created above the watermarks
+	 *
+	 * @param entityManager The entity manager in a transaction
+	 * @param types The entity types in the order to delete them
+	 * @return The number of entities deleted
+	 * @throws DataGeneratorException When an entity type has no watermark
+	 */
+	synchronized int delete(EntityManager entityManager, List<EntityType<?>> types) throws DataGeneratorException {
+		for (EntityType<?> type : types) {
+			if (numericIdentifier(type) == null) {
+				throw new DataGeneratorException("The entity " + type.getName() + " has no numeric identifier, it cannot be cleaned up by watermark.");
+			}
+			else if (!watermarks.containsKey(type)) {
+				throw new DataGeneratorException("The highest identifier of the entity " + type.getName() + " was not recorded, it cannot be cleaned up by watermark.");
+			}
+			else if (watermarks.get(type) == null) {
+				throw new DataGeneratorException("The entity " + type.getName() + " had no rows when its highest identifier was recorded, it cannot be cleaned up by watermark.");
+			}
+		}
+
+		EntityDependencyGraph graph = EntityDependencyGraph.of(entityManager.getMetamodel());
+		int deleted = 0;
+
+		for (EntityType<?> type : types) {
+			String where = " WHERE e." + numericIdentifier(type) + " > :watermark";
+
+			if (graph.getJoinTables(type).isEmpty()) {
+				deleted += entityManager.createQuery("DELETE FROM " + type.getName() + " e" + where)
+					.setParameter("watermark", watermarks.get(type)).executeUpdate();
+			}
+			else {
+				// The bulk deletes do not clean the join tables, the entities are removed one by one
+				Query query = entityManager.createQuery("SELECT e FROM " + type.getName() + " e" + where)
+					.setParameter("watermark", watermarks.get(type));
+				for (Object entity : query.getResultList()) {
+					entityManager.remove(entity);
+					deleted++;
+				}
+			}
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * @param type The entity type
+	 * @return The name of the single numeric identifier of the entity type, null if there is none
+	 */
+	private static String numericIdentifier(EntityType<?> type) {
+		if (!type.hasSingleIdAttribute()) {
+			return null;
+		}
+
+		for (SingularAttribute<?, ?> attribute : type.getSingularAttributes()) {
+			if (attribute.isId() && NUMERIC_TYPES.contains(attribute.getJavaType())) {
+				return attribute.getName();
+			}
+		}
+
+		return null;
+	}
+}
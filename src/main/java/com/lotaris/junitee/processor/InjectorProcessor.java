@@ -0,0 +1,461 @@
+package com.lotaris.junitee.processor;
+
+import com.lotaris.junitee.dependency.GeneratedInjector;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor that generates a {@link GeneratedInjector} for each class that has
+ * fields annotated with @EJB, @PersistenceContext, @InjectDataGenerator, @InjectAllocator or @UseMock, or methods
+ * annotated with @PostConstruct. The generated injectors give direct access to the non-private
+ * fields and methods to avoid the reflection during the injections.
+ *
+ * The processor also reports the problems that would be detected at runtime in the classes
+ * instantiated by junitee (the data generators, the finders and what is injected into them):
+ * <ul>
+ *	<li>@EJB and @InjectDataGenerator fields without implementation class following the naming convention (warning)</li>
+ *	<li>@EJB and @InjectDataGenerator fields with an implementation class that cannot be instantiated (error)</li>
+ *	<li>@InjectDataGenerator fields that build a loop between data generators (error)</li>
+ * </ul>
+ *
+ * The processor is not registered as a service, it runs only when it is enabled explicitly
+ * with the -processor option of the compiler (or the annotationProcessors configuration of
+ * the maven compiler plugin).
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class InjectorProcessor extends AbstractProcessor {
+	private static final String EJB = "javax.ejb.EJB";
+	private static final String PERSISTENCE_CONTEXT = "javax.persistence.PersistenceContext";
+	private static final String INJECT_DATA_GENERATOR = "com.lotaris.junitee.generator.InjectDataGenerator";
+	private static final String INJECT_ALLOCATOR = "com.lotaris.junitee.generator.InjectAllocator";
+	private static final String USE_MOCK = "com.lotaris.junitee.dependency.UseMock";
+	private static final String POST_CONSTRUCT = "javax.annotation.PostConstruct";
+
+	/**
+	 * Types of the classes instantiated by junitee
+	 */
+	private static final List<String> MANAGED_TYPES = Arrays.asList(
+		"com.lotaris.junitee.generator.IDataGenerator", "com.lotaris.junitee.finder.IFinder");
+
+	/**
+	 * Field annotations managed by the injection
+	 */
+	private static final List<String> FIELD_ANNOTATIONS = Arrays.asList(EJB, PERSISTENCE_CONTEXT, INJECT_DATA_GENERATOR, INJECT_ALLOCATOR, USE_MOCK);
+
+	/**
+	 * Classes already validated
+	 */
+	private final Set<TypeElement> validated = new HashSet<>();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		Set<String> annotationTypes = new HashSet<>(FIELD_ANNOTATIONS);
+		annotationTypes.add(POST_CONSTRUCT);
+		return annotationTypes;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		// Retrieve the classes that have annotated members
+		Set<TypeElement> types = new LinkedHashSet<>();
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getEnclosingElement() instanceof TypeElement) {
+					types.add((TypeElement) element.getEnclosingElement());
+				}
+			}
+		}
+
+		for (TypeElement type : types) {
+			if (isInstantiatedByJunitee(type)) {
+				validate(type);
+			}
+
+			if (isAccessibleFromPackage(type)) {
+				generateInjector(type);
+			}
+		}
+
+		// Other processors can also process these annotations
+		return false;
+	}
+
+	/**
+	 * Validate the annotated fields of a class instantiated by junitee and the classes
+	 * of the fields that junitee instantiates in turn
+	 *
+	 * @param type The class to validate
+	 */
+	private void validate(TypeElement type) {
+		if (!validated.add(type)) {
+			return;
+		}
+
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			boolean dataGenerator = hasAnnotation(field, INJECT_DATA_GENERATOR);
+
+			if (hasAnnotation(field, EJB) || dataGenerator) {
+				TypeElement implementation = findImplementation(field.asType());
+
+				// The naming convention may not be followed when the field is injected by other means
+				if (implementation == null && field.asType().getKind() == TypeKind.DECLARED) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, 
+						"Unable to find a concrete class for interface " + field.asType() + ".", field);
+					continue;
+				}
+
+				String error = checkImplementation(field.asType());
+
+				if (error != null) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, error, field);
+					continue;
+				}
+				
+				if (dataGenerator) {
+					List<TypeElement> loop = findDataGeneratorLoop(type, implementation, new ArrayList<TypeElement>());
+
+					if (loop != null) {
+						StringBuilder sb = new StringBuilder(type.getSimpleName());
+						for (TypeElement loopType : loop) {
+							sb.append(" -> ").append(loopType.getSimpleName());
+						}
+
+						processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The data generator " + field.getSimpleName()
+							+ " creates a loop in your data generator configuration that is not allowed: " + sb + ".", field);
+					}
+				}
+
+				validate(implementation);
+			}
+		}
+	}
+
+	/**
+	 * A class is instantiated by junitee when it is a data generator or a finder, or when
+	 * data generators are injected into it.
+	 *
+	 * @param type The class
+	 * @return True if the injections of the class are done by junitee
+	 */
+	private boolean isInstantiatedByJunitee(TypeElement type) {
+		for (String managedType : MANAGED_TYPES) {
+			TypeElement managedElement = processingEnv.getElementUtils().getTypeElement(managedType);
+
+			if (managedElement != null && processingEnv.getTypeUtils().isAssignable(
+				processingEnv.getTypeUtils().erasure(type.asType()), processingEnv.getTypeUtils().erasure(managedElement.asType()))) {
+				return true;
+			}
+		}
+
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (hasAnnotation(field, INJECT_DATA_GENERATOR)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Look for a path of @InjectDataGenerator fields that goes back to the original class
+	 *
+	 * @param origin The class where the search started
+	 * @param current The class reached by the path
+	 * @param path The classes of the path so far
+	 * @return The classes of the loop, null if there is no loop
+	 */
+	private List<TypeElement> findDataGeneratorLoop(TypeElement origin, TypeElement current, List<TypeElement> path) {
+		if (current == null || path.contains(current)) {
+			return null;
+		}
+
+		path.add(current);
+
+		if (current.equals(origin)) {
+			return path;
+		}
+
+		for (TypeElement type = current; type != null; type = superclassOf(type)) {
+			for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+				if (hasAnnotation(field, INJECT_DATA_GENERATOR)) {
+					List<TypeElement> loop = findDataGeneratorLoop(origin, findImplementation(field.asType()), path);
+
+					if (loop != null) {
+						return loop;
+					}
+				}
+			}
+		}
+
+		path.remove(path.size() - 1);
+		return null;
+	}
+
+	/**
+	 * Check that the implementation class of the type of a field can be instantiated with
+	 * the same rules than the runtime resolution done by the {@code InflectorHelper}
+	 *
+	 * @param fieldType The type of the field
+	 * @return The error message, null if the type is valid
+	 */
+	private String checkImplementation(TypeMirror fieldType) {
+		if (fieldType.getKind() != TypeKind.DECLARED) {
+			return "The type " + fieldType + " cannot be instantiated through junitee.";
+		}
+
+		TypeElement implementation = findImplementation(fieldType);
+
+		if (!implementation.getModifiers().contains(Modifier.PUBLIC)) {
+			return "The class " + implementation.getQualifiedName() + " is not public.";
+		}
+
+		if (implementation.getNestingKind() == NestingKind.MEMBER && !implementation.getModifiers().contains(Modifier.STATIC)) {
+			return "The inner class " + implementation.getQualifiedName() + " should be static to be instantiated through junitee.";
+		}
+
+		if (implementation.getKind() != ElementKind.CLASS || implementation.getModifiers().contains(Modifier.ABSTRACT)) {
+			return "The class " + implementation.getQualifiedName() + " cannot be instantiated.";
+		}
+
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(implementation.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty()) {
+				if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
+					return null;
+				}
+				else {
+					return "The empty constructor of class " + implementation.getSimpleName() + " must be public.";
+				}
+			}
+		}
+
+		return "It seems that " + implementation.getSimpleName() + " has no empty constructor.";
+	}
+
+	/**
+	 * Find the implementation class of a type. By convention, the implementation of
+	 * an interface has the same name without the first character.
+	 *
+	 * @param fieldType The type
+	 * @return The implementation class, null if not found
+	 */
+	private TypeElement findImplementation(TypeMirror fieldType) {
+		if (fieldType.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+
+		TypeElement type = (TypeElement) ((DeclaredType) fieldType).asElement();
+
+		if (type.getKind() != ElementKind.INTERFACE) {
+			return type;
+		}
+
+		String simpleName = type.getSimpleName().toString().substring(1);
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String prefix = packageName.isEmpty() ? "" : packageName + ".";
+
+		if (type.getNestingKind() == NestingKind.MEMBER) {
+			return processingEnv.getElementUtils().getTypeElement(prefix + type.getEnclosingElement().getSimpleName() + "." + simpleName);
+		}
+		else {
+			return processingEnv.getElementUtils().getTypeElement(prefix + simpleName);
+		}
+	}
+
+	/**
+	 * Generate the injector of a class
+	 *
+	 * @param type The class
+	 */
+	private void generateInjector(TypeElement type) {
+		// Collect the members that can be accessed from the same package
+		List<String> fieldNames = new ArrayList<>();
+		Map<String, String> fieldTypes = new LinkedHashMap<>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (isManagedField(field) && !field.getModifiers().contains(Modifier.PRIVATE) && !field.getModifiers().contains(Modifier.STATIC)
+				&& !field.getModifiers().contains(Modifier.FINAL) && field.asType().getKind() == TypeKind.DECLARED) {
+				fieldNames.add(field.getSimpleName().toString());
+				fieldTypes.put(field.getSimpleName().toString(), processingEnv.getTypeUtils().erasure(field.asType()).toString());
+			}
+		}
+
+		List<String> postConstructs = new ArrayList<>();
+		boolean postConstructAccessible = true;
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (hasAnnotation(method, POST_CONSTRUCT)) {
+				if (method.getModifiers().contains(Modifier.PRIVATE) || !method.getParameters().isEmpty()) {
+					postConstructAccessible = false;
+				}
+				else {
+					postConstructs.add(method.getSimpleName().toString());
+				}
+			}
+		}
+
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String injectorSimpleName = binaryName.substring(binaryName.lastIndexOf('.') + 1) + GeneratedInjector.SUFFIX;
+		String typeName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+
+		try {
+			JavaFileObject file = processingEnv.getFiler().createSourceFile(binaryName + GeneratedInjector.SUFFIX, type);
+
+			try (PrintWriter out = new PrintWriter(file.openWriter())) {
+				if (!packageElement.isUnnamed()) {
+					out.println("package " + packageElement.getQualifiedName() + ";");
+					out.println();
+				}
+
+				out.println("/**");
+				out.println(" * Injector generated by junitee for {@link " + typeName + "}");
+				out.println(" */");
+				out.println("public final class " + injectorSimpleName + " implements " + GeneratedInjector.class.getCanonicalName() + " {");
+				out.println("\tprivate static final String[] FIELD_NAMES = {");
+				for (String fieldName : fieldNames) {
+					out.println("\t\t\"" + fieldName + "\",");
+				}
+				out.println("\t};");
+				out.println();
+
+				out.println("\t@Override");
+				out.println("\tpublic String[] getFieldNames() {");
+				out.println("\t\treturn FIELD_NAMES.clone();");
+				out.println("\t}");
+				out.println();
+
+				out.println("\t@Override");
+				out.println("\tpublic Object getField(int index, Object holder) {");
+				out.println("\t\t" + typeName + " target = (" + typeName + ") holder;");
+				out.println("\t\tswitch (index) {");
+				for (int i = 0; i < fieldNames.size(); i++) {
+					out.println("\t\t\tcase " + i + ": return target." + fieldNames.get(i) + ";");
+				}
+				out.println("\t\t\tdefault: throw new IndexOutOfBoundsException(\"No field at index \" + index);");
+				out.println("\t\t}");
+				out.println("\t}");
+				out.println();
+
+				out.println("\t@Override");
+				out.println("\t@SuppressWarnings(\"unchecked\")");
+				out.println("\tpublic void setField(int index, Object holder, Object value) {");
+				out.println("\t\t" + typeName + " target = (" + typeName + ") holder;");
+				out.println("\t\tswitch (index) {");
+				for (int i = 0; i < fieldNames.size(); i++) {
+					out.println("\t\t\tcase " + i + ": target." + fieldNames.get(i) + " = (" + fieldTypes.get(fieldNames.get(i)) + ") value; break;");
+				}
+				out.println("\t\t\tdefault: throw new IndexOutOfBoundsException(\"No field at index \" + index);");
+				out.println("\t\t}");
+				out.println("\t}");
+				out.println();
+
+				out.println("\t@Override");
+				out.println("\tpublic boolean invokePostConstruct(Object holder) throws Exception {");
+				if (postConstructAccessible) {
+					if (!postConstructs.isEmpty()) {
+						out.println("\t\t" + typeName + " target = (" + typeName + ") holder;");
+						for (String postConstruct : postConstructs) {
+							out.println("\t\ttarget." + postConstruct + "();");
+						}
+					}
+					out.println("\t\treturn true;");
+				}
+				else {
+					out.println("\t\treturn false;");
+				}
+				out.println("\t}");
+				out.println("}");
+			}
+		}
+		catch (IOException ioe) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to generate the injector of " + typeName + ": " + ioe.getMessage(), type);
+		}
+	}
+
+	/**
+	 * Check if a class can be accessed from the other classes of its package
+	 *
+	 * @param type The class
+	 * @return True if the class is accessible
+	 */
+	private boolean isAccessibleFromPackage(TypeElement type) {
+		for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+			TypeElement current = (TypeElement) element;
+
+			if (current.getNestingKind() == NestingKind.LOCAL || current.getNestingKind() == NestingKind.ANONYMOUS
+				|| current.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param field The field to check
+	 * @return True if the field is managed by the injection
+	 */
+	private boolean isManagedField(VariableElement field) {
+		for (String annotation : FIELD_ANNOTATIONS) {
+			if (hasAnnotation(field, annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param type The class
+	 * @return The super class, null if there is none
+	 */
+	private TypeElement superclassOf(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+	}
+
+	/**
+	 * Check if an element is annotated without requiring the annotation class
+	 *
+	 * @param element The element to check
+	 * @param annotationName The qualified name of the annotation
+	 * @return True if the annotation is present
+	 */
+	private static boolean hasAnnotation(Element element, String annotationName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -9,9 +9,64 @@ import java.lang.reflect.Modifier;
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  */
 public final class InflectorHelper {
+	/**
+	 * Cache of the resolutions done from a class to its instantiable class. Failures
+	 * are cached as well to avoid looking up again classes that do not exist.
+	 */
+	private static final ClassValue<Resolution> RESOLUTIONS = new ClassValue<Resolution>() {
+		@Override
+		protected Resolution computeValue(Class<?> type) {
+			try {
+				return new Resolution(resolveInstantiableConstructor(type), null);
+			}
+			catch (NoValidClassException nvce) {
+				return new Resolution(null, nvce.getMessage());
+			}
+		}
+	};
+	
 	private InflectorHelper() {}
 	
+	/**
+	 * Retrieve the class that can be instantiated for a class. When the class is an 
+	 * interface, the implementation class is retrieved by convention (ICustomDao -&gt; CustomDao).
+	 * The result is cached for the next calls.
+	 * 
+	 * @param cl The class or interface
+	 * @return The class that can be instantiated
+	 * @throws NoValidClassException When there is no valid class to instantiate
+	 */
 	public static Class retrieveInstantiableClassName(Class cl) throws NoValidClassException {
+		return retrieveInstantiableConstructor(cl).getDeclaringClass();
+	}
+	
+	/**
+	 * Retrieve the validated empty constructor of the class that can be instantiated for 
+	 * a class. The result is cached for the next calls.
+	 * 
+	 * @param cl The class or interface
+	 * @return The public empty constructor of the class that can be instantiated
+	 * @throws NoValidClassException When there is no valid class to instantiate
+	 */
+	@SuppressWarnings("unchecked")
+	public static Constructor retrieveInstantiableConstructor(Class cl) throws NoValidClassException {
+		Resolution resolution = RESOLUTIONS.get(cl);
+		
+		if (resolution.constructor == null) {
+			throw new NoValidClassException(resolution.errorMessage);
+		}
+		
+		return resolution.constructor;
+	}
+	
+	/**
+	 * Resolve the empty constructor of the class that can be instantiated for a class
+	 * 
+	 * @param cl The class or interface
+	 * @return The public empty constructor
+	 * @throws NoValidClassException When there is no valid class to instantiate
+	 */
+	private static Constructor resolveInstantiableConstructor(Class cl) throws NoValidClassException {
 		Class implementationClass = cl;
 		
 		String simpleName = cl.getSimpleName();
@@ -48,17 +103,33 @@ public final class InflectorHelper {
 			}
 		}
 		
+		Constructor constructor;
 		try {
 			@SuppressWarnings("unchecked")
-			Constructor constructor = implementationClass.getConstructor();
-			if (!Modifier.isPublic(constructor.getModifiers())) {
-				throw new NoValidClassException("The empty constructor of class " + implementationClass.getSimpleName() + " must be public.");
-			}
+			Constructor emptyConstructor = implementationClass.getConstructor();
+			constructor = emptyConstructor;
 		}
 		catch (NoSuchMethodException | SecurityException e) {
 			throw new NoValidClassException("It seems that " + implementationClass.getSimpleName() + " has no empty constructor.");
 		}
+
+		if (!Modifier.isPublic(constructor.getModifiers())) {
+			throw new NoValidClassException("The empty constructor of class " + implementationClass.getSimpleName() + " must be public.");
+		}
 		
-		return implementationClass;
+		return constructor;
+	}
+	
+	/**
+	 * Result of a resolution, either a valid constructor or the reason of the failure
+	 */
+	private static final class Resolution {
+		private final Constructor constructor;
+		private final String errorMessage;
+
+		private Resolution(Constructor constructor, String errorMessage) {
+			this.constructor = constructor;
+			this.errorMessage = errorMessage;
+		}
 	}
 }
@@ -0,0 +1,68 @@
+package com.lotaris.junitee.utils;
+
+import java.lang.reflect.Method;
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.MethodProxy;
+
+/**
+ * Keep one proxy factory by proxied class to create new proxy instances without
+ * going through the proxy class generation each time a proxy is required.
+ *
+ * The proxy class is generated once per class through a prototype instance. The
+ * next proxies are created from that prototype with their own callback. The prototype
+ * is never used by itself but its constructor is run once when it is created.
+ *
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public final class ProxyFactoryCache {
+	/**
+	 * The interface that all the proxies must implement
+	 */
+	private final Class<?> proxyInterface;
+
+	/**
+	 * The prototypes by proxied class
+	 */
+	private final ClassValue<Factory> factories = new ClassValue<Factory>() {
+		@Override
+		protected Factory computeValue(Class<?> type) {
+			return (Factory) Enhancer.create(type, new Class[] {proxyInterface}, PrototypeCallback.INSTANCE);
+		}
+	};
+
+	/**
+	 * Constructor
+	 *
+	 * @param proxyInterface The interface that all the proxies must implement
+	 */
+	public ProxyFactoryCache(Class<?> proxyInterface) {
+		this.proxyInterface = proxyInterface;
+	}
+
+	/**
+	 * Create a new proxy instance of a class. The proxy class is generated
+	 * on the first call for the class and reused for the next calls.
+	 *
+	 * @param cl The class to proxy
+	 * @param callback The callback to use for the new proxy instance
+	 * @return The new proxy instance
+	 */
+	public Object newInstance(Class<?> cl, MethodInterceptor callback) {
+		return factories.get(cl).newInstance((Callback) callback);
+	}
+
+	/**
+	 * Callback of the prototypes that only delegates to the proxied class
+	 */
+	private static class PrototypeCallback implements MethodInterceptor {
+		private static final PrototypeCallback INSTANCE = new PrototypeCallback();
+
+		@Override
+		public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
+			return proxy.invokeSuper(obj, args);
+		}
+	}
+}
@@ -111,6 +111,23 @@ public class DependencyInjectorHelperTest {
 		assertEquals("Post construct annotated method should be called when present", "Post Construct Called", cwpc.testField);
 	}
 	
+	@Test
+	@RoxableTest(key = "8c1f5ae3d702")
+	public void postConstructShouldBeCalledFromTheSuperClassToTheChildClass() throws DependencyInjectionException {
+		ChildClassWithPostConstruct ccwpc = new ChildClassWithPostConstruct();
+		
+		DependencyInjectorHelper.invokePostConstruct(ccwpc);
+		
+		assertEquals("Post construct annotated methods should be called from the super class to the child class", "+parent+child", ccwpc.order);
+	}
+	
+	@Test
+	@RoxableTest(key = "5d37b0c9e1fa")
+	public void mockInterfaceShouldBeRetrievedFromTheSuperClass() {
+		assertEquals("The interface of the super class should be retrieved", ILocalSimpleClass.class, DependencyInjectorHelper.getMockInterface(ChildLocalSimpleClass.class));
+		assertSame(DependencyInjectorHelper.getMockInterface(ChildLocalSimpleClass.class), DependencyInjectorHelper.getMockInterface(ChildLocalSimpleClass.class));
+	}
+	
 	private Object instantiationTester(Class cl) {
 		try {
 			Object obj = DependencyInjectorHelper.findImplementationClass(cl);
@@ -138,6 +155,24 @@ public class DependencyInjectorHelperTest {
 		public NoEmptyConstructorClass(Object voidObject) {}
 	}
 	
+	public static class ChildLocalSimpleClass extends LocalSimpleClass {}
+
+	public static class ParentClassWithPostConstruct {
+		public String order = "";
+		
+		@PostConstruct
+		private void parentPostConstruct() {
+			order += "+parent";
+		}
+	}
+	
+	public static class ChildClassWithPostConstruct extends ParentClassWithPostConstruct {
+		@PostConstruct
+		public void childPostConstruct() {
+			order += "+child";
+		}
+	}
+	
 	public static class ClassWithPostConstruct {
 		public String testField;
 		
@@ -150,6 +150,44 @@ public class DependencyInjectorTest {
 		assertEquals("Method on the mock instance should be called.", "Mock Class", result);
 	}
 
+	@Test
+	@RoxableTest(key = "b5d0c8e2a417")
+	public void injectionPlanShouldBeBuiltOnceAndReusedForTheSameClass() {
+		assertSame(InjectionPlan.of(GeneratorWithInheritance.class), InjectionPlan.of(GeneratorWithInheritance.class));
+	}
+
+	@Test
+	@RoxableTest(key = "7e19f3a6c0db")
+	public void injectionPlanShouldListTheSuperClassFieldsBeforeTheChildClassFields() {
+		InjectionPlan plan = InjectionPlan.of(GeneratorWithInheritance.class);
+		
+		assertEquals(3, plan.getSteps().size());
+		assertEquals(DummyGeneratorWithDaos.class, plan.getSteps().get(0).getField().getDeclaringClass());
+		assertEquals(DummyGeneratorWithDaos.class, plan.getSteps().get(1).getField().getDeclaringClass());
+		assertEquals("daoInChildClass", plan.getSteps().get(2).getField().getName());
+	}
+	
+	@Test
+	@RoxableTest(key = "2f8b61d0e4a5")
+	public void injectionPlanShouldUseTheGeneratedInjectorForTheAccessibleFields() {
+		for (InjectionPlan.Step step : InjectionPlan.of(FirstDao.class).getSteps()) {
+			assertTrue("The field " + step.getField().getName() + " should use the generated injector", step.isGenerated());
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "c4e8a92b61f3")
+	public void injectingTwoObjectsOfTheSameClassShouldInjectBothObjects() {
+		GeneratorWithComplexDao first = new GeneratorWithComplexDao();
+		GeneratorWithComplexDao second = new GeneratorWithComplexDao();
+		
+		DependencyInjector.inject(first, em, true);
+		DependencyInjector.inject(second, em, true);
+		
+		assertNotNull(second.thirdDao.firstDao.firstEm);
+		assertNotSame(first.thirdDao, second.thirdDao);
+	}
+
 	public static class OutsideDataGenerator {
 		@InjectDataGenerator
 		private InsideDataGenerator insideDataGenerator;
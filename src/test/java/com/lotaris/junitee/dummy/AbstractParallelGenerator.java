@@ -0,0 +1,45 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.IDataGenerator;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Generator to record the order of the generate/cleanup run in parallel mode
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public abstract class AbstractParallelGenerator implements IDataGenerator {
+	public static final List<String> order = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * Barrier to await by the cleanups expected to run at the same time, null to not wait
+	 */
+	public static volatile CyclicBarrier cleanupBarrier;
+	
+	@Override
+	public void generate() {
+		order.add("+" + getClass().getSuperclass().getSimpleName());
+	}
+	
+	@Override
+	public void cleanup() {
+		order.add("-" + getClass().getSuperclass().getSimpleName());
+	}
+	
+	/**
+	 * Wait for the other cleanups expected to run at the same time
+	 */
+	protected void awaitCleanupBarrier() {
+		try {
+			cleanupBarrier.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+			throw new IllegalStateException("The cleanups did not run at the same time.", e);
+		}
+	}
+}
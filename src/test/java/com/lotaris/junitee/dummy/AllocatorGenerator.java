@@ -0,0 +1,26 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.IDataGenerator;
+import com.lotaris.junitee.generator.InjectAllocator;
+import com.lotaris.junitee.generator.UniqueValueAllocator;
+
+/**
+ * Data generator to check the injection of the unique value allocator
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class AllocatorGenerator implements IDataGenerator {
+	public static volatile String name;
+	
+	@InjectAllocator
+	private UniqueValueAllocator allocator;
+	
+	@Override
+	public void generate() {
+		name = allocator.nextString();
+	}
+	
+	@Override
+	public void cleanup() {
+	}
+}
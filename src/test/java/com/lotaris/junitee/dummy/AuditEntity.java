@@ -0,0 +1,19 @@
+package com.lotaris.junitee.dummy;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Entity without any association
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@Entity
+public class AuditEntity {
+	@Id
+	public Long id;
+
+	public AuditEntity(Long id) {
+		this.id = id;
+	}
+}
@@ -0,0 +1,25 @@
+package com.lotaris.junitee.dummy;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+/**
+ * Entity referencing a parent
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@Entity
+public class ChildEntity {
+	@Id
+	public Long id;
+	
+	@ManyToOne
+	public ParentEntity parent;
+
+	public ChildEntity(Long id, ParentEntity parent) {
+		this.id = id;
+		this.parent = parent;
+		parent.children.add(this);
+	}
+}
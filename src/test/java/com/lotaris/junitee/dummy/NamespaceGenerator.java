@@ -0,0 +1,24 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.DataNamespace;
+import com.lotaris.junitee.generator.IDataGenerator;
+
+/**
+ * Data generator to check the data namespace of the generation and the cleanup
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class NamespaceGenerator implements IDataGenerator {
+	public static volatile String generateNamespace;
+	public static volatile String cleanupNamespace;
+	
+	@Override
+	public void generate() {
+		generateNamespace = DataNamespace.current();
+	}
+	
+	@Override
+	public void cleanup() {
+		cleanupNamespace = DataNamespace.current();
+	}
+}
@@ -0,0 +1,26 @@
+package com.lotaris.junitee.dummy;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Generator of the parallel cleanup tests, writes entities unrelated to the other ones
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ParallelAuditGenerator extends AbstractParallelGenerator {
+	@PersistenceContext
+	private EntityManager em;
+	
+	@Override
+	public void generate() {
+		em.persist(new AuditEntity(100L));
+		super.generate();
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		awaitCleanupBarrier();
+	}
+}
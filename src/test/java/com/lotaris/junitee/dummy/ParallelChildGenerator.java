@@ -0,0 +1,26 @@
+package com.lotaris.junitee.dummy;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Generator of the parallel cleanup tests, writes the child entities referencing the parents
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ParallelChildGenerator extends AbstractParallelGenerator {
+	@PersistenceContext
+	private EntityManager em;
+	
+	@Override
+	public void generate() {
+		em.persist(new ChildEntity(10L, new ParentEntity(1L)));
+		super.generate();
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		awaitCleanupBarrier();
+	}
+}
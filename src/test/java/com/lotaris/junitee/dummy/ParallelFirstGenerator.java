@@ -0,0 +1,9 @@
+package com.lotaris.junitee.dummy;
+
+/**
+ * First generator of the parallel mode tests, without dependency
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ParallelFirstGenerator extends AbstractParallelGenerator {
+}
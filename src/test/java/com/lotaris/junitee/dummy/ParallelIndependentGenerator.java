@@ -0,0 +1,9 @@
+package com.lotaris.junitee.dummy;
+
+/**
+ * Generator of the parallel mode tests, without dependency
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ParallelIndependentGenerator extends AbstractParallelGenerator {
+}
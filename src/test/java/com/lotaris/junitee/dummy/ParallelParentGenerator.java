@@ -0,0 +1,20 @@
+package com.lotaris.junitee.dummy;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Generator of the parallel cleanup tests, writes the parent entities
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ParallelParentGenerator extends AbstractParallelGenerator {
+	@PersistenceContext
+	private EntityManager em;
+	
+	@Override
+	public void generate() {
+		em.persist(new ParentEntity(1L));
+		super.generate();
+	}
+}
@@ -0,0 +1,12 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.RunAfter;
+
+/**
+ * Second generator of the parallel mode tests, declared to run after the first one
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@RunAfter(ParallelFirstGenerator.class)
+public class ParallelSecondGenerator extends AbstractParallelGenerator {
+}
@@ -0,0 +1,13 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.InjectDataGenerator;
+
+/**
+ * Third generator of the parallel mode tests, that depends on the second one through injection
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ParallelThirdGenerator extends AbstractParallelGenerator {
+	@InjectDataGenerator
+	public ParallelSecondGenerator secondGenerator;
+}
@@ -0,0 +1,30 @@
+package com.lotaris.junitee.dummy;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.CascadeType;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+
+/**
+ * Entity with children persisted by cascade
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@Entity
+public class ParentEntity {
+	@Id
+	public Long id;
+	
+	@OneToMany(mappedBy = "parent", cascade = CascadeType.ALL)
+	public List<ChildEntity> children = new ArrayList<>();
+	
+	@OneToOne
+	public ChildEntity firstChild;
+
+	public ParentEntity(Long id) {
+		this.id = id;
+	}
+}
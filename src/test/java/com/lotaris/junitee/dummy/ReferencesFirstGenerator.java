@@ -0,0 +1,31 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.IDataGenerator;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Generator that persists a child entity before the parent it references
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ReferencesFirstGenerator implements IDataGenerator {
+	public static int generated = 0;
+	
+	public static final ParentEntity PARENT = new ParentEntity(1L);
+	public static final ChildEntity CHILD = new ChildEntity(10L, PARENT);
+	
+	@PersistenceContext
+	private EntityManager em;
+	
+	@Override
+	public void generate() {
+		generated++;
+		em.persist(CHILD);
+		em.persist(PARENT);
+	}
+
+	@Override
+	public void cleanup() {
+	}
+}
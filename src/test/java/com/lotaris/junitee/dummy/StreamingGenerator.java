@@ -0,0 +1,58 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.DataNamespace;
+import com.lotaris.junitee.generator.IStreamingDataGenerator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Generator producing its entities lazily
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class StreamingGenerator implements IStreamingDataGenerator<String> {
+	/**
+	 * Number of entities to produce, the production fails when negative
+	 */
+	public static int numberToProduce = 0;
+	
+	/**
+	 * Data namespace of the thread that produced the last entity
+	 */
+	public static String producerNamespace;
+	
+	@Override
+	public void generate() {}
+
+	@Override
+	public Iterator<String> entities() {
+		return new Iterator<String>() {
+			private int produced = 0;
+			
+			@Override
+			public boolean hasNext() {
+				if (numberToProduce < 0) {
+					throw new IllegalStateException("Unable to produce the entities");
+				}
+				return produced < numberToProduce;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				producerNamespace = DataNamespace.current();
+				return "entity-" + produced++;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	@Override
+	public void cleanup() {}
+}
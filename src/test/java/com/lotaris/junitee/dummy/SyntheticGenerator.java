@@ -0,0 +1,23 @@
+package com.lotaris.junitee.dummy;
+
+import com.lotaris.junitee.generator.CompositeDataGenerator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Composite data generator to check the streams of synthetic data given by the manager
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class SyntheticGenerator extends CompositeDataGenerator {
+	public static final List<Long> values = new CopyOnWriteArrayList<>();
+	
+	@Override
+	protected void generateData() {
+		values.add(getSyntheticData().nextLong());
+	}
+
+	@Override
+	protected void cleanData() {
+	}
+}
@@ -0,0 +1,25 @@
+package com.lotaris.junitee.dummy;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+
+/**
+ * Entity with a join table and a reference to itself
+ * 
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@Entity
+public class TaggedEntity {
+	@Id
+	public Long id;
+	
+	@ManyToMany
+	public List<ParentEntity> parents = new ArrayList<>();
+	
+	@ManyToOne
+	public TaggedEntity previous;
+}
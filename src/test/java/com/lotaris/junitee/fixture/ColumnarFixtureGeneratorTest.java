@@ -0,0 +1,104 @@
+package com.lotaris.junitee.fixture;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ColumnarFixtureGeneratorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Mock
+	private Connection connection;
+	
+	@Mock
+	private PreparedStatement statement;
+	
+	private File file;
+	
+	private ColumnarFixtureGenerator generator = new ColumnarFixtureGenerator() {
+		@Override
+		protected File getFile() {
+			return file;
+		}
+	};
+	
+	@Before
+	public void setup() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		
+		file = folder.newFile("person.columnar");
+		
+		try (ColumnarFixtureWriter writer = new ColumnarFixtureWriter(file, "PERSON", new String[] { "ID", "NAME", "AGE", "SCORE" }, 
+			new ColumnType[] { ColumnType.LONG, ColumnType.STRING, ColumnType.INTEGER, ColumnType.DOUBLE }, "ID", 2)) {
+			writer.addRow(1L, "Émile", 42, 1.5);
+			writer.addRow(2L, null, 7, null);
+			writer.addRow(3L, "Zoé", null, 3.25);
+			writer.addRow(10L, "", 1, 0.0);
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "0a6f93e2c1d8")
+	public void rowsOfTheFileShouldBeInsertedByBlocks() throws Exception {
+		assertEquals(4, generator.insert(connection));
+		
+		verify(connection).prepareStatement("INSERT INTO PERSON (ID, NAME, AGE, SCORE) VALUES (?, ?, ?, ?)");
+		verify(statement).setLong(1, 1L);
+		verify(statement).setString(2, "Émile");
+		verify(statement).setInt(3, 42);
+		verify(statement).setDouble(4, 1.5);
+		verify(statement).setNull(2, Types.VARCHAR);
+		verify(statement).setNull(4, Types.DOUBLE);
+		verify(statement).setString(2, "Zoé");
+		verify(statement).setNull(3, Types.INTEGER);
+		verify(statement).setString(2, "");
+		verify(statement).setLong(1, 10L);
+		verify(statement, times(4)).addBatch();
+		verify(statement, times(2)).executeBatch();
+	}
+	
+	@Test
+	@RoxableTest(key = "e49b7c05a2f1")
+	public void rowsOfTheFileShouldBeDeletedByTheRangesOfKeys() throws Exception {
+		generator.delete(connection);
+		
+		verify(connection).prepareStatement("DELETE FROM PERSON WHERE ID BETWEEN ? AND ?");
+		
+		// The ranges of the two blocks follow each other
+		verify(statement).setLong(1, 1L);
+		verify(statement).setLong(2, 10L);
+		verify(statement, times(1)).addBatch();
+		verify(statement, times(1)).executeBatch();
+	}
+	
+	@Test
+	@RoxableTest(key = "5c1d08f7b3e6")
+	public void overlappingAndAdjacentRangesShouldBeMerged() {
+		List<long[]> ranges = new ArrayList<>(Arrays.asList(new long[] { 10, 20 }, new long[] { 1, 5 }, new long[] { 6, 8 }, new long[] { 15, 30 }));
+		
+		List<long[]> merged = ColumnarFixtureGenerator.mergeRanges(ranges);
+		
+		assertEquals(2, merged.size());
+		assertArrayEquals(new long[] { 1, 8 }, merged.get(0));
+		assertArrayEquals(new long[] { 10, 30 }, merged.get(1));
+	}
+}
@@ -0,0 +1,171 @@
+package com.lotaris.junitee.fixture;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class FixtureCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Mock
+	private Connection connection;
+	
+	@Mock
+	private PreparedStatement statement;
+	
+	@Before
+	public void setup() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+	}
+	
+	@Test
+	@RoxableTest(key = "6b0e2f9a4c71")
+	public void storedFixtureShouldBeLoadedWithTheSameRows() throws Exception {
+		Timestamp timestamp = new Timestamp(1234567890L);
+		timestamp.setNanos(123456789);
+		
+		FixtureTable table = new FixtureTable("PERSON", new String[] { "ID", "NAME", "AMOUNT", "CREATED", "PHOTO" }, 
+			new int[] { Types.BIGINT, Types.VARCHAR, Types.DECIMAL, Types.TIMESTAMP, Types.BLOB }, new int[] { 0 });
+		table.addRow(new Object[] { 1L, "Émile", new BigDecimal("12.50"), timestamp, new byte[] { 1, 2, 3 } });
+		table.addRow(new Object[] { 2L, null, null, null, null });
+		
+		FixtureCache cache = new FixtureCache(folder.newFolder("fixtures"), "PERSON");
+		assertNull(cache.load("key"));
+		
+		cache.store("key", new Fixture(Arrays.asList(table)));
+		Fixture fixture = cache.load("key");
+		
+		assertEquals(2, fixture.getRowCount());
+		FixtureTable loaded = fixture.getTables().get(0);
+		assertEquals("PERSON", loaded.getName());
+		assertArrayEquals(table.getColumns(), loaded.getColumns());
+		assertArrayEquals(table.getTypes(), loaded.getTypes());
+		assertArrayEquals(table.getKeyColumns(), loaded.getKeyColumns());
+		
+		Object[] first = loaded.getRows().get(0);
+		assertEquals(1L, first[0]);
+		assertEquals("Émile", first[1]);
+		assertEquals(new BigDecimal("12.50"), first[2]);
+		assertEquals(timestamp, first[3]);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) first[4]);
+		assertArrayEquals(new Object[] { 2L, null, null, null, null }, loaded.getRows().get(1));
+	}
+	
+	@Test
+	@RoxableTest(key = "d3a5c8170fe4")
+	public void fixtureShouldBeInsertedAndDeletedByBatchesInTheTableOrder() throws Exception {
+		FixtureTable parent = new FixtureTable("PARENT", new String[] { "ID", "NAME" }, new int[] { Types.BIGINT, Types.VARCHAR }, new int[] { 0 });
+		parent.addRow(new Object[] { 1L, "parent" });
+		
+		FixtureTable child = new FixtureTable("CHILD", new String[] { "ID", "PARENT_ID" }, new int[] { Types.BIGINT, Types.BIGINT }, new int[] { 0 });
+		child.addRow(new Object[] { 10L, 1L });
+		child.addRow(new Object[] { 11L, null });
+		
+		Fixture fixture = new Fixture(Arrays.asList(parent, child));
+		
+		fixture.insert(connection);
+		fixture.delete(connection);
+		
+		InOrder inOrder = inOrder(connection);
+		inOrder.verify(connection).prepareStatement("INSERT INTO PARENT (ID, NAME) VALUES (?, ?)");
+		inOrder.verify(connection).prepareStatement("INSERT INTO CHILD (ID, PARENT_ID) VALUES (?, ?)");
+		inOrder.verify(connection).prepareStatement("DELETE FROM CHILD WHERE ID = ?");
+		inOrder.verify(connection).prepareStatement("DELETE FROM PARENT WHERE ID = ?");
+		
+		verify(statement).setNull(2, Types.BIGINT);
+		verify(statement, times(6)).addBatch();
+		verify(statement, times(4)).executeBatch();
+	}
+	
+	@Test
+	@RoxableTest(key = "8e1c4a7f20d3")
+	public void insertedFixtureShouldMoveTheKeysPastTheHighestKeys() throws Exception {
+		Statement advance = mock(Statement.class);
+		when(connection.createStatement()).thenReturn(advance);
+		
+		FixtureTable parent = new FixtureTable("PARENT", new String[] { "ID", "NAME" }, new int[] { Types.BIGINT, Types.VARCHAR }, new int[] { 0 });
+		parent.addRow(new Object[] { 1L, "parent" });
+		
+		FixtureTable child = new FixtureTable("CHILD", new String[] { "ID", "PARENT_ID" }, new int[] { Types.BIGINT, Types.BIGINT }, new int[] { 0 });
+		child.addRow(new Object[] { 11L, 1L });
+		child.addRow(new Object[] { 10L, 1L });
+		
+		FixtureTable empty = new FixtureTable("EMPTY", new String[] { "ID" }, new int[] { Types.BIGINT }, new int[] { 0 });
+		
+		new FixtureCache(folder.newFolder("fixtures"), "PARENT", "CHILD", "EMPTY")
+			.advanceKeys("ALTER TABLE {table} ALTER COLUMN {column} RESTART WITH {next}")
+			.insert(new Fixture(Arrays.asList(parent, child, empty)), connection);
+		
+		InOrder inOrder = inOrder(statement, advance);
+		inOrder.verify(statement, times(2)).executeBatch();
+		inOrder.verify(advance).execute("ALTER TABLE PARENT ALTER COLUMN ID RESTART WITH 2");
+		inOrder.verify(advance).execute("ALTER TABLE CHILD ALTER COLUMN ID RESTART WITH 12");
+		verify(advance, times(2)).execute(anyString());
+	}
+	
+	@Test
+	@RoxableTest(key = "2d9b6f03c8e5")
+	public void onlyTheRowsAboveTheHighestKeyOfTheSnapshotShouldBeCaptured() throws Exception {
+		DatabaseMetaData databaseMetaData = mock(DatabaseMetaData.class);
+		ResultSet primaryKeys = mock(ResultSet.class);
+		ResultSet keyColumn = mock(ResultSet.class);
+		Statement maxStatement = mock(Statement.class);
+		ResultSet max = mock(ResultSet.class);
+		ResultSet rows = mock(ResultSet.class);
+		ResultSetMetaData rowsMetaData = mock(ResultSetMetaData.class);
+		
+		when(connection.getMetaData()).thenReturn(databaseMetaData);
+		when(databaseMetaData.getPrimaryKeys(null, null, "PERSON")).thenReturn(primaryKeys);
+		when(primaryKeys.next()).thenReturn(true, false);
+		when(primaryKeys.getString("COLUMN_NAME")).thenReturn("ID");
+		when(databaseMetaData.getColumns(null, null, "PERSON", "ID")).thenReturn(keyColumn);
+		when(keyColumn.next()).thenReturn(true);
+		when(keyColumn.getInt("DATA_TYPE")).thenReturn(Types.BIGINT);
+		when(connection.createStatement()).thenReturn(maxStatement);
+		when(maxStatement.executeQuery("SELECT MAX(ID) FROM PERSON")).thenReturn(max);
+		when(max.next()).thenReturn(true);
+		when(max.getObject(1)).thenReturn(5L);
+		
+		when(statement.executeQuery()).thenReturn(rows);
+		when(rows.getMetaData()).thenReturn(rowsMetaData);
+		when(rowsMetaData.getColumnCount()).thenReturn(2);
+		when(rowsMetaData.getColumnName(1)).thenReturn("ID");
+		when(rowsMetaData.getColumnName(2)).thenReturn("NAME");
+		when(rowsMetaData.getColumnType(1)).thenReturn(Types.BIGINT);
+		when(rowsMetaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+		when(rows.next()).thenReturn(true, false);
+		when(rows.getObject(1)).thenReturn(6L);
+		when(rows.getObject(2)).thenReturn("new");
+		
+		Fixture fixture = new FixtureCache(folder.newFolder("fixtures"), "PERSON").snapshot(connection).capture(connection);
+		
+		verify(connection).prepareStatement("SELECT * FROM PERSON WHERE ID > ? ORDER BY ID");
+		verify(statement).setObject(1, 5L);
+		assertEquals(1, fixture.getRowCount());
+		assertArrayEquals(new Object[] { 6L, "new" }, fixture.getTables().get(0).getRows().get(0));
+		assertArrayEquals(new int[] { 0 }, fixture.getTables().get(0).getKeyColumns());
+	}
+}
@@ -0,0 +1,107 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class BulkPersisterTest {
+	@Mock
+	private EntityManager entityManager;
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+	}
+
+	@Test
+	@RoxableTest(key = "7c21e9d4a0f6")
+	public void persistingEntitiesShouldFlushAndDetachEveryChunk() {
+		BulkPersister persister = new BulkPersister(entityManager, 2);
+		
+		persister.persist("first").persist("second").persist("third");
+		
+		InOrder inOrder = inOrder(entityManager);
+		inOrder.verify(entityManager).persist("first");
+		inOrder.verify(entityManager).persist("second");
+		inOrder.verify(entityManager).flush();
+		inOrder.verify(entityManager).detach("first");
+		inOrder.verify(entityManager).detach("second");
+		inOrder.verify(entityManager).persist("third");
+		verify(entityManager, times(1)).flush();
+		
+		assertEquals(3, persister.finish());
+		verify(entityManager, times(2)).flush();
+		verify(entityManager).detach("third");
+		verify(entityManager, never()).clear();
+	}
+	
+	@Test
+	@RoxableTest(key = "e5a9013bc72d")
+	public void finishingWithoutPendingEntitiesShouldNotFlush() {
+		BulkPersister persister = new BulkPersister(entityManager, 2);
+		
+		assertEquals(2, persister.persistAll(Arrays.asList("first", "second")).finish());
+		verify(entityManager, times(1)).flush();
+		verify(entityManager, times(2)).detach(any());
+	}
+	
+	@Test
+	@RoxableTest(key = "3b8f6d1e09ac")
+	public void jdbcBatchSizeShouldBeAlignedWithTheChunkSize() {
+		new BulkPersister(entityManager, 500);
+		
+		verify(entityManager).setProperty("hibernate.jdbc.batch_size", 500);
+		verify(entityManager).setProperty("eclipselink.jdbc.batch-writing.size", 500);
+	}
+	
+	@Test
+	@RoxableTest(key = "a47d2c90e1b5")
+	public void jdbcBatchSizeShouldBeRestoredWhenFinished() {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("hibernate.jdbc.batch_size", 20);
+		when(entityManager.getProperties()).thenReturn(properties);
+		
+		BulkPersister persister = new BulkPersister(entityManager, 500);
+		verify(entityManager).setProperty("hibernate.jdbc.batch_size", 500);
+		
+		persister.persist("first").finish();
+		
+		InOrder inOrder = inOrder(entityManager);
+		inOrder.verify(entityManager).flush();
+		inOrder.verify(entityManager).setProperty("hibernate.jdbc.batch_size", 20);
+		verify(entityManager, times(1)).setProperty(eq("eclipselink.jdbc.batch-writing.size"), any());
+	}
+	
+	@Test
+	@RoxableTest(key = "5f0c8e2b7d14")
+	public void jdbcBatchSizeShouldBeRestoredWhenClosedAfterAFailure() {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("hibernate.jdbc.batch_size", 20);
+		when(entityManager.getProperties()).thenReturn(properties);
+		doThrow(new IllegalStateException("Persist failure")).when(entityManager).persist("second");
+		
+		try (BulkPersister persister = new BulkPersister(entityManager, 500)) {
+			persister.persist("first").persist("second").finish();
+			fail("The failure of the persist should be reported");
+		}
+		catch (IllegalStateException ise) {
+			assertEquals("Persist failure", ise.getMessage());
+		}
+		
+		verify(entityManager).setProperty("hibernate.jdbc.batch_size", 20);
+		verify(entityManager, never()).flush();
+	}
+}
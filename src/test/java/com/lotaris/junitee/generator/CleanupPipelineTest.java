@@ -0,0 +1,129 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class CleanupPipelineTest {
+	@Test
+	@RoxableTest(key = "4f0a7d2e91c3")
+	public void cleanupsShouldBeRunInBackgroundInTheOrderTheyWereSubmitted() throws Exception {
+		CleanupPipeline pipeline = new CleanupPipeline(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> order = new CopyOnWriteArrayList<>();
+		
+		pipeline.submit(new CleanupPipeline.Cleanup() {
+			@Override
+			public void run() throws Exception {
+				release.await(5, TimeUnit.SECONDS);
+				order.add("first");
+			}
+		});
+		
+		pipeline.submit(new CleanupPipeline.Cleanup() {
+			@Override
+			public void run() throws Exception {
+				order.add("second");
+			}
+		});
+		
+		// The submission does not wait for the cleanups
+		assertTrue(order.isEmpty());
+		
+		release.countDown();
+		pipeline.await();
+		
+		assertEquals("first", order.get(0));
+		assertEquals("second", order.get(1));
+	}
+	
+	@Test
+	@RoxableTest(key = "b83e51f06a27")
+	public void submittingToAFullPipelineShouldWaitForRoom() throws Exception {
+		final CleanupPipeline pipeline = new CleanupPipeline(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean submitted = new AtomicBoolean(false);
+		
+		pipeline.submit(new CleanupPipeline.Cleanup() {
+			@Override
+			public void run() throws Exception {
+				release.await(5, TimeUnit.SECONDS);
+			}
+		});
+		
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					pipeline.submit(new CleanupPipeline.Cleanup() {
+						@Override
+						public void run() throws Exception {}
+					});
+					submitted.set(true);
+				}
+				catch (DataGeneratorException dge) {
+					throw new RuntimeException(dge);
+				}
+			}
+		});
+		thread.start();
+		thread.join(200);
+		
+		assertFalse("The second cleanup should wait for the first one", submitted.get());
+		
+		release.countDown();
+		thread.join(5000);
+		pipeline.await();
+		
+		assertTrue(submitted.get());
+	}
+	
+	@Test
+	@RoxableTest(key = "19c6e4ab7d58")
+	public void failuresOfTheCleanupsShouldBeReportedAtTheEndOfTheClass() throws Throwable {
+		final CleanupPipeline pipeline = new CleanupPipeline(2);
+		
+		Statement testClass = new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				pipeline.submit(new CleanupPipeline.Cleanup() {
+					@Override
+					public void run() throws Exception {
+						throw new DataGeneratorException("First failure");
+					}
+				});
+
+				pipeline.submit(new CleanupPipeline.Cleanup() {
+					@Override
+					public void run() throws Exception {
+						throw new IllegalStateException("Second failure");
+					}
+				});
+			}
+		};
+		
+		try {
+			pipeline.apply(testClass, Description.createSuiteDescription("Some description")).evaluate();
+			fail("The failures of the cleanups should be reported");
+		}
+		catch (DataGeneratorException dge) {
+			assertEquals("First failure", dge.getMessage());
+			assertEquals(1, dge.getSuppressed().length);
+			assertEquals("Second failure", dge.getSuppressed()[0].getMessage());
+		}
+		
+		// The failures are reported only once
+		pipeline.await();
+	}
+}
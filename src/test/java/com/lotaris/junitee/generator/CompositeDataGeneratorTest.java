@@ -2,9 +2,16 @@ package com.lotaris.junitee.generator;
 
 import com.lotaris.rox.annotations.RoxableTest;
 import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.persistence.EntityManager;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 /**
  * Test the composite data generator
@@ -227,6 +234,214 @@ public class CompositeDataGeneratorTest {
 		cdg.generate();
 	}
 
+	@Test
+	@RoxableTest(key = "b5d27e90c4a3")
+	public void theDataNamespaceShouldBeTheDefaultPrefixOfTheCompositeDataGenerators() {
+		final List<String> prefixes = new CopyOnWriteArrayList<>();
+		
+		final CompositeDataGenerator child = new CompositeDataGenerator() {
+			@Override protected void generateData() { prefixes.add(getPrefix()); }
+			@Override protected void cleanData() {}
+		};
+		
+		CompositeDataGenerator cdg = new CompositeDataGenerator() {
+			@Override protected void setup() { register(child); registerIndependent(new IDataGenerator() {
+				@Override public void generate() { prefixes.add(DataNamespace.current()); }
+				@Override public void cleanup() {}
+			}); }
+			@Override protected void generateData() { prefixes.add(getPrefix()); }
+			@Override protected void cleanData() {}
+		};
+		
+		String previousNamespace = DataNamespace.enter("namespace");
+		try {
+			cdg.generate();
+		}
+		finally {
+			DataNamespace.restore(previousNamespace);
+		}
+		
+		assertEquals(Arrays.asList("namespace", "namespace", "namespace"), prefixes);
+	}
+
+	@Test
+	@RoxableTest(key = "6e1c94b2d7a0")
+	public void theRegisteredCompositeDataGeneratorsShouldGetReproducibleStreamsSplitFromTheSeed() {
+		final List<String> names = new ArrayList<>();
+		
+		for (int run = 0; run < 2; run++) {
+			final CompositeDataGenerator child = new CompositeDataGenerator() {
+				@Override protected void generateData() { names.add(getSyntheticData().fullName()); }
+				@Override protected void cleanData() {}
+			};
+			
+			CompositeDataGenerator cdg = new CompositeDataGenerator() {
+				@Override protected void setup() { useSeed(42); register(child); }
+				@Override protected void generateData() { names.add(getSyntheticData().fullName()); }
+				@Override protected void cleanData() {}
+			};
+			
+			cdg.generate();
+		}
+		
+		assertEquals(4, names.size());
+		assertEquals(names.subList(0, 2), names.subList(2, 4));
+	}
+
+	@Test
+	@RoxableTest(key = "c08d5b7e2f41")
+	public void dataGeneratorsRegisteredWithExplicitDependenciesShouldRunInTheOrderOfTheDependencies() {
+		final ObjectChecker oc = new ObjectChecker();
+		
+		CompositeDataGenerator cdg = new CompositeDataGenerator() {
+			@Override protected void setup() { 
+				IDataGenerator dg1 = new IDataGenerator() { 
+					@Override public void generate() { oc.orderChecker += "+dg1g"; }
+					@Override public void cleanup() { oc.orderChecker += "+dg1c"; }
+				};
+				IDataGenerator dg2 = new IDataGenerator() { 
+					@Override public void generate() { oc.orderChecker += "+dg2g"; }
+					@Override public void cleanup() { oc.orderChecker += "+dg2c"; }
+				};
+				IDataGenerator dg3 = new IDataGenerator() { 
+					@Override public void generate() { oc.orderChecker += "+dg3g"; }
+					@Override public void cleanup() { oc.orderChecker += "+dg3c"; }
+				};
+				
+				registerIndependent(dg1);
+				registerIndependent(dg2);
+				registerAfter(dg3, dg1);
+			}
+			
+			@Override protected void generateData() { oc.orderChecker += "+create"; }
+			@Override protected void cleanData() { oc.orderChecker += "+clean"; }
+		};
+		
+		cdg.generate();
+		cdg.cleanup();
+		
+		assertEquals("Methods should be called in that order: gen(dg1) - gen(dg2) - gen(dg3) - create - clean - clean(dg3) - clean(dg2) - clean(dg1)", 
+			"+dg1g+dg2g+dg3g+create+clean+dg3c+dg2c+dg1c", oc.orderChecker);
+	}
+	
+	@Test
+	@RoxableTest(key = "9d3f70b8e2a6")
+	public void registrationsOfAFailedSetupShouldBeForgottenWhenTheSetupIsRunAgain() {
+		final IDataGenerator dg = new IDataGenerator() { 
+			@Override public void generate() {}
+			@Override public void cleanup() {}
+		};
+		
+		final ObjectChecker oc = new ObjectChecker();
+		
+		CompositeDataGenerator cdg = new CompositeDataGenerator() {
+			@Override protected void setup() { 
+				dependsOn("dg", dg);
+				register(dg);
+				if (!oc.setupCalled) {
+					oc.setupCalled = true;
+					throw new IllegalStateException("Setup failure");
+				}
+			}
+			@Override protected void generateData() { oc.createCalled = true; }
+			@Override protected void cleanData() {}
+		};
+		
+		try {
+			cdg.generate();
+			fail("The failure of the setup should be reported");
+		}
+		catch (IllegalStateException ise) {
+			assertEquals("Setup failure", ise.getMessage());
+		}
+		
+		cdg.generate();
+		assertTrue("Composite data generator create method should be called", oc.createCalled);
+	}
+	
+	@Test
+	@RoxableTest(key = "71b9e4a0d6c5")
+	public void entitiesOfTheRegisteredStreamingDataGeneratorsShouldBePersisted() {
+		final EntityManager entityManager = mock(EntityManager.class);
+		final List<String> order = new CopyOnWriteArrayList<>();
+		
+		final CompositeDataGenerator child = new CompositeDataGenerator() {
+			@Override protected void setup() { register(new ListStreamingDataGenerator(order, "c1")); }
+			@Override protected void generateData() {}
+			@Override protected void cleanData() {}
+		};
+		
+		CompositeDataGenerator cdg = new CompositeDataGenerator() {
+			@Override protected void setup() { register(new ListStreamingDataGenerator(order, "e1", "e2", "e3")); register(child); }
+			@Override protected void generateData() {}
+			@Override protected void cleanData() {}
+		};
+		
+		cdg.useStreaming(entityManager, 2).generate();
+		
+		assertEquals(Arrays.asList("+generate", "+generate"), order);
+		verify(entityManager).persist("e1");
+		verify(entityManager).persist("e2");
+		verify(entityManager).persist("e3");
+		verify(entityManager).persist("c1");
+	}
+	
+	@Test
+	@RoxableTest(key = "0b6e3d8a4f27")
+	public void entitiesOfTheRegisteredStreamingDataGeneratorsShouldNotBeLostWithoutEntityManager() {
+		CompositeDataGenerator cdg = new CompositeDataGenerator() {
+			@Override protected void setup() { register(new ListStreamingDataGenerator(new ArrayList<String>(), "e1")); }
+			@Override protected void generateData() {}
+			@Override protected void cleanData() {}
+		};
+		
+		try {
+			cdg.generate();
+			fail("The entities of a streaming data generator should not be silently ignored");
+		}
+		catch (RuntimeException re) {
+			assertTrue(re.getCause() instanceof DataGeneratorException);
+		}
+	}
+	
+	@Test
+	@RoxableTest(key = "a3e7f1c9b2d8")
+	public void itShouldNotBePossibleToRegisterAfterAnUnregisteredDataGenerator() {
+		CompositeDataGenerator cdg = new CompositeDataGenerator() {
+			@Override protected void setup() { 
+				registerAfter(
+					new ListStreamingDataGenerator(new ArrayList<String>()), 
+					new ListStreamingDataGenerator(new ArrayList<String>()));
+			}
+			
+			@Override protected void generateData() {}
+			@Override protected void cleanData() {}
+		};
+		
+		try {
+			cdg.generate();
+			fail("It should not be possible to register a data generator after an unregistered one");
+		}
+		catch (IllegalArgumentException iae) { /* Do nothing */ }
+	}
+
+	/**
+	 * Streaming data generator producing the entities of a list
+	 */
+	private static class ListStreamingDataGenerator implements IStreamingDataGenerator<String> {
+		private final List<String> order;
+		private final List<String> entities;
+
+		public ListStreamingDataGenerator(List<String> order, String... entities) {
+			this.order = order;
+			this.entities = Arrays.asList(entities);
+		}
+		
+		@Override public void generate() { order.add("+generate"); }
+		@Override public Iterator<String> entities() { return entities.iterator(); }
+		@Override public void cleanup() {}
+	}
+	
 	private static class ObjectChecker {
 		private boolean setupCalled = false;
 		private boolean createCalled = false;
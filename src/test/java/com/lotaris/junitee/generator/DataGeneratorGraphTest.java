@@ -0,0 +1,142 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@RoxableTestClass(tags = "data-generator-graph")
+public class DataGeneratorGraphTest {
+	private ExecutorService executor;
+	
+	@Before
+	public void setup() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+	
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	@RoxableTest(key = "1d6f9e03a8b7")
+	public void topologicalOrderShouldRespectTheEdgesAndKeepTheInsertionOrderOtherwise() {
+		DataGeneratorGraph<String> graph = new DataGeneratorGraph<>();
+		graph.addNode("a");
+		graph.addNode("b");
+		graph.addNode("c");
+		graph.addNode("d");
+		graph.addEdge("c", "a");
+		
+		assertEquals(Arrays.asList("b", "c", "a", "d"), graph.topologicalOrder());
+		assertEquals(Arrays.asList("d", "a", "c", "b"), graph.reverseTopologicalOrder());
+	}
+	
+	@Test
+	@RoxableTest(key = "0c5e8a2f7b64")
+	public void reversedGraphShouldHaveTheEdgesReversed() {
+		DataGeneratorGraph<String> graph = new DataGeneratorGraph<>();
+		graph.addNode("a");
+		graph.addNode("b");
+		graph.addNode("c");
+		graph.addEdge("a", "b");
+		graph.addEdge("b", "c");
+		
+		assertEquals(Arrays.asList("c", "b", "a"), graph.reverse().topologicalOrder());
+	}
+	
+	@Test
+	@RoxableTest(key = "b27c0e5f4d19")
+	public void loopInTheGraphShouldBeForbidden() {
+		DataGeneratorGraph<String> graph = new DataGeneratorGraph<>();
+		graph.addNode("a");
+		graph.addNode("b");
+		graph.addEdge("a", "b");
+		graph.addEdge("b", "a");
+		
+		try {
+			graph.topologicalOrder();
+			fail("A loop in the graph should not be allowed");
+		}
+		catch (IllegalStateException ise) { /* Do nothing */ }
+	}
+	
+	@Test
+	@RoxableTest(key = "93e4a7d1c06f")
+	public void independentNodesShouldBeRunAtTheSameTime() throws Exception {
+		DataGeneratorGraph<String> graph = new DataGeneratorGraph<>();
+		graph.addNode("a");
+		graph.addNode("b");
+		
+		// Each node waits for the other one to be started
+		final CountDownLatch latch = new CountDownLatch(2);
+		graph.execute(executor, new DataGeneratorGraph.NodeTask<String>() {
+			@Override
+			public void run(String node) throws Exception {
+				latch.countDown();
+				assertTrue("The nodes should run at the same time", latch.await(5, TimeUnit.SECONDS));
+			}
+		});
+	}
+	
+	@Test
+	@RoxableTest(key = "4f80b2d6e1c3")
+	public void dependentNodesShouldBeRunAfterTheirPrerequisites() throws Exception {
+		DataGeneratorGraph<String> graph = new DataGeneratorGraph<>();
+		graph.addNode("c");
+		graph.addNode("b");
+		graph.addNode("a");
+		graph.addEdge("a", "b");
+		graph.addEdge("b", "c");
+		
+		final List<String> order = new CopyOnWriteArrayList<>();
+		graph.execute(executor, new DataGeneratorGraph.NodeTask<String>() {
+			@Override
+			public void run(String node) throws Exception {
+				order.add(node);
+			}
+		});
+		
+		assertEquals(Arrays.asList("a", "b", "c"), order);
+	}
+	
+	@Test
+	@RoxableTest(key = "e5a1f8c2907b")
+	public void failingNodeShouldPreventTheDependentNodesToBeRun() throws Exception {
+		DataGeneratorGraph<String> graph = new DataGeneratorGraph<>();
+		graph.addNode("a");
+		graph.addNode("b");
+		graph.addEdge("a", "b");
+		
+		final List<String> order = new CopyOnWriteArrayList<>();
+		try {
+			graph.execute(executor, new DataGeneratorGraph.NodeTask<String>() {
+				@Override
+				public void run(String node) throws Exception {
+					order.add(node);
+					throw new IllegalStateException("Failure of " + node);
+				}
+			});
+			fail("The failure of the node should be thrown");
+		}
+		catch (IllegalStateException ise) {
+			assertEquals("Failure of a", ise.getMessage());
+		}
+		
+		assertEquals(Arrays.asList("a"), order);
+	}
+}
@@ -1,24 +1,60 @@
 package com.lotaris.junitee.generator;
 
 import com.lotaris.junitee.dummy.AbstractOrderGenerator;
+import com.lotaris.junitee.dummy.AllocatorGenerator;
+import com.lotaris.junitee.dummy.AbstractParallelGenerator;
+import com.lotaris.junitee.dummy.AuditEntity;
 import com.lotaris.junitee.dummy.BeforeCrashGenerator;
+import com.lotaris.junitee.dummy.ChildEntity;
 import com.lotaris.junitee.dummy.DataGeneratorWithDao;
 import com.lotaris.junitee.dummy.DataGeneratorWithInheritanceAndDaos;
 import com.lotaris.junitee.dummy.DoNotCrashGenerator;
+import com.lotaris.junitee.dummy.NamespaceGenerator;
 import com.lotaris.junitee.dummy.OrderOneGenerator;
 import com.lotaris.junitee.dummy.OrderTwoGenerator;
+import com.lotaris.junitee.dummy.ParentEntity;
+import com.lotaris.junitee.dummy.ParallelAuditGenerator;
+import com.lotaris.junitee.dummy.ParallelChildGenerator;
+import com.lotaris.junitee.dummy.ParallelFirstGenerator;
+import com.lotaris.junitee.dummy.ParallelIndependentGenerator;
+import com.lotaris.junitee.dummy.ParallelParentGenerator;
+import com.lotaris.junitee.dummy.ParallelSecondGenerator;
+import com.lotaris.junitee.dummy.ParallelThirdGenerator;
+import com.lotaris.junitee.dummy.ReferencesFirstGenerator;
+import com.lotaris.junitee.dummy.StreamingGenerator;
+import com.lotaris.junitee.dummy.SyntheticGenerator;
+import com.lotaris.junitee.dummy.complex.ComplexDataGenerator;
+import com.lotaris.junitee.fixture.FixtureCache;
 import com.lotaris.rox.annotations.RoxableTest;
+import java.io.File;
 import java.lang.annotation.Annotation;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import javax.persistence.PessimisticLockException;
+import javax.persistence.Query;
+import javax.persistence.RollbackException;
+import javax.persistence.metamodel.Metamodel;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.mockito.internal.util.reflection.Whitebox;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -49,24 +85,8 @@ public class DataGeneratorManagerTest {
 
 	@Test
 	@RoxableTest(key = "731192f53198")
-	@SuppressWarnings("unchecked")
 	public void failingBeforeMethodOnGeneratorShouldAvoidStatementToBeEvaluated() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
-			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { BeforeCrashGenerator.class };
-			}
-
-			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
-			}
-
-			@Override
-			public boolean executeCleanup() {
-				return true;
-			}
-		};
+		DataGenerator annotation = dataGenerator(BeforeCrashGenerator.class);
 		
 		Description description = Description.createSuiteDescription("Some description", annotation);
 		
@@ -74,44 +94,37 @@ public class DataGeneratorManagerTest {
 		
 		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
 		
+		Throwable failure = null;
 		try {
 			gm.apply(statement, description).evaluate();
 		}
-		catch (Throwable t) { /* Do nothing with the exception to let the test do its job */ }
+		catch (Throwable t) { failure = t; }
 
 		// The test evaluate method should never be called when before failed
 		verify(statement, never()).evaluate();
 		
-		// Save for the after method on the generator
-		assertEquals(1, gm.getDataGenerator(BeforeCrashGenerator.class).count);
+		// The failure of the generate method of the generator is reported
+		assertNotNull(failure);
+		assertEquals("Exception to validate that the after is not called.", rootCause(failure).getMessage());
 	}
 	
 	@Test
 	@RoxableTest(key = "5baec6dfc545")
-	@SuppressWarnings("unchecked")
 	public void failingEvaluateMethodOnTestMethodShouldAvoidAfterToBeEvaluatedWhenExecuteAfterIsFalse() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
-			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DoNotCrashGenerator.class };
-			}
-
-			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
-			}
-
-			@Override
-			public boolean executeCleanup() {
-				return false;
-			}
-		};
+		DataGenerator annotation = dataGenerator(false, CleanupStrategy.DEFAULT, DoNotCrashGenerator.class);
 		
 		Description description = Description.createSuiteDescription("Some description", annotation);
 		
-		doThrow(Exception.class).when(statement).evaluate();
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final List<DoNotCrashGenerator> generators = new ArrayList<>();
 		
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		whenTestRuns(new TestAction() {
+			@Override
+			public void run() throws Throwable {
+				generators.add(gm.getDataGenerator(DoNotCrashGenerator.class));
+				throw new Exception();
+			}
+		});
 		
 		try {
 			gm.apply(statement, description).evaluate();
@@ -119,58 +132,32 @@ public class DataGeneratorManagerTest {
 		catch (Throwable t) { /* Do nothing with the exception to let the test do its job */ }
 		
 		// After should not be called when a test fails
-		assertEquals(1, gm.getDataGenerator(DoNotCrashGenerator.class).count);
+		assertEquals(1, generators.get(0).count);
 	}
 
 	@Test
 	@RoxableTest(key = "4d88eb036a72")
-	@SuppressWarnings("unchecked")
 	public void generatorForGivenDescrptionShouldBeAvailableIntoTheTest() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
-			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DoNotCrashGenerator.class };
-			}
-
-			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
-			}
-			
-			@Override
-			public boolean executeCleanup() {
-				return true;
-			}
-		};
+		DataGenerator annotation = dataGenerator(DoNotCrashGenerator.class);
 		
 		Description description = Description.createSuiteDescription("Some description", annotation);
 		
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		whenTestRuns(new TestAction() {
+			@Override
+			public void run() throws Throwable {
+				assertNotNull(gm.getDataGenerator(DoNotCrashGenerator.class));
+			}
+		});
+		
 		gm.apply(statement, description).evaluate();
-
-		assertNotNull(gm.getDataGenerator(DoNotCrashGenerator.class));
+		verify(statement).evaluate();
 	}
 
 	@Test
 	@RoxableTest(key = "f7fd1e684d9a")
-	@SuppressWarnings("unchecked")
 	public void registeringTwoGeneratorOfTheSameTypeShouldBeForbiden() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
-			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DoNotCrashGenerator.class, DoNotCrashGenerator.class };
-			}
-
-			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
-			}
-
-			@Override
-			public boolean executeCleanup() {
-				return true;
-			}
-		};
+		DataGenerator annotation = dataGenerator(DoNotCrashGenerator.class, DoNotCrashGenerator.class);
 		
 		Description description = Description.createSuiteDescription("Some description", annotation);
 		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
@@ -184,186 +171,1016 @@ public class DataGeneratorManagerTest {
 
 	@Test
 	@RoxableTest(key = "97515a548141")
-	@SuppressWarnings("unchecked")
 	public void generatorWithDaoShouldHaveTheDaoNotNull() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		whenTestRuns(new TestAction() {
 			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DataGeneratorWithDao.class };
+			public void run() throws Throwable {
+				assertNotNull(gm.getDataGenerator(DataGeneratorWithDao.class).firstDao);
 			}
+		});
+		
+		gm.apply(statement, description).evaluate();
+		verify(statement).evaluate();
+	}
 
+	@Test
+	@RoxableTest(key = "9b956721084f")
+	public void inheritedGeneratorWithDaoShouldHaveAllInheritedDaoNotNull() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithInheritanceAndDaos.class);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		whenTestRuns(new TestAction() {
 			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
+			public void run() throws Throwable {
+				assertNotNull(gm.getDataGenerator(DataGeneratorWithInheritanceAndDaos.class).firstDao);
+				assertNotNull(gm.getDataGenerator(DataGeneratorWithInheritanceAndDaos.class).secondDao);
 			}
+		});
+		
+		gm.apply(statement, description).evaluate();
+		verify(statement).evaluate();
+	}
+	
+	@Test
+	@RoxableTest(key = "147fc8668303")
+	public void callingCreateMethodsShouldBeWrappedIntoTransaction() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
 
+		whenTestRuns(new TestAction() {
 			@Override
-			public boolean executeCleanup() {
-				return true;
+			public void run() throws Throwable {
+				// The generate of the data generator was run in one transaction
+				verify(entityTransaction, times(1)).begin();
+				verify(entityTransaction, times(1)).commit();
+				
+				gm.getDataGenerator(DataGeneratorWithDao.class).createSomething();
+				verify(entityTransaction, times(2)).begin();
+				verify(entityTransaction, times(2)).commit();
+
+				Object obj = gm.getDataGenerator(DataGeneratorWithDao.class).createSomethingElse();
+				assertNotNull(obj);
+				verify(entityTransaction, times(3)).begin();
+				verify(entityTransaction, times(3)).commit();
 			}
-		};
+		});
+		
+		// The cleanup of the data generator is run in one more transaction
+		gm.apply(statement, description).evaluate();
+		verify(statement).evaluate();
+		verify(entityTransaction, times(4)).begin();
+		verify(entityTransaction, times(4)).commit();
+	}
+
+	@Test
+	@RoxableTest(key = "238e7a9ebb8a")
+	public void callingDeleteMethodsShouldBeWrappedIntoTransaction() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
 		
 		Description description = Description.createSuiteDescription("Some description", annotation);
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+
+		whenTestRuns(new TestAction() {
+			@Override
+			public void run() throws Throwable {
+				gm.getDataGenerator(DataGeneratorWithDao.class).deleteSomething();
+				verify(entityTransaction, times(2)).begin();
+				verify(entityTransaction, times(2)).commit();
+
+				Object obj = gm.getDataGenerator(DataGeneratorWithDao.class).deleteSomethingElse();
+				assertNotNull(obj);
+				verify(entityTransaction, times(3)).begin();
+				verify(entityTransaction, times(3)).commit();
+			}
+		});
+		
+		// Evaluate will call two more times begin() and commit() for the generate/cleanup data of the data generator
 		gm.apply(statement, description).evaluate();
+		verify(statement).evaluate();
+		verify(entityTransaction, times(4)).begin();
+		verify(entityTransaction, times(4)).commit();
+	}
+
+	@Test
+	@RoxableTest(key = "c5113083fadf")
+	public void callingUpdateMethodsShouldBeWrappedIntoTransaction() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
 
-		assertNotNull(gm.getDataGenerator(DataGeneratorWithDao.class).firstDao);
+		whenTestRuns(new TestAction() {
+			@Override
+			public void run() throws Throwable {
+				gm.getDataGenerator(DataGeneratorWithDao.class).updateSomething();
+				verify(entityTransaction, times(2)).begin();
+				verify(entityTransaction, times(2)).commit();
+
+				Object obj = gm.getDataGenerator(DataGeneratorWithDao.class).updateSomethingElse();
+				assertNotNull(obj);
+				verify(entityTransaction, times(3)).begin();
+				verify(entityTransaction, times(3)).commit();
+			}
+		});
+		
+		// Evaluate will call two more times begin() and commit() for the generate/cleanup data of the data generator
+		gm.apply(statement, description).evaluate();
+		verify(statement).evaluate();
+		verify(entityTransaction, times(4)).begin();
+		verify(entityTransaction, times(4)).commit();
 	}
+	
+	@Test
+	@RoxableTest(key = "3b2f42db4258")
+	public void twoDataGeneratorMustEnsureTheRightOrderOfExecutionOfCleanupAndGenerate() throws Throwable {
+		DataGenerator annotation = dataGenerator(OrderOneGenerator.class, OrderTwoGenerator.class);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		
+		// Evaluate will call two times begin() and commit() for the generate/cleanup data of the data generator
+		gm.apply(statement, description).evaluate();
+		
+		assertEquals("1234", AbstractOrderGenerator.order);
+	}	
 
 	@Test
-	@RoxableTest(key = "9b956721084f")
-	@SuppressWarnings("unchecked")
-	public void inheritedGeneratorWithDaoShouldHaveAllInheritedDaoNotNull() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
+	@RoxableTest(key = "d93a71e5c20b")
+	public void generatorsOfTheSameTypeShouldBeNewInstancesOfTheSameProxyClassForEachTest() throws Throwable {
+		DataGenerator annotation = dataGenerator(DoNotCrashGenerator.class);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final List<DoNotCrashGenerator> generators = new ArrayList<>();
+		
+		whenTestRuns(new TestAction() {
 			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DataGeneratorWithInheritanceAndDaos.class };
+			public void run() throws Throwable {
+				generators.add(gm.getDataGenerator(DoNotCrashGenerator.class));
 			}
+		});
+		
+		gm.apply(statement, description).evaluate();
+		gm.apply(statement, description).evaluate();
+		DoNotCrashGenerator first = generators.get(0);
+		DoNotCrashGenerator second = generators.get(1);
+		
+		assertNotSame(first, second);
+		assertSame(first.getClass(), second.getClass());
+		assertEquals(1, second.count);
+	}
 
+	@Test
+	@RoxableTest(key = "6a0e4c1fb93d")
+	public void parallelDataGeneratorsShouldRespectTheDependenciesForGenerateAndCleanup() throws Throwable {
+		DataGenerator annotation = dataGenerator(ParallelThirdGenerator.class, ParallelSecondGenerator.class, ParallelIndependentGenerator.class, ParallelFirstGenerator.class);
+		
+		AbstractParallelGenerator.order.clear();
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).parallel(4);
+		gm.apply(statement, description).evaluate();
+		
+		List<String> order = AbstractParallelGenerator.order;
+		assertTrue("First generator should run before the second one", order.indexOf("+ParallelFirstGenerator") < order.indexOf("+ParallelSecondGenerator"));
+		assertTrue("Second generator should run before the third one", order.indexOf("+ParallelSecondGenerator") < order.indexOf("+ParallelThirdGenerator"));
+		assertEquals("Cleanup should be done in the reverse order of the dependencies", 
+			Arrays.asList("-ParallelThirdGenerator", "-ParallelSecondGenerator", "-ParallelFirstGenerator", "-ParallelIndependentGenerator"), 
+			order.subList(4, 8));
+		
+		// One entity manager for the test and one for each data generator, each generator with its own transactions
+		verify(entityManagerFactory, times(5)).createEntityManager();
+		verify(entityTransaction, times(8)).begin();
+		verify(entityTransaction, times(8)).commit();
+	}
+
+	@Test
+	@RoxableTest(key = "b8d26f4e0a17")
+	public void entityManagersOfTheTestShouldBeClosedAfterTheCleanup() throws Throwable {
+		DataGenerator annotation = dataGenerator(ParallelThirdGenerator.class, ParallelSecondGenerator.class, ParallelIndependentGenerator.class, ParallelFirstGenerator.class);
+		
+		final List<EntityManager> created = new CopyOnWriteArrayList<>();
+		when(entityManagerFactory.createEntityManager()).thenAnswer(new Answer<EntityManager>() {
 			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
+			public EntityManager answer(InvocationOnMock invocation) throws Throwable {
+				EntityManager em = mock(EntityManager.class);
+				when(em.getTransaction()).thenReturn(entityTransaction);
+				when(em.isOpen()).thenReturn(true);
+				created.add(em);
+				return em;
 			}
+		});
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).parallel(4);
+		gm.apply(statement, description).evaluate();
+		gm.apply(statement, description).evaluate();
+		
+		// One entity manager for each test and for each data generator of the tests
+		assertEquals(10, created.size());
+		for (EntityManager em : created) {
+			verify(em).close();
+		}
+	}
 
+	@Test
+	@RoxableTest(key = "e27b0c5d94a1")
+	public void testsRunConcurrentlyWithTheSameManagerShouldSeeTheirOwnGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
+		
+		final Description description = Description.createSuiteDescription("Some description", annotation);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final List<IDataGenerator> seen = new CopyOnWriteArrayList<>();
+		final List<Throwable> failures = new CopyOnWriteArrayList<>();
+		
+		Runnable test = new Runnable() {
 			@Override
-			public boolean executeCleanup() {
-				return true;
+			public void run() {
+				try {
+					gm.apply(new Statement() {
+						@Override
+						public void evaluate() throws Throwable {
+							IDataGenerator generator = gm.getDataGenerator(DataGeneratorWithDao.class);
+							
+							// Wait for the other test to have generated its data
+							barrier.await(5, TimeUnit.SECONDS);
+							
+							assertSame(generator, gm.getDataGenerator(DataGeneratorWithDao.class));
+							seen.add(generator);
+						}
+					}, description).evaluate();
+				}
+				catch (Throwable t) {
+					failures.add(t);
+				}
 			}
 		};
 		
+		Thread first = new Thread(test);
+		Thread second = new Thread(test);
+		first.start();
+		second.start();
+		first.join();
+		second.join();
+		
+		assertTrue("No failure expected but was " + failures, failures.isEmpty());
+		assertEquals(2, seen.size());
+		assertNotSame(seen.get(0), seen.get(1));
+	}
+
+	@Test
+	@RoxableTest(key = "0d9b6c3f8e24")
+	public void asyncCleanupShouldBeDoneByThePipeline() throws Throwable {
+		DataGenerator annotation = dataGenerator(OrderOneGenerator.class, OrderTwoGenerator.class);
+		
+		AbstractOrderGenerator.order = "";
+		
 		Description description = Description.createSuiteDescription("Some description", annotation);
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		CleanupPipeline pipeline = new CleanupPipeline(1);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).asyncCleanup(pipeline);
 		gm.apply(statement, description).evaluate();
+		pipeline.await();
+		
+		assertEquals("1234", AbstractOrderGenerator.order);
+		AbstractOrderGenerator.order = "";
+		
+		verify(entityTransaction, times(2)).begin();
+		verify(entityTransaction, times(2)).commit();
+	}
 
-		assertNotNull(gm.getDataGenerator(DataGeneratorWithInheritanceAndDaos.class).firstDao);
-		assertNotNull(gm.getDataGenerator(DataGeneratorWithInheritanceAndDaos.class).secondDao);
+	@Test
+	@RoxableTest(key = "5e07b1c2d9f3")
+	public void entitiesOfStreamingGeneratorsShouldBePersistedByBatches() throws Throwable {
+		DataGenerator annotation = dataGenerator(StreamingGenerator.class);
+		
+		StreamingGenerator.numberToProduce = 5;
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).streamingBatchSize(2);
+		gm.apply(statement, description).evaluate();
+		
+		for (int i = 0; i < 5; i++) {
+			verify(entityManager).persist("entity-" + i);
+		}
+		
+		// Three batches flushed in the transaction of the generation
+		verify(entityManager, times(3)).flush();
+		verify(entityTransaction, times(2)).begin();
+		verify(entityTransaction, times(2)).commit();
 	}
 	
 	@Test
-	@RoxableTest(key = "147fc8668303")
-	@SuppressWarnings("unchecked")
-	public void callingCreateMethodsShouldBeWrappedIntoTransaction() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
+	@RoxableTest(key = "f3b80d5c2a96")
+	public void entitiesOfStreamingGeneratorsShouldBeProducedInTheNamespaceOfTheTest() throws Throwable {
+		DataGenerator annotation = dataGenerator(StreamingGenerator.class);
+		
+		StreamingGenerator.numberToProduce = 1;
+		StreamingGenerator.producerNamespace = null;
+		
+		final AtomicReference<String> testNamespace = new AtomicReference<>();
+		doAnswer(new Answer<Void>() {
 			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DataGeneratorWithDao.class };
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				testNamespace.set(DataNamespace.current());
+				return null;
 			}
+		}).when(statement).evaluate();
+		
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		gm.apply(statement, Description.createSuiteDescription("Some description", annotation)).evaluate();
+		
+		assertNotNull(testNamespace.get());
+		assertEquals(testNamespace.get(), StreamingGenerator.producerNamespace);
+	}
+	
+	@Test
+	@RoxableTest(key = "a48c3f09e7b2")
+	public void failingStreamingGeneratorShouldAvoidStatementToBeEvaluated() throws Throwable {
+		DataGenerator annotation = dataGenerator(StreamingGenerator.class);
+		
+		StreamingGenerator.numberToProduce = -1;
+		when(entityTransaction.isActive()).thenReturn(true);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		
+		try {
+			gm.apply(statement, description).evaluate();
+			fail("The generation should fail");
+		}
+		catch (DataGeneratorException dge) {
+			assertTrue(dge.getCause() instanceof DataGeneratorException);
+			assertTrue(dge.getCause().getCause() instanceof IllegalStateException);
+		}
+		
+		verify(statement, never()).evaluate();
+		verify(entityManager, never()).persist(any());
+		verify(entityTransaction).rollback();
+	}
 
+	@Test
+	@RoxableTest(key = "c61f2a8e4d07")
+	public void classScopedGenerationShouldRunOnceAndRollbackEachTest() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
+		
+		// Simulate the state of the transaction
+		final boolean[] active = new boolean[] { false };
+		Answer<Void> activate = new Answer<Void>() {
 			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				active[0] = true;
+				return null;
 			}
-
+		};
+		Answer<Void> deactivate = new Answer<Void>() {
 			@Override
-			public boolean executeCleanup() {
-				return true;
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				active[0] = false;
+				return null;
 			}
 		};
+		doAnswer(activate).when(entityTransaction).begin();
+		doAnswer(deactivate).when(entityTransaction).commit();
+		doAnswer(deactivate).when(entityTransaction).rollback();
+		when(entityTransaction.isActive()).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				return active[0];
+			}
+		});
 		
-		Description description = Description.createSuiteDescription("Some description", annotation);
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
-
-		// Evaluate will call two times begin() and commit() for the generate and cleanup data of the data generator
-		gm.apply(statement, description).evaluate();
-		verify(entityTransaction, times(2)).begin();
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final TestRule rollback = gm.rollbackEachTest();
+		final Statement test = new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				assertSame(entityManager, gm.getEntityManager());
+				gm.getDataGenerator(DataGeneratorWithDao.class).createSomething();
+			}
+		};
+		
+		Statement testClass = new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				rollback.apply(test, Description.createTestDescription(Object.class, "first")).evaluate();
+				rollback.apply(test, Description.createTestDescription(Object.class, "second")).evaluate();
+			}
+		};
+		
+		gm.apply(testClass, Description.createSuiteDescription("Some class", annotation)).evaluate();
+		
+		// One transaction for the generate and cleanup of the class and one rolled back for each test
+		verify(entityManagerFactory, times(1)).createEntityManager();
+		verify(entityTransaction, times(4)).begin();
 		verify(entityTransaction, times(2)).commit();
+		verify(entityTransaction, times(2)).rollback();
+	}
+
+	@Test
+	@RoxableTest(key = "4c9e1a7b3d05")
+	public void testsOfTheClassRunByOtherThreadsShouldBeRolledBack() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
 		
-		// Dirty hack to artificially create a situation where the next method calls are simulated to be run
-		// inside the test method
-		Whitebox.setInternalState(gm, "testRunning", true);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final TestRule rollback = gm.rollbackEachTest();
+		final List<Throwable> failures = new CopyOnWriteArrayList<>();
+		final Statement test = new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				gm.getDataGenerator(DataGeneratorWithDao.class).createSomething();
+			}
+		};
 		
-		gm.getDataGenerator(DataGeneratorWithDao.class).createSomething();
-		verify(entityTransaction, times(3)).begin();
-		verify(entityTransaction, times(3)).commit();
+		Description classDescription = Description.createSuiteDescription("Some class", annotation);
+		classDescription.addChild(Description.createTestDescription(Object.class, "first"));
+		classDescription.addChild(Description.createTestDescription(Object.class, "second"));
 		
-		Object obj = gm.getDataGenerator(DataGeneratorWithDao.class).createSomethingElse();
-		assertNotNull(obj);
+		Statement testClass = new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				// Simulate the parallel methods of surefire, the tests are run by other threads
+				List<Thread> threads = new ArrayList<>();
+				for (final String name : Arrays.asList("first", "second")) {
+					threads.add(new Thread(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								rollback.apply(test, Description.createTestDescription(Object.class, name)).evaluate();
+							}
+							catch (Throwable t) {
+								failures.add(t);
+							}
+						}
+					}));
+				}
+				for (Thread thread : threads) {
+					thread.start();
+				}
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			}
+		};
+		
+		when(entityTransaction.isActive()).thenReturn(true);
+		gm.apply(testClass, classDescription).evaluate();
+		
+		assertTrue("No failure expected but was " + failures, failures.isEmpty());
 		verify(entityTransaction, times(4)).begin();
-		verify(entityTransaction, times(4)).commit();
+		verify(entityTransaction, times(2)).rollback();
 	}
 
 	@Test
-	@RoxableTest(key = "238e7a9ebb8a")
-	@SuppressWarnings("unchecked")
-	public void callingDeleteMethodsShouldBeWrappedIntoTransaction() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
+	@RoxableTest(key = "8e3b7f51c2a9")
+	public void sharedDataGeneratorsShouldBeKeptUntilTheSuiteIsDone() throws Throwable {
+		SharedDataGenerator annotation = new SharedDataGenerator() {
 			@Override
+			@SuppressWarnings("unchecked")
 			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DataGeneratorWithDao.class };
+				return new Class[] { OrderOneGenerator.class };
 			}
 
 			@Override
 			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
+				return SharedDataGenerator.class;
 			}
-
+		};
+		
+		AbstractOrderGenerator.order = "";
+		
+		final Description testDescription = Description.createSuiteDescription("Some test", annotation);
+		final DataGeneratorManager suiteManager = new DataGeneratorManager(entityManagerFactory);
+		
+		Statement suite = new Statement() {
 			@Override
-			public boolean executeCleanup() {
-				return true;
+			public void evaluate() throws Throwable {
+				for (int i = 0; i < 2; i++) {
+					final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+					gm.apply(new Statement() {
+						@Override
+						public void evaluate() throws Throwable {
+							assertNotNull(gm.getDataGenerator(OrderOneGenerator.class));
+						}
+					}, testDescription).evaluate();
+				}
+				
+				assertEquals("The shared data generator should be generated once and kept by the suite", "1", AbstractOrderGenerator.order);
 			}
 		};
 		
+		// The shared data generator is kept after its last user for the tests run later
+		new DataGeneratorManager(entityManagerFactory).apply(statement, testDescription).evaluate();
+		assertEquals("1", AbstractOrderGenerator.order);
+		
+		Description suiteDescription = Description.createSuiteDescription("Some suite", annotation);
+		Description classDescription = Description.createSuiteDescription(Object.class);
+		classDescription.addChild(Description.createTestDescription(Object.class, "test"));
+		suiteDescription.addChild(classDescription);
+		suiteManager.apply(suite, suiteDescription).evaluate();
+		
+		assertEquals("The shared data generator should be cleaned up at the end of the suite", "14", AbstractOrderGenerator.order);
+		AbstractOrderGenerator.order = "";
+	}
+
+	@Test
+	@RoxableTest(key = "f1c84e27a6d3")
+	public void datasetOfReadOnlyTestShouldBeReusedByTheNextTestWithTheSameGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(OrderOneGenerator.class, OrderTwoGenerator.class);
+		
+		AbstractOrderGenerator.order = "";
 		Description description = Description.createSuiteDescription("Some description", annotation);
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		
+		final List<IDataGenerator> generators = new ArrayList<>();
+		
+		// The first test generates the dataset and keeps it as it is read only
+		final DataGeneratorManager first = new DataGeneratorManager(entityManagerFactory).reuseDatasets();
+		first.apply(new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				generators.add(first.getDataGenerator(OrderOneGenerator.class));
+			}
+		}, description).evaluate();
+		assertEquals("12", AbstractOrderGenerator.order);
+		
+		// The second test reuses it but writes data
+		final DataGeneratorManager second = new DataGeneratorManager(entityManagerFactory).reuseDatasets();
+		second.apply(new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				generators.add(second.getDataGenerator(OrderOneGenerator.class));
+				second.getEntityManager().persist(new Object());
+			}
+		}, description).evaluate();
+		assertSame(generators.get(0), generators.get(1));
+		assertEquals("The dirty dataset should be cleaned up", "1234", AbstractOrderGenerator.order);
+		
+		// The third test generates a new dataset retained until the release
+		final DataGeneratorManager third = new DataGeneratorManager(entityManagerFactory).reuseDatasets();
+		third.apply(new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				generators.add(third.getDataGenerator(OrderOneGenerator.class));
+			}
+		}, description).evaluate();
+		assertNotSame(generators.get(0), generators.get(2));
+		assertEquals("123412", AbstractOrderGenerator.order);
+		
+		DataGeneratorManager.releaseRetainedDataset();
+		assertEquals("12341234", AbstractOrderGenerator.order);
+		verify(entityManagerFactory, times(2)).createEntityManager();
+		AbstractOrderGenerator.order = "";
+	}
 
-		// Evaluate will call two times begin() and commit() for the generate/cleanup data of the data generator
-		gm.apply(statement, description).evaluate();
-	
-		gm.getDataGenerator(DataGeneratorWithDao.class).deleteSomething();
-		verify(entityTransaction, times(3)).begin();
-		verify(entityTransaction, times(3)).commit();
+	@Test
+	@RoxableTest(key = "97d2e0b4f8a6")
+	public void fixtureRecordedOnceShouldBeInsertedInsteadOfRunningTheGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(OrderOneGenerator.class, OrderTwoGenerator.class);
 		
-		Object obj = gm.getDataGenerator(DataGeneratorWithDao.class).deleteSomethingElse();
-		assertNotNull(obj);
-		verify(entityTransaction, times(4)).begin();
-		verify(entityTransaction, times(4)).commit();
+		File directory = Files.createTempDirectory("fixtures").toFile();
+		when(entityManager.unwrap(Connection.class)).thenReturn(mock(Connection.class));
+		
+		AbstractOrderGenerator.order = "";
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		
+		try {
+			// The first run records the fixture
+			new DataGeneratorManager(entityManagerFactory).fixtureCache(new FixtureCache(directory)).apply(statement, description).evaluate();
+			assertEquals("1234", AbstractOrderGenerator.order);
+			assertEquals(1, directory.listFiles().length);
+
+			// The second run inserts it without running the data generators
+			final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).fixtureCache(new FixtureCache(directory));
+			gm.apply(new Statement() {
+				@Override
+				public void evaluate() throws Throwable {
+					assertNotNull(gm.getDataGenerator(OrderOneGenerator.class));
+				}
+			}, description).evaluate();
+			assertEquals("1234", AbstractOrderGenerator.order);
+			verify(entityTransaction, times(4)).commit();
+		}
+		finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+			AbstractOrderGenerator.order = "";
+		}
 	}
 
 	@Test
-	@RoxableTest(key = "c5113083fadf")
-	@SuppressWarnings("unchecked")
-	public void callingUpdateMethodsShouldBeWrappedIntoTransaction() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
+	@RoxableTest(key = "e9a3c5f1b086")
+	public void fixtureInsertedByAnotherTestShouldBeReplacedByTheDataGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(OrderOneGenerator.class, OrderTwoGenerator.class);
+		
+		final File directory = Files.createTempDirectory("fixtures").toFile();
+		when(entityManager.unwrap(Connection.class)).thenReturn(mock(Connection.class));
+		
+		AbstractOrderGenerator.order = "";
+		final Description description = Description.createSuiteDescription("Some description", annotation);
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).fixtureCache(new FixtureCache(directory)).parallel(2);
+		
+		try {
+			// The first run records the fixture
+			gm.apply(statement, description).evaluate();
+			assertEquals("1234", AbstractOrderGenerator.order);
+			
+			gm.apply(new Statement() {
+				@Override
+				public void evaluate() throws Throwable {
+					// The rows of the fixture are in the database, a test run at the same time runs the data generators
+					new DataGeneratorManager(entityManagerFactory).fixtureCache(new FixtureCache(directory)).apply(statement, description).evaluate();
+				}
+			}, description).evaluate();
+			assertEquals("12341234", AbstractOrderGenerator.order);
+			
+			// The rows of the fixture are deleted, the fixture can be inserted again
+			gm.apply(statement, description).evaluate();
+			assertEquals("12341234", AbstractOrderGenerator.order);
+			
+			// The data generators run through the entity manager of the test to capture their rows
+			verify(entityManagerFactory, times(4)).createEntityManager();
+		}
+		finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+			AbstractOrderGenerator.order = "";
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "1d7b4e8a0c63")
+	public void fixtureThatCannotBeRecordedShouldNotFailTheTest() throws Throwable {
+		DataGenerator annotation = dataGenerator(OrderOneGenerator.class);
+		
+		File notADirectory = File.createTempFile("fixtures", ".tmp");
+		when(entityManager.unwrap(Connection.class)).thenReturn(mock(Connection.class));
+		
+		AbstractOrderGenerator.order = "";
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		
+		try {
+			new DataGeneratorManager(entityManagerFactory).fixtureCache(new FixtureCache(notADirectory)).apply(statement, description).evaluate();
+			
+			verify(statement).evaluate();
+			assertEquals("14", AbstractOrderGenerator.order);
+		}
+		finally {
+			notADirectory.delete();
+			AbstractOrderGenerator.order = "";
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "3f5a9d7c0e62")
+	public void trackedEntitiesShouldBeDeletedInsteadOfRunningTheCleanupOfTheGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(OrderOneGenerator.class);
+		
+		AbstractOrderGenerator.order = "";
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).trackEntities();
+		gm.apply(new Statement() {
 			@Override
-			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { DataGeneratorWithDao.class };
+			public void evaluate() throws Throwable {
+				// No entity persisted, nothing to delete
 			}
+		}, description).evaluate();
+		
+		assertEquals("The cleanup of the generator should be replaced", "1", AbstractOrderGenerator.order);
+		verify(entityManager, never()).createQuery(anyString());
+		verify(entityTransaction, times(1)).commit();
+		AbstractOrderGenerator.order = "";
+	}
 
+	@Test
+	@RoxableTest(key = "8b3e0f7d1c52")
+	public void tablesTouchedDuringTheTestShouldBeTruncatedInsteadOfRunningTheCleanupOfTheGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(true, CleanupStrategy.TRUNCATE, OrderOneGenerator.class);
+		
+		Query query = mock(Query.class);
+		Metamodel metamodel = EntityDependencyGraphTest.metamodel(
+			EntityDependencyGraphTest.entityType(ParentEntity.class), EntityDependencyGraphTest.entityType(ChildEntity.class));
+		when(entityManager.getMetamodel()).thenReturn(metamodel);
+		when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+		when(entityManager.createQuery(anyString())).thenReturn(query);
+		
+		AbstractOrderGenerator.order = "";
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		gm.apply(new Statement() {
 			@Override
-			public Class<? extends Annotation> annotationType() {
-				return DataGenerator.class;
+			public void evaluate() throws Throwable {
+				gm.getEntityManager().persist(new ChildEntity(10L, new ParentEntity(1L)));
 			}
+		}, description).evaluate();
+		
+		assertEquals("The cleanup of the generator should be replaced", "1", AbstractOrderGenerator.order);
+		verify(entityManager).createNativeQuery("TRUNCATE TABLE ChildEntity");
+		verify(entityManager, never()).createNativeQuery("TRUNCATE TABLE ParentEntity");
+		AbstractOrderGenerator.order = "";
+	}
 
+	@Test
+	@RoxableTest(key = "e6d1a9c47f08")
+	public void cleanupOfTheGeneratorsShouldBeRunWhenTheTablesCannotBeReset() throws Throwable {
+		DataGenerator annotation = dataGenerator(true, CleanupStrategy.TRUNCATE, OrderOneGenerator.class);
+		
+		Query query = mock(Query.class);
+		Metamodel metamodel = EntityDependencyGraphTest.metamodel(
+			EntityDependencyGraphTest.entityType(ParentEntity.class), EntityDependencyGraphTest.entityType(ChildEntity.class));
+		when(entityManager.getMetamodel()).thenReturn(metamodel);
+		when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+		when(entityManager.createQuery(anyString())).thenReturn(query);
+		when(query.executeUpdate()).thenThrow(new PersistenceException("Foreign key violation"));
+		
+		AbstractOrderGenerator.order = "";
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		gm.apply(new Statement() {
 			@Override
-			public boolean executeCleanup() {
-				return true;
+			public void evaluate() throws Throwable {
+				gm.getEntityManager().persist(new ChildEntity(10L, new ParentEntity(1L)));
 			}
-		};
+		}, description).evaluate();
+		
+		assertEquals("The cleanup of the generator should be run", "14", AbstractOrderGenerator.order);
+		verify(entityManager).createNativeQuery("TRUNCATE TABLE ChildEntity");
+		verify(entityManager).createQuery("DELETE FROM ChildEntity e");
+		AbstractOrderGenerator.order = "";
+	}
+
+	@Test
+	@RoxableTest(key = "2b8f6d0a9e34")
+	public void rowsAboveTheWatermarksShouldBeDeletedInsteadOfRunningTheCleanupOfTheGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(true, CleanupStrategy.WATERMARK, OrderOneGenerator.class);
+		
+		Query query = mock(Query.class);
+		Metamodel metamodel = EntityDependencyGraphTest.metamodel(
+			EntityDependencyGraphTest.entityType(ParentEntity.class), EntityDependencyGraphTest.entityType(ChildEntity.class));
+		when(entityManager.getMetamodel()).thenReturn(metamodel);
+		when(entityManager.createQuery(anyString())).thenReturn(query);
+		when(query.setParameter(anyString(), any())).thenReturn(query);
+		when(query.getSingleResult()).thenReturn(41L);
 		
+		AbstractOrderGenerator.order = "";
 		Description description = Description.createSuiteDescription("Some description", annotation);
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
 		
-		// Evaluate will call two times begin() and commit() for the generate/cleanup data of the data generator
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		gm.apply(new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				gm.getEntityManager().persist(new ChildEntity(42L, new ParentEntity(1L)));
+			}
+		}, description).evaluate();
+		
+		assertEquals("The cleanup of the generator should be replaced", "1", AbstractOrderGenerator.order);
+		
+		InOrder inOrder = inOrder(entityManager, query);
+		inOrder.verify(entityManager).createQuery("SELECT MAX(e.id) FROM ChildEntity e");
+		inOrder.verify(entityManager).createQuery("DELETE FROM ChildEntity e WHERE e.id > :watermark");
+		inOrder.verify(query).setParameter("watermark", 41L);
+		verify(entityManager, never()).createQuery("DELETE FROM ParentEntity e WHERE e.id > :watermark");
+		AbstractOrderGenerator.order = "";
+	}
+
+	@Test
+	@RoxableTest(key = "d47a0c93e5f1")
+	public void dataGeneratorsWritingUnrelatedTablesShouldBeCleanedUpAtTheSameTime() throws Throwable {
+		DataGenerator annotation = dataGenerator(ParallelParentGenerator.class, ParallelChildGenerator.class, ParallelAuditGenerator.class);
+		
+		Metamodel metamodel = EntityDependencyGraphTest.metamodel(EntityDependencyGraphTest.entityType(ParentEntity.class), 
+			EntityDependencyGraphTest.entityType(ChildEntity.class), EntityDependencyGraphTest.entityType(AuditEntity.class));
+		when(entityManager.getMetamodel()).thenReturn(metamodel);
+		
+		AbstractParallelGenerator.order.clear();
+		
+		// The child and audit cleanups wait for each other, they fail when they are not run at the same time
+		AbstractParallelGenerator.cleanupBarrier = new CyclicBarrier(2);
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).parallel(3).parallelCleanup();
+		
+		try {
+			gm.apply(statement, description).evaluate();
+		}
+		finally {
+			AbstractParallelGenerator.cleanupBarrier = null;
+		}
+		
+		List<String> order = AbstractParallelGenerator.order;
+		assertEquals(6, order.size());
+		assertTrue("The child generator writes a table related to the parent one, it should be cleaned up first", 
+			order.indexOf("-ParallelChildGenerator") < order.indexOf("-ParallelParentGenerator"));
+		assertTrue(order.contains("-ParallelAuditGenerator"));
+		verify(entityTransaction, times(6)).commit();
+	}
+
+	@Test
+	@RoxableTest(key = "7e2c9b05a1d8")
+	public void deadlockVictimsShouldBeRetriedWithTheWritesPassedImmediately() throws Throwable {
+		DataGenerator annotation = dataGenerator(ReferencesFirstGenerator.class);
+		
+		// The first commit is chosen as deadlock victim
+		doThrow(new RollbackException(new PessimisticLockException())).doNothing().when(entityTransaction).commit();
+		
+		ReferencesFirstGenerator.generated = 0;
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).retryDeadlocks(3);
+		gm.apply(statement, description).evaluate();
+		
+		assertEquals(2, ReferencesFirstGenerator.generated);
+		assertEquals(1, gm.getDeadlockRetries());
+		verify(statement).evaluate();
+		
+		// The transaction is no more active when the commit fails
+		verify(entityTransaction, never()).rollback();
+		
+		// The persists reach the entity manager in the order of the calls, once by attempt
+		InOrder inOrder = inOrder(entityManager);
+		inOrder.verify(entityManager).persist(ReferencesFirstGenerator.CHILD);
+		inOrder.verify(entityManager).persist(ReferencesFirstGenerator.PARENT);
+		inOrder.verify(entityManager).persist(ReferencesFirstGenerator.CHILD);
+		inOrder.verify(entityManager).persist(ReferencesFirstGenerator.PARENT);
+	}
+
+	@Test
+	@RoxableTest(key = "b5d07e3a9c14")
+	public void compositeDataGeneratorsShouldBeRetriedWhenChosenAsDeadlockVictim() throws Throwable {
+		DataGenerator annotation = dataGenerator(ComplexDataGenerator.class);
+		
+		// The first commit is chosen as deadlock victim
+		doThrow(new RollbackException(new PessimisticLockException())).doNothing().when(entityTransaction).commit();
+		
+		Description description = Description.createSuiteDescription("Some description", annotation);
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).retryDeadlocks(3);
 		gm.apply(statement, description).evaluate();
 		
-		gm.getDataGenerator(DataGeneratorWithDao.class).updateSomething();
-		verify(entityTransaction, times(3)).begin();
+		assertEquals(1, gm.getDeadlockRetries());
+		verify(statement).evaluate();
 		verify(entityTransaction, times(3)).commit();
+	}
+
+	@Test
+	@RoxableTest(key = "3f8a61c0d95e")
+	public void eachTestShouldGetItsOwnNamespaceDuringTheTestAndTheCallsToItsGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(NamespaceGenerator.class);
 		
-		Object obj = gm.getDataGenerator(DataGeneratorWithDao.class).updateSomethingElse();
-		assertNotNull(obj);
-		verify(entityTransaction, times(4)).begin();
-		verify(entityTransaction, times(4)).commit();
+		final AtomicReference<String> testNamespace = new AtomicReference<>();
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				testNamespace.set(DataNamespace.current());
+				return null;
+			}
+		}).when(statement).evaluate();
+		
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		gm.apply(statement, Description.createSuiteDescription("First description", annotation)).evaluate();
+		
+		assertNotNull(testNamespace.get());
+		assertTrue(testNamespace.get().matches("[a-z0-9]+"));
+		assertEquals(testNamespace.get(), NamespaceGenerator.generateNamespace);
+		assertEquals(testNamespace.get(), NamespaceGenerator.cleanupNamespace);
+		assertNull("The namespace should not leak after the test", DataNamespace.current());
+		
+		String firstNamespace = testNamespace.get();
+		gm.apply(statement, Description.createSuiteDescription("Second description", annotation)).evaluate();
+		assertNotEquals(firstNamespace, testNamespace.get());
+	}
+
+	@Test
+	@RoxableTest(key = "a04d7f3e6b92")
+	public void theUniqueValueAllocatorShouldBeInjectedIntoTheGenerators() throws Throwable {
+		DataGenerator annotation = dataGenerator(AllocatorGenerator.class);
+		
+		final AtomicReference<String> testNamespace = new AtomicReference<>();
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				testNamespace.set(DataNamespace.current());
+				return null;
+			}
+		}).when(statement).evaluate();
+		
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).seed(36);
+		gm.apply(statement, Description.createSuiteDescription("Some description", annotation)).evaluate();
+		
+		assertEquals(36, gm.getUniqueValueAllocator().getSeed());
+		assertEquals(testNamespace.get() + "-10", AllocatorGenerator.name);
+	}
+
+	@Test
+	@RoxableTest(key = "f6c1e93a7b28")
+	public void theCompositeDataGeneratorsShouldGetADifferentAndReproducibleStreamForEachTest() throws Throwable {
+		DataGenerator annotation = dataGenerator(SyntheticGenerator.class);
+		SyntheticGenerator.values.clear();
+		
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory).seed(42);
+		gm.apply(statement, Description.createSuiteDescription("Some description", annotation)).evaluate();
+		gm.apply(statement, Description.createSuiteDescription("Other description", annotation)).evaluate();
+		new DataGeneratorManager(entityManagerFactory).seed(42).apply(statement, Description.createSuiteDescription("Some description", annotation)).evaluate();
+		
+		assertEquals(3, SyntheticGenerator.values.size());
+		assertNotEquals(SyntheticGenerator.values.get(0), SyntheticGenerator.values.get(1));
+		assertEquals(SyntheticGenerator.values.get(0), SyntheticGenerator.values.get(2));
 	}
 	
 	@Test
-	@RoxableTest(key = "3b2f42db4258")
-	@SuppressWarnings("unchecked")
-	public void twoDataGeneratorMustEnsureTheRightOrderOfExecutionOfCleanupAndGenerate() throws Throwable {
-		DataGenerator annotation = new DataGenerator() {
+	@RoxableTest(key = "8d2a6c4f0e19")
+	public void theNamespaceOfTheTestShouldBeReleasedFromTheAllocatorAfterTheCleanup() throws Throwable {
+		DataGenerator annotation = dataGenerator(AllocatorGenerator.class);
+		
+		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		gm.apply(statement, Description.createSuiteDescription("Some description", annotation)).evaluate();
+		gm.apply(statement, Description.createSuiteDescription("Other description", annotation)).evaluate();
+		
+		assertEquals(0, gm.getUniqueValueAllocator().countNamespaces());
+	}
+
+	@Test
+	@RoxableTest(key = "5e07b2c9a4d1")
+	public void theDataGeneratorsShouldNotBeReachableFromAnotherThreadOrAfterTheTest() throws Throwable {
+		DataGenerator annotation = dataGenerator(DataGeneratorWithDao.class);
+		
+		final DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
+		final List<Throwable> failures = new CopyOnWriteArrayList<>();
+		final List<DataGeneratorWithDao> generators = new ArrayList<>();
+		
+		whenTestRuns(new TestAction() {
+			@Override
+			public void run() throws Throwable {
+				generators.add(gm.getDataGenerator(DataGeneratorWithDao.class));
+				
+				Thread other = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							gm.getDataGenerator(DataGeneratorWithDao.class);
+						}
+						catch (Throwable t) {
+							failures.add(t);
+						}
+					}
+				});
+				other.start();
+				other.join();
+			}
+		});
+		
+		gm.apply(statement, Description.createSuiteDescription("Some description", annotation)).evaluate();
+		
+		assertEquals("The context of the test should not be reachable from another thread", 1, failures.size());
+		
+		try {
+			gm.getDataGenerator(DataGeneratorWithDao.class);
+			fail("The context of the test should be removed after the test");
+		}
+		catch (RuntimeException re) {
+			assertTrue(re.getCause() instanceof DataGeneratorException);
+		}
+		
+		// The update and delete methods called outside of the test are not wrapped into a transaction
+		verify(entityTransaction, times(2)).begin();
+		generators.get(0).updateSomething();
+		generators.get(0).deleteSomething();
+		verify(entityTransaction, times(2)).begin();
+	}
+
+	/**
+	 * @param dataGeneratorClasses The data generators
+	 * @return The data generator annotation with the cleanup executed and the default cleanup strategy
+	 */
+	@SafeVarargs
+	private static DataGenerator dataGenerator(Class<? extends IDataGenerator>... dataGeneratorClasses) {
+		return dataGenerator(true, CleanupStrategy.DEFAULT, dataGeneratorClasses);
+	}
+
+	/**
+	 * @param executeCleanup True to execute the cleanup
+	 * @param cleanupStrategy The cleanup strategy
+	 * @param dataGeneratorClasses The data generators
+	 * @return The data generator annotation
+	 */
+	@SafeVarargs
+	private static DataGenerator dataGenerator(final boolean executeCleanup, final CleanupStrategy cleanupStrategy, 
+		final Class<? extends IDataGenerator>... dataGeneratorClasses) {
+		return new DataGenerator() {
 			@Override
 			public Class<? extends IDataGenerator>[] value() {
-				return new Class[] { OrderOneGenerator.class, OrderTwoGenerator.class };
+				return dataGeneratorClasses;
 			}
 
 			@Override
@@ -373,16 +1190,47 @@ public class DataGeneratorManagerTest {
 
 			@Override
 			public boolean executeCleanup() {
-				return true;
+				return executeCleanup;
+			}
+
+			@Override
+			public CleanupStrategy cleanupStrategy() {
+				return cleanupStrategy;
 			}
 		};
-		
-		Description description = Description.createSuiteDescription("Some description", annotation);
-		DataGeneratorManager gm = new DataGeneratorManager(entityManagerFactory);
-		
-		// Evaluate will call two times begin() and commit() for the generate/cleanup data of the data generator
-		gm.apply(statement, description).evaluate();
-		
-		assertEquals("1234", AbstractOrderGenerator.order);
-	}	
+	}
+
+	/**
+	 * @param t A failure
+	 * @return The root cause of the failure
+	 */
+	private static Throwable rootCause(Throwable t) {
+		while (t.getCause() != null && t.getCause() != t) {
+			t = t.getCause();
+		}
+		return t;
+	}
+
+	/**
+	 * Run an action in place of the test method, where the data generators of the test can be retrieved
+	 * 
+	 * @param action The action to run
+	 * @throws Throwable Never
+	 */
+	private void whenTestRuns(final TestAction action) throws Throwable {
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				action.run();
+				return null;
+			}
+		}).when(statement).evaluate();
+	}
+
+	/**
+	 * Action run in place of the test method
+	 */
+	private interface TestAction {
+		void run() throws Throwable;
+	}
 }
@@ -0,0 +1,37 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.sql.SQLException;
+import javax.persistence.PersistenceException;
+import javax.persistence.PessimisticLockException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class DeadlockRetryTest {
+	@Test
+	@RoxableTest(key = "93c0e5a7d2b4")
+	public void deadlocksShouldBeDetectedInTheCausesOfTheFailure() {
+		assertTrue(DeadlockRetry.isDeadlock(new PersistenceException(new SQLException("deadlock detected", "40P01"))));
+		assertTrue(DeadlockRetry.isDeadlock(new PersistenceException(new SQLException("Deadlock found", "HY000", 1213))));
+		assertTrue(DeadlockRetry.isDeadlock(new PessimisticLockException()));
+		assertFalse(DeadlockRetry.isDeadlock(new PersistenceException(new SQLException("unique constraint", "23505"))));
+		assertFalse(DeadlockRetry.isDeadlock(new IllegalStateException()));
+	}
+	
+	@Test
+	@RoxableTest(key = "1f7d4b82a6e0")
+	public void onlyDeadlocksShouldBeRetriedUpToTheMaximumNumberOfRetries() {
+		DeadlockRetry retry = new DeadlockRetry(2, 1);
+		Exception deadlock = new PersistenceException(new SQLException("deadlock detected", "40P01"));
+		
+		assertFalse(retry.shouldRetry(new IllegalStateException(), 0));
+		assertTrue(retry.shouldRetry(deadlock, 0));
+		assertTrue(retry.shouldRetry(deadlock, 1));
+		assertFalse(retry.shouldRetry(deadlock, 2));
+		assertEquals(2, retry.getRetries());
+	}
+}
@@ -0,0 +1,117 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.junitee.dummy.ChildEntity;
+import com.lotaris.junitee.dummy.ParentEntity;
+import com.lotaris.junitee.dummy.TaggedEntity;
+import com.lotaris.rox.annotations.RoxableTest;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.persistence.Id;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class EntityDependencyGraphTest {
+	@Test
+	@RoxableTest(key = "7a2c5e91d0f3")
+	public void entitiesShouldBeDeletedBeforeTheEntitiesTheyReferenceAndLoopsShouldBeIgnored() {
+		EntityType<ParentEntity> parentType = entityType(ParentEntity.class);
+		EntityType<ChildEntity> childType = entityType(ChildEntity.class);
+		EntityType<TaggedEntity> taggedType = entityType(TaggedEntity.class);
+
+		EntityDependencyGraph graph = EntityDependencyGraph.of(metamodel(taggedType, parentType, childType));
+
+		assertEquals(Arrays.<EntityType<?>>asList(childType, parentType, taggedType), graph.getDeletionOrder());
+		assertEquals(Collections.<EntityType<?>>singleton(parentType), graph.getReferences(childType));
+		assertTrue("The reference closing the loop should be ignored", graph.getReferences(parentType).isEmpty());
+		assertTrue("The reference to itself should be ignored", graph.getReferences(taggedType).isEmpty());
+		assertEquals(Arrays.<EntityType<?>>asList(childType, parentType), graph.sortForDeletion(Arrays.<EntityType<?>>asList(parentType, childType)));
+	}
+
+	@Test
+	@RoxableTest(key = "e4b09d6a3c18")
+	public void joinTablesShouldBeKeptByOwningEntityAndGraphsCachedByMetamodel() {
+		EntityType<ParentEntity> parentType = entityType(ParentEntity.class);
+		EntityType<TaggedEntity> taggedType = entityType(TaggedEntity.class);
+		Metamodel metamodel = metamodel(parentType, taggedType);
+
+		EntityDependencyGraph graph = EntityDependencyGraph.of(metamodel);
+
+		assertEquals(Collections.singleton("TaggedEntity_ParentEntity"), graph.getJoinTables(taggedType));
+		assertTrue(graph.getJoinTables(parentType).isEmpty());
+		assertSame(graph, EntityDependencyGraph.of(metamodel));
+		verify(metamodel, times(1)).getEntities();
+	}
+
+	static Metamodel metamodel(EntityType<?>... types) {
+		Metamodel metamodel = mock(Metamodel.class);
+		doReturn(new HashSet<>(Arrays.asList(types))).when(metamodel).getEntities();
+		return metamodel;
+	}
+
+	/**
+	 * Mock an entity type with the identifier and the associations of the public fields of the class
+	 */
+	@SuppressWarnings("unchecked")
+	static <X> EntityType<X> entityType(Class<X> cl) {
+		EntityType<X> type = mock(EntityType.class);
+		when(type.getName()).thenReturn(cl.getSimpleName());
+		doReturn(cl).when(type).getJavaType();
+
+		Set<Attribute> attributes = new HashSet<>();
+		for (Field field : cl.getFields()) {
+			if (field.isAnnotationPresent(Id.class)) {
+				SingularAttribute id = mock(SingularAttribute.class);
+				when(id.isId()).thenReturn(true);
+				when(id.getName()).thenReturn(field.getName());
+				doReturn(field.getType()).when(id).getJavaType();
+				doReturn(Collections.singleton(id)).when(type).getSingularAttributes();
+				when(type.hasSingleIdAttribute()).thenReturn(true);
+			}
+			
+			if (!field.isAnnotationPresent(ManyToOne.class) && !field.isAnnotationPresent(OneToOne.class) &&
+				!field.isAnnotationPresent(OneToMany.class) && !field.isAnnotationPresent(ManyToMany.class)) {
+				continue;
+			}
+
+			Attribute attribute;
+			if (Collection.class.isAssignableFrom(field.getType())) {
+				Type elementType = mock(Type.class);
+				doReturn(((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0]).when(elementType).getJavaType();
+				attribute = mock(PluralAttribute.class);
+				doReturn(elementType).when((PluralAttribute) attribute).getElementType();
+			}
+			else {
+				attribute = mock(Attribute.class);
+				doReturn(field.getType()).when(attribute).getJavaType();
+			}
+
+			when(attribute.getName()).thenReturn(field.getName());
+			when(attribute.isAssociation()).thenReturn(true);
+			when(attribute.getJavaMember()).thenReturn(field);
+			attributes.add(attribute);
+		}
+		doReturn(attributes).when(type).getAttributes();
+
+		return type;
+	}
+}
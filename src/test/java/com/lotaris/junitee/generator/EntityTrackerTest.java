@@ -0,0 +1,140 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.junitee.dummy.ChildEntity;
+import com.lotaris.junitee.dummy.ParentEntity;
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Query;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class EntityTrackerTest {
+	@Mock
+	private EntityManager entityManager;
+	
+	@Mock
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Mock
+	private PersistenceUnitUtil persistenceUnitUtil;
+	
+	@Mock
+	private Metamodel metamodel;
+	
+	@Mock
+	private EntityType<ParentEntity> parentType;
+	
+	@Mock
+	private EntityType<ChildEntity> childType;
+	
+	@Mock
+	private Query query;
+	
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		
+		when(entityManager.getMetamodel()).thenReturn(metamodel);
+		when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+		when(entityManagerFactory.getPersistenceUnitUtil()).thenReturn(persistenceUnitUtil);
+		when(persistenceUnitUtil.getIdentifier(any())).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				Object entity = invocation.getArguments()[0];
+				return entity.getClass().getField("id").get(entity);
+			}
+		});
+		
+		Attribute children = mock(Attribute.class);
+		when(children.isAssociation()).thenReturn(true);
+		when(children.getJavaMember()).thenReturn(ParentEntity.class.getField("children"));
+		
+		Attribute parent = mock(Attribute.class);
+		when(parent.isAssociation()).thenReturn(true);
+		when(parent.getJavaMember()).thenReturn(ChildEntity.class.getField("parent"));
+		
+		SingularAttribute id = mock(SingularAttribute.class);
+		when(id.isId()).thenReturn(true);
+		when(id.getName()).thenReturn("id");
+		
+		doReturn(new HashSet<>(Arrays.asList(parentType, childType))).when(metamodel).getEntities();
+		doReturn(ParentEntity.class).when(parentType).getJavaType();
+		doReturn(ChildEntity.class).when(childType).getJavaType();
+		doReturn(ParentEntity.class).when(parent).getJavaType();
+		doReturn(parentType).when(metamodel).entity(ParentEntity.class);
+		doReturn(childType).when(metamodel).entity(ChildEntity.class);
+		doReturn(new HashSet<>(Arrays.asList(children))).when(parentType).getAttributes();
+		doReturn(new HashSet<>(Arrays.asList(parent))).when(childType).getAttributes();
+		doReturn(Collections.singleton(id)).when(parentType).getSingularAttributes();
+		doReturn(Collections.singleton(id)).when(childType).getSingularAttributes();
+		when(parentType.hasSingleIdAttribute()).thenReturn(true);
+		when(childType.hasSingleIdAttribute()).thenReturn(true);
+		when(parentType.getName()).thenReturn("ParentEntity");
+		when(childType.getName()).thenReturn("ChildEntity");
+		
+		when(entityManager.createQuery(anyString())).thenReturn(query);
+		when(query.setParameter(anyString(), any())).thenReturn(query);
+	}
+
+	@Test
+	@RoxableTest(key = "b0d6e43a9f12")
+	public void entitiesPersistedByCascadeShouldBeCollected() {
+		ParentEntity parent = new ParentEntity(1L);
+		new ChildEntity(10L, parent);
+		new ChildEntity(11L, parent);
+		
+		EntityTracker tracker = new EntityTracker();
+		tracker.record(parent);
+		tracker.record(parent);
+		
+		Map<EntityType<?>, List<Object>> identifiers = tracker.collectIdentifiers(entityManager);
+		
+		assertEquals(Arrays.<EntityType<?>>asList(parentType, childType), Arrays.asList(identifiers.keySet().toArray()));
+		assertEquals(Arrays.<Object>asList(1L), identifiers.get(parentType));
+		assertEquals(Arrays.<Object>asList(10L, 11L), identifiers.get(childType));
+	}
+	
+	@Test
+	@RoxableTest(key = "4e81a7c3d5b0")
+	public void entitiesShouldBeDeletedByTypeBeforeTheEntitiesTheyReference() {
+		ParentEntity parent = new ParentEntity(1L);
+		ChildEntity child = new ChildEntity(10L, parent);
+		
+		EntityTracker tracker = new EntityTracker();
+		tracker.record(child);
+		tracker.record(parent);
+		
+		when(query.executeUpdate()).thenReturn(1);
+		assertEquals(2, tracker.delete(entityManager));
+		
+		InOrder inOrder = inOrder(entityManager, query);
+		inOrder.verify(entityManager).createQuery("DELETE FROM ChildEntity e WHERE e.id IN :ids");
+		inOrder.verify(query).setParameter("ids", Arrays.<Object>asList(10L));
+		inOrder.verify(entityManager).createQuery("DELETE FROM ParentEntity e WHERE e.id IN :ids");
+		inOrder.verify(query).setParameter("ids", Arrays.<Object>asList(1L));
+		verify(entityManager, never()).remove(any());
+	}
+}
@@ -0,0 +1,63 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.junitee.dummy.ParentEntity;
+import com.lotaris.rox.annotations.RoxableTest;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class GenerationContextTest {
+	@Mock
+	private EntityManager entityManager;
+	
+	@Mock
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Mock
+	private PersistenceUnitUtil persistenceUnitUtil;
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		
+		when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+		when(entityManagerFactory.getPersistenceUnitUtil()).thenReturn(persistenceUnitUtil);
+		when(persistenceUnitUtil.getIdentifier(any())).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return ((ParentEntity) invocation.getArguments()[0]).id;
+			}
+		});
+	}
+
+	@Test
+	@RoxableTest(key = "a5f28c1e7d94")
+	public void managedCopyOfTheNewEntitiesSavedThroughMergeShouldBeTracked() {
+		ParentEntity existing = new ParentEntity(1L);
+		ParentEntity created = new ParentEntity(null);
+		ParentEntity managed = new ParentEntity(2L);
+		when(entityManager.merge(existing)).thenReturn(existing);
+		when(entityManager.merge(created)).thenReturn(managed);
+		
+		GenerationContext context = new GenerationContext(entityManager, false, true, false);
+		
+		// An existing entity updated through merge must not be deleted at the end of the test
+		assertSame(existing, context.getEntityManager().merge(existing));
+		assertTrue(context.getEntityTracker().isEmpty());
+		
+		assertSame(managed, context.getEntityManager().merge(created));
+		assertFalse(context.getEntityTracker().isEmpty());
+	}
+}
@@ -0,0 +1,93 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.junitee.dummy.AbstractOrderGenerator;
+import com.lotaris.junitee.dummy.OrderOneGenerator;
+import com.lotaris.rox.annotations.RoxableTest;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class SharedDataGeneratorRegistryTest {
+	@Mock
+	private EntityManager entityManager;
+	
+	@Mock
+	private EntityTransaction entityTransaction;
+	
+	private int created;
+	
+	private SharedDataGeneratorRegistry.EntryFactory factory = new SharedDataGeneratorRegistry.EntryFactory() {
+		@Override
+		public SharedDataGeneratorRegistry.Entry create(Class<? extends IDataGenerator> dataGeneratorClass) throws DataGeneratorException {
+			created++;
+			return new SharedDataGeneratorRegistry.Entry(new OrderOneGenerator(), entityManager);
+		}
+	};
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		when(entityManager.getTransaction()).thenReturn(entityTransaction);
+		AbstractOrderGenerator.order = "";
+	}
+
+	@Test
+	@RoxableTest(key = "2a7d94c0e6b1")
+	public void sharedDataGeneratorShouldBeGeneratedOnceAndKeptAfterTheLastUser() throws Exception {
+		SharedDataGeneratorRegistry registry = new SharedDataGeneratorRegistry();
+		
+		SharedDataGeneratorRegistry.Entry first = registry.acquire(OrderOneGenerator.class, factory);
+		SharedDataGeneratorRegistry.Entry second = registry.acquire(OrderOneGenerator.class, factory);
+		
+		assertSame(first, second);
+		assertEquals(1, created);
+		assertEquals(2, registry.getReferences(OrderOneGenerator.class));
+		assertEquals("1", AbstractOrderGenerator.order);
+		
+		registry.release(OrderOneGenerator.class);
+		registry.release(OrderOneGenerator.class);
+		assertEquals("1", AbstractOrderGenerator.order);
+		assertEquals(0, registry.getReferences(OrderOneGenerator.class));
+		
+		// The next user gets the same data generator without generating it again
+		assertSame(first, registry.acquire(OrderOneGenerator.class, factory));
+		assertEquals(1, created);
+		assertEquals("1", AbstractOrderGenerator.order);
+		AbstractOrderGenerator.order = "";
+	}
+	
+	@Test
+	@RoxableTest(key = "6d3a0e9c5b72")
+	public void idleSharedDataGeneratorsShouldBeCleanedUpAndTheirEntityManagerClosed() throws Exception {
+		when(entityManager.isOpen()).thenReturn(true);
+		SharedDataGeneratorRegistry registry = new SharedDataGeneratorRegistry();
+		
+		registry.acquire(OrderOneGenerator.class, factory);
+		
+		// A data generator still used is kept
+		registry.cleanup();
+		assertEquals("1", AbstractOrderGenerator.order);
+		verify(entityManager, never()).close();
+		
+		registry.release(OrderOneGenerator.class);
+		registry.cleanup();
+		assertEquals("14", AbstractOrderGenerator.order);
+		verify(entityTransaction, times(2)).begin();
+		verify(entityTransaction, times(2)).commit();
+		verify(entityManager).close();
+		
+		// Acquiring again generates a new data generator
+		registry.acquire(OrderOneGenerator.class, factory);
+		assertEquals(2, created);
+		AbstractOrderGenerator.order = "";
+	}
+}
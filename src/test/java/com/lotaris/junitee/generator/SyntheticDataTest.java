@@ -0,0 +1,56 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class SyntheticDataTest {
+	@Test
+	@RoxableTest(key = "d7f03a91c5e8")
+	public void theSameSeedShouldProduceTheSameValuesAndTheSplitsIndependentStreams() {
+		SyntheticData first = new SyntheticData(42);
+		SyntheticData second = new SyntheticData(42);
+		
+		for (int i = 0; i < 100; i++) {
+			assertEquals(first.email(), second.email());
+			assertEquals(first.fullName(), second.fullName());
+		}
+		
+		SyntheticData firstSplit = first.split();
+		SyntheticData secondSplit = second.split();
+		assertEquals(firstSplit.nextLong(), secondSplit.nextLong());
+		assertNotEquals(firstSplit.nextLong(), first.nextLong());
+		
+		assertEquals(new SyntheticData(42, "worker").nextLong(), new SyntheticData(42, "worker").nextLong());
+		assertNotEquals(new SyntheticData(42, "worker").nextLong(), new SyntheticData(42, "other").nextLong());
+	}
+	
+	@Test
+	@RoxableTest(key = "2b86e4d0f1a7")
+	public void valuesShouldStayInTheirBoundsAndFormats() {
+		SyntheticData data = new SyntheticData(7);
+		
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(data.email().matches("[a-z]+\\.[a-z]+[0-9]+@[a-z.]+"));
+			assertTrue(data.postalCode().matches("[1-9][0-9]{3}"));
+			assertTrue(data.phoneNumber().matches("\\+41[1-9][0-9]{8}"));
+			
+			int value = data.nextInt(3);
+			assertTrue(value >= 0 && value < 3);
+			
+			BigDecimal amount = data.amount(100, 9999);
+			assertEquals(2, amount.scale());
+			assertTrue(amount.compareTo(BigDecimal.ONE) >= 0 && amount.compareTo(new BigDecimal("99.99")) <= 0);
+			
+			double d = data.nextDouble();
+			assertTrue(d >= 0 && d < 1);
+		}
+		
+		assertEquals(Long.MIN_VALUE, data.nextLong(Long.MIN_VALUE, Long.MIN_VALUE));
+	}
+}
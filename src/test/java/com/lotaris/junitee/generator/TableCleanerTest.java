@@ -0,0 +1,101 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.junitee.dummy.ChildEntity;
+import com.lotaris.junitee.dummy.ParentEntity;
+import com.lotaris.junitee.dummy.TaggedEntity;
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static com.lotaris.junitee.generator.EntityDependencyGraphTest.entityType;
+import static com.lotaris.junitee.generator.EntityDependencyGraphTest.metamodel;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class TableCleanerTest {
+	@Mock
+	private EntityManager entityManager;
+	
+	@Mock
+	private Query query;
+	
+	private EntityType<ParentEntity> parentType;
+	private EntityType<ChildEntity> childType;
+	private EntityType<TaggedEntity> taggedType;
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		
+		parentType = entityType(ParentEntity.class);
+		childType = entityType(ChildEntity.class);
+		taggedType = entityType(TaggedEntity.class);
+		
+		Metamodel metamodel = metamodel(parentType, childType, taggedType);
+		when(entityManager.getMetamodel()).thenReturn(metamodel);
+		when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+		when(entityManager.createQuery(anyString())).thenReturn(query);
+	}
+	
+	@Test
+	@RoxableTest(key = "c81f4a06e2d9")
+	public void touchedTablesShouldIncludeTheCascadesAndBeSortedForDeletion() {
+		TableCleaner cleaner = new TableCleaner(entityManager);
+		
+		assertEquals(Arrays.<EntityType<?>>asList(childType, parentType), cleaner.touchedTypes(Arrays.<Class<?>>asList(ParentEntity.class)));
+		assertEquals(Arrays.<EntityType<?>>asList(taggedType), cleaner.touchedTypes(Arrays.<Class<?>>asList(TaggedEntity.class)));
+		assertTrue(cleaner.touchedTypes(Arrays.<Class<?>>asList(String.class)).isEmpty());
+	}
+	
+	@Test
+	@RoxableTest(key = "5d27b9e0a4f1")
+	public void joinTablesShouldBeTruncatedBeforeTheTablesOfTheEntities() throws DataGeneratorException {
+		TableCleaner cleaner = new TableCleaner(entityManager);
+		List<EntityType<?>> types = cleaner.touchedTypes(Arrays.<Class<?>>asList(TaggedEntity.class, ParentEntity.class));
+		
+		assertEquals(4, cleaner.truncate(types));
+		
+		InOrder inOrder = inOrder(entityManager);
+		inOrder.verify(entityManager).createNativeQuery("TRUNCATE TABLE TaggedEntity_ParentEntity");
+		inOrder.verify(entityManager).createNativeQuery("TRUNCATE TABLE ChildEntity");
+		inOrder.verify(entityManager).createNativeQuery("TRUNCATE TABLE ParentEntity");
+		inOrder.verify(entityManager).createNativeQuery("TRUNCATE TABLE TaggedEntity");
+	}
+	
+	@Test
+	@RoxableTest(key = "09e6c3b5f7a2")
+	public void rowsShouldBeDeletedInBulkInTheOrderOfTheForeignKeys() {
+		when(query.executeUpdate()).thenReturn(2);
+		
+		TableCleaner cleaner = new TableCleaner(entityManager);
+		
+		assertEquals(4, cleaner.delete(cleaner.touchedTypes(Arrays.<Class<?>>asList(ParentEntity.class))));
+		
+		InOrder inOrder = inOrder(entityManager);
+		inOrder.verify(entityManager).createQuery("DELETE FROM ChildEntity e");
+		inOrder.verify(entityManager).createQuery("DELETE FROM ParentEntity e");
+		verify(entityManager, never()).createNativeQuery(anyString());
+	}
+	
+	@Test(expected = DataGeneratorException.class)
+	@RoxableTest(key = "f2a8d14c6b39")
+	@SuppressWarnings("unchecked")
+	public void tableOfAnEntityInAnInheritanceShouldNotBeTruncated() throws DataGeneratorException {
+		doReturn(mock(EntityType.class)).when(childType).getSupertype();
+		
+		new TableCleaner(entityManager).truncate(Collections.<EntityType<?>>singletonList(childType));
+	}
+}
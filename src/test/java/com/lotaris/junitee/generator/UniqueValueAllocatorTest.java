@@ -0,0 +1,105 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class UniqueValueAllocatorTest {
+	@Test
+	@RoxableTest(key = "5c9e2d07b3f1")
+	public void valuesShouldStartAtTheSeedForEachNamespaceAndBeTheSameForTheSameSeed() {
+		UniqueValueAllocator allocator = new UniqueValueAllocator(35, 2);
+		
+		assertEquals(Arrays.asList(35L, 36L, 37L), Arrays.asList(allocator.nextLong("a"), allocator.nextLong("a"), allocator.nextLong("a")));
+		assertEquals("b-z", allocator.nextString("b"));
+		assertEquals("b-10", allocator.nextString("b"));
+		
+		UniqueValueAllocator sameSeed = new UniqueValueAllocator(35, 2);
+		assertEquals(35L, sameSeed.nextLong("a"));
+		
+		// The 37th value of a namespace must not collide with the first value of a namespace it prefixes
+		UniqueValueAllocator fromZero = new UniqueValueAllocator(0);
+		String value = null;
+		for (int i = 0; i < 37; i++) {
+			value = fromZero.nextString("x");
+		}
+		assertEquals("x-10", value);
+		assertEquals("x1-0", fromZero.nextString("x1"));
+	}
+	
+	@Test
+	@RoxableTest(key = "3b8f0e6a2c57")
+	public void releasedNamespacesShouldBeForgottenByAllTheThreads() throws Exception {
+		final UniqueValueAllocator allocator = new UniqueValueAllocator(0, 4);
+		
+		assertEquals(0L, allocator.nextLong("a"));
+		assertEquals(0L, allocator.nextLong("b"));
+		
+		Thread other = new Thread() {
+			@Override
+			public void run() {
+				allocator.nextLong("a");
+			}
+		};
+		other.start();
+		other.join();
+		
+		assertEquals(2, allocator.countNamespaces());
+		
+		allocator.release("a");
+		
+		assertEquals(1, allocator.countNamespaces());
+		assertEquals(0L, allocator.nextLong("a"));
+		assertEquals(1L, allocator.nextLong("b"));
+	}
+	
+	@Test
+	@RoxableTest(key = "e81b4a6f29d0")
+	public void valuesTakenByConcurrentThreadsShouldBeUniqueAndIncreasingByThread() throws Exception {
+		final UniqueValueAllocator allocator = new UniqueValueAllocator(0, 8);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try {
+			List<Future<List<Long>>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(executor.submit(new Callable<List<Long>>() {
+					@Override
+					public List<Long> call() {
+						List<Long> values = new ArrayList<>();
+						for (int j = 0; j < 1000; j++) {
+							values.add(allocator.nextLong("namespace"));
+						}
+						return values;
+					}
+				}));
+			}
+			
+			Set<Long> all = new HashSet<>();
+			for (Future<List<Long>> future : futures) {
+				List<Long> values = future.get();
+				for (int j = 1; j < values.size(); j++) {
+					assertTrue(values.get(j - 1) < values.get(j));
+				}
+				all.addAll(values);
+			}
+			
+			assertEquals(4000, all.size());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.lotaris.junitee.generator;
+
+import com.lotaris.junitee.dummy.ChildEntity;
+import com.lotaris.junitee.dummy.ParentEntity;
+import com.lotaris.junitee.dummy.TaggedEntity;
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.Arrays;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static com.lotaris.junitee.generator.EntityDependencyGraphTest.entityType;
+import static com.lotaris.junitee.generator.EntityDependencyGraphTest.metamodel;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class WatermarkCleanerTest {
+	@Mock
+	private EntityManager entityManager;
+	
+	@Mock
+	private Query maxChild;
+	
+	@Mock
+	private Query maxParent;
+	
+	@Mock
+	private Query maxTagged;
+	
+	@Mock
+	private Query query;
+	
+	private EntityType<ParentEntity> parentType;
+	private EntityType<ChildEntity> childType;
+	private EntityType<TaggedEntity> taggedType;
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		
+		parentType = entityType(ParentEntity.class);
+		childType = entityType(ChildEntity.class);
+		taggedType = entityType(TaggedEntity.class);
+		
+		Metamodel metamodel = metamodel(parentType, childType, taggedType);
+		when(entityManager.getMetamodel()).thenReturn(metamodel);
+		when(entityManager.createQuery(anyString())).thenReturn(query);
+		when(entityManager.createQuery("SELECT MAX(e.id) FROM ChildEntity e")).thenReturn(maxChild);
+		when(entityManager.createQuery("SELECT MAX(e.id) FROM ParentEntity e")).thenReturn(maxParent);
+		when(entityManager.createQuery("SELECT MAX(e.id) FROM TaggedEntity e")).thenReturn(maxTagged);
+		when(maxChild.getSingleResult()).thenReturn(5L);
+		when(maxTagged.getSingleResult()).thenReturn(7L);
+		when(query.setParameter(anyString(), any())).thenReturn(query);
+	}
+	
+	@Test
+	@RoxableTest(key = "a3c7f0e92d61")
+	public void rowsAboveTheWatermarksShouldBeDeletedWithOneRangeDeleteByEntity() throws DataGeneratorException {
+		Object tagged = new TaggedEntity();
+		when(maxParent.getSingleResult()).thenReturn(3L);
+		when(query.executeUpdate()).thenReturn(3);
+		when(query.getResultList()).thenReturn(Arrays.asList(tagged));
+		
+		WatermarkCleaner cleaner = new WatermarkCleaner();
+		cleaner.record(entityManager, ParentEntity.class);
+		cleaner.record(entityManager, TaggedEntity.class);
+		cleaner.record(entityManager, ParentEntity.class);
+		
+		// The children are persisted by cascade from the parents, their watermark is recorded once
+		verify(entityManager, times(1)).createQuery("SELECT MAX(e.id) FROM ChildEntity e");
+		verify(entityManager, times(1)).createQuery("SELECT MAX(e.id) FROM ParentEntity e");
+		
+		assertEquals(7, cleaner.delete(entityManager, Arrays.<EntityType<?>>asList(childType, parentType, taggedType)));
+		
+		InOrder inOrder = inOrder(entityManager, query);
+		inOrder.verify(entityManager).createQuery("DELETE FROM ChildEntity e WHERE e.id > :watermark");
+		inOrder.verify(query).setParameter("watermark", 5L);
+		inOrder.verify(entityManager).createQuery("DELETE FROM ParentEntity e WHERE e.id > :watermark");
+		inOrder.verify(query).setParameter("watermark", 3L);
+		inOrder.verify(entityManager).createQuery("SELECT e FROM TaggedEntity e WHERE e.id > :watermark");
+		inOrder.verify(query).setParameter("watermark", 7L);
+		inOrder.verify(entityManager).remove(tagged);
+	}
+	
+	@Test
+	@RoxableTest(key = "0f4d8b2e6a93")
+	public void onlyTheWatermarksOfTheEntitiesWrittenShouldBeRecorded() throws DataGeneratorException {
+		WatermarkCleaner cleaner = new WatermarkCleaner();
+		cleaner.record(entityManager, TaggedEntity.class);
+		
+		assertTrue(cleaner.hasWatermark(taggedType));
+		assertFalse(cleaner.hasWatermark(parentType));
+		verify(entityManager, never()).createQuery("SELECT MAX(e.id) FROM ParentEntity e");
+		verify(entityManager, never()).createQuery("SELECT MAX(e.id) FROM ChildEntity e");
+		
+		try {
+			cleaner.delete(entityManager, Arrays.<EntityType<?>>asList(parentType, taggedType));
+			fail("An entity without watermark should not be cleaned up by watermark");
+		}
+		catch (DataGeneratorException dge) {
+			verify(entityManager, never()).createQuery(startsWith("DELETE"));
+		}
+	}
+	
+	@Test(expected = DataGeneratorException.class)
+	@RoxableTest(key = "c27e95a1d0b4")
+	public void entityWithoutRowsBeforeItsFirstWriteShouldNotBeCleanedUpByWatermark() throws DataGeneratorException {
+		WatermarkCleaner cleaner = new WatermarkCleaner();
+		cleaner.record(entityManager, ParentEntity.class);
+		
+		// The rows of the other tests cannot be told apart, the table must not be emptied
+		assertFalse(cleaner.hasWatermark(parentType));
+		
+		cleaner.delete(entityManager, Arrays.<EntityType<?>>asList(childType, parentType));
+	}
+	
+	@Test(expected = DataGeneratorException.class)
+	@RoxableTest(key = "6e90b4d2f1a8")
+	public void entityWithoutNumericIdentifierShouldNotBeCleanedUpByWatermark() throws DataGeneratorException {
+		when(childType.hasSingleIdAttribute()).thenReturn(false);
+		
+		WatermarkCleaner cleaner = new WatermarkCleaner();
+		cleaner.record(entityManager, ParentEntity.class);
+		
+		assertFalse(cleaner.hasWatermark(childType));
+		verify(entityManager, never()).createQuery("SELECT MAX(e.id) FROM ChildEntity e");
+		
+		cleaner.delete(entityManager, Arrays.<EntityType<?>>asList(childType, parentType));
+	}
+}
@@ -0,0 +1,160 @@
+package com.lotaris.junitee.processor;
+
+import com.lotaris.junitee.generator.InjectDataGenerator;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.ejb.EJB;
+import javax.persistence.PersistenceContext;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+@RoxableTestClass(tags = "injector-processor")
+public class InjectorProcessorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private JavaCompiler compiler;
+	
+	private List<String> warnings;
+	
+	@Before
+	public void setup() {
+		compiler = ToolProvider.getSystemJavaCompiler();
+		assumeNotNull(compiler);
+	}
+	
+	@Test
+	@RoxableTest(key = "0b7c4e9d2f15")
+	public void validGeneratorShouldHaveItsInjectorGenerated() throws IOException {
+		List<String> errors = process(
+			"package sample; public interface IDao {}",
+			"package sample; public class Dao implements IDao { @javax.persistence.PersistenceContext javax.persistence.EntityManager em; }",
+			"package sample; public class Gen { @javax.ejb.EJB IDao dao; @javax.ejb.EJB private Dao privateDao; }"
+		);
+		
+		assertTrue("No error should be reported but got " + errors, errors.isEmpty());
+		assertTrue(new File(folder.getRoot(), "generated/sample/Gen_JuniteeInjector.java").exists());
+		assertTrue(new File(folder.getRoot(), "generated/sample/Dao_JuniteeInjector.java").exists());
+	}
+	
+	@Test
+	@RoxableTest(key = "a84d1f60c3e2")
+	public void ejbWithoutImplementationClassShouldBeACompileWarning() throws IOException {
+		List<String> errors = process(
+			"package sample; public interface IMissingDao {}",
+			"package sample; public class Gen implements com.lotaris.junitee.generator.IDataGenerator { @javax.ejb.EJB IMissingDao dao; "
+				+ "public void generate() {} public void cleanup() {} }"
+		);
+		
+		assertTrue("No error should be reported but got " + errors, errors.isEmpty());
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0), warnings.get(0).contains("Unable to find a concrete class for interface sample.IMissingDao"));
+	}
+	
+	@Test
+	@RoxableTest(key = "c41e8a7d06b3")
+	public void classesNotInstantiatedByJuniteeShouldNotBeValidated() throws IOException {
+		List<String> errors = process(
+			"package sample; public interface OrderService {}",
+			"package sample; public class Bean { @javax.ejb.EJB OrderService service; }"
+		);
+		
+		assertTrue("No error should be reported but got " + errors, errors.isEmpty());
+		assertTrue("No warning should be reported but got " + warnings, warnings.isEmpty());
+	}
+	
+	@Test
+	@RoxableTest(key = "6e2a95c7b408")
+	public void dataGeneratorWithoutEmptyConstructorShouldBeACompileError() throws IOException {
+		List<String> errors = process(
+			"package sample; public class Other { public Other(String name) {} }",
+			"package sample; public class Gen { @com.lotaris.junitee.generator.InjectDataGenerator Other other; }"
+		);
+		
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0), errors.get(0).contains("has no empty constructor"));
+	}
+	
+	@Test
+	@RoxableTest(key = "f3c10d8b7a96")
+	public void loopBetweenDataGeneratorsShouldBeACompileError() throws IOException {
+		List<String> errors = process(
+			"package sample; public class First { @com.lotaris.junitee.generator.InjectDataGenerator Second second; }",
+			"package sample; public class Second { @com.lotaris.junitee.generator.InjectDataGenerator First first; }"
+		);
+		
+		assertEquals(2, errors.size());
+		for (String error : errors) {
+			assertTrue(error, error.contains("loop"));
+		}
+	}
+	
+	/**
+	 * Run the processor on the sources
+	 * 
+	 * @param sources The sources to process
+	 * @return The errors reported, the warnings are kept in the warnings field
+	 * @throws IOException When the sources cannot be written
+	 */
+	private List<String> process(String... sources) throws IOException {
+		File sourceFolder = folder.newFolder("sources");
+		File generatedFolder = folder.newFolder("generated");
+		
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < sources.length; i++) {
+			String className = sources[i].replaceAll("(?s).*?(class|interface) (\\w+).*", "$2");
+			File file = new File(sourceFolder, className + ".java");
+			try (Writer writer = new FileWriter(file)) {
+				writer.write(sources[i]);
+			}
+			files.add(file);
+		}
+		
+		String classpath = location(InjectorProcessor.class) + File.pathSeparator + location(InjectDataGenerator.class) 
+			+ File.pathSeparator + location(EJB.class) + File.pathSeparator + location(PersistenceContext.class);
+		
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+			compiler.getTask(null, fileManager, diagnostics, 
+				Arrays.asList("-proc:only", "-processor", InjectorProcessor.class.getName(), "-classpath", classpath, "-s", generatedFolder.getPath()), 
+				null, fileManager.getJavaFileObjectsFromFiles(files)).call();
+		}
+		
+		List<String> errors = new ArrayList<>();
+		warnings = new ArrayList<>();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(diagnostic.getMessage(null));
+			}
+			else if (diagnostic.getKind() == Diagnostic.Kind.WARNING && diagnostic.getSource() != null) {
+				warnings.add(diagnostic.getMessage(null));
+			}
+		}
+		return errors;
+	}
+	
+	private String location(Class<?> cl) {
+		return new File(cl.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+	}
+}
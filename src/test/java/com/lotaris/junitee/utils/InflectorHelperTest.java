@@ -15,6 +15,8 @@ public class InflectorHelperTest {
 	
 	public static class CustomDao implements ICustomDao {}
 	
+	public interface IMissingImplementation {}
+	
 	@Test
 	@RoxableTest(key = "4cad7922ddfe")
 	public void itShouldBePossibleToGetImplementationClassForGivenInterfaceThatFollowsCodingConventionNames() throws Throwable {
@@ -44,6 +46,34 @@ public class InflectorHelperTest {
 		noValidClassAsserter(PublicClass.class);
 	}
 	
+	@Test
+	@RoxableTest(key = "e0a6b3f41c97")
+	public void retrievedConstructorShouldBeTheEmptyConstructorOfTheImplementationClassAndBeCached() throws Throwable {
+		assertEquals(CustomDao.class.getConstructor(), InflectorHelper.retrieveInstantiableConstructor(ICustomDao.class));
+		assertSame(InflectorHelper.retrieveInstantiableConstructor(ICustomDao.class), InflectorHelper.retrieveInstantiableConstructor(ICustomDao.class));
+	}
+	
+	@Test
+	@RoxableTest(key = "51f7d2ac8e30")
+	public void failingResolutionShouldFailAgainWithTheSameReasonWhenRetried() {
+		String firstMessage = null;
+		
+		for (int i = 0; i < 2; i++) {
+			try {
+				InflectorHelper.retrieveInstantiableClassName(IMissingImplementation.class);
+				fail("The interface " + IMissingImplementation.class.getCanonicalName() + " should have no implementation class.");
+			}
+			catch (NoValidClassException nvce) {
+				if (firstMessage == null) {
+					firstMessage = nvce.getMessage();
+				}
+				else {
+					assertEquals(firstMessage, nvce.getMessage());
+				}
+			}
+		}
+	}
+	
 	private void noValidClassAsserter(Class cl) {
 		try { 
 			InflectorHelper.retrieveInstantiableClassName(cl); 